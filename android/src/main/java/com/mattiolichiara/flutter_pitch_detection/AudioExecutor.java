@@ -0,0 +1,100 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The threads detection runs on, shared by every session of the process: one capture worker at
+ * {@code THREAD_PRIORITY_URGENT_AUDIO} and one analysis worker at {@code THREAD_PRIORITY_AUDIO},
+ * each running one task at a time. A new session's task queues behind the previous one, so two
+ * sessions never read the microphone at once. Idle workers exit after a while and are recreated
+ * on the next session.
+ */
+public final class AudioExecutor {
+    private static final String TAG = "AudioExecutor";
+    private static final long IDLE_SECONDS = 30;
+    private static final AudioExecutor SHARED = new AudioExecutor();
+
+    // A single-thread executor that remembers its current thread
+    private static final class Worker implements ThreadFactory {
+        final String name;
+        final int priority;
+        final ThreadPoolExecutor executor;
+        volatile Thread thread;
+
+        Worker(String name, int priority) {
+            this.name = name;
+            this.priority = priority;
+            this.executor = new ThreadPoolExecutor(1, 1, IDLE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), this);
+            executor.allowCoreThreadTimeOut(true);
+        }
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread created = new Thread(() -> {
+                Process.setThreadPriority(priority);
+                task.run();
+            }, name);
+            thread = created;
+            return created;
+        }
+    }
+
+    private final Worker capture = new Worker("Audio Capture", Process.THREAD_PRIORITY_URGENT_AUDIO);
+    private final Worker analysis = new Worker("Audio Analysis", Process.THREAD_PRIORITY_AUDIO);
+
+    private AudioExecutor() {
+    }
+
+    public static AudioExecutor shared() {
+        return SHARED;
+    }
+
+    // Reads the microphone, and runs the whole chain when analysis isn't separate
+    public Future<?> submitCapture(Runnable task) {
+        return capture.executor.submit(task);
+    }
+
+    public Future<?> submitAnalysis(Runnable task) {
+        return analysis.executor.submit(task);
+    }
+
+    // Waiting for a task from its own worker would only time out
+    public boolean isWorkerThread() {
+        Thread current = Thread.currentThread();
+        return current == capture.thread || current == analysis.thread;
+    }
+
+    /**
+     * Waits up to {@code timeoutMillis} for a stopped task to return. Returns false, and leaves
+     * the task running, on timeout.
+     */
+    public boolean join(Future<?> task, long timeoutMillis) {
+        if (task == null || isWorkerThread()) return true;
+        try {
+            task.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            Log.w(TAG, "Audio task still running after " + timeoutMillis + " ms");
+            return false;
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Audio task failed", e.getCause());
+            return true;
+        } catch (CancellationException e) {
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
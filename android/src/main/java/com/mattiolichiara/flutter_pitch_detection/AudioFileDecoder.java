@@ -0,0 +1,171 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decodes WAV files and raw PCM into mono float samples for offline analysis. Multichannel audio
+ * is averaged down to one channel.
+ *
+ * Supported WAV encodings: 8, 16, 24 and 32-bit integer PCM and 32-bit float. Anything without a
+ * RIFF header is read as raw little-endian 16-bit PCM.
+ */
+public final class AudioFileDecoder {
+    private static final int WAVE_FORMAT_PCM = 1;
+    private static final int WAVE_FORMAT_IEEE_FLOAT = 3;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+    public static final class DecodedAudio {
+        public final float[] samples;
+        public final int sampleRate;
+
+        DecodedAudio(float[] samples, int sampleRate) {
+            this.samples = samples;
+            this.sampleRate = sampleRate;
+        }
+    }
+
+    private AudioFileDecoder() {
+    }
+
+    /**
+     * @param rawSampleRate sample rate of a raw PCM file, ignored for WAV files
+     * @param rawChannels   channel count of a raw PCM file, ignored for WAV files
+     */
+    public static DecodedAudio decodeFile(File file, int rawSampleRate, int rawChannels) throws IOException {
+        byte[] bytes;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            long length = input.length();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("File too large to analyze: " + file);
+            }
+            bytes = new byte[(int) length];
+            input.readFully(bytes);
+        }
+        return decode(bytes, rawSampleRate, rawChannels);
+    }
+
+    public static DecodedAudio decode(byte[] bytes, int rawSampleRate, int rawChannels) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (bytes.length >= 12 && buffer.getInt(0) == 0x46464952 /* RIFF */ && buffer.getInt(8) == 0x45564157 /* WAVE */) {
+            return decodeWav(buffer);
+        }
+        if (rawSampleRate <= 0) {
+            throw new IOException("sampleRate is required for raw PCM");
+        }
+        return new DecodedAudio(decodePcm16(buffer, 0, bytes.length, Math.max(1, rawChannels)), rawSampleRate);
+    }
+
+    private static DecodedAudio decodeWav(ByteBuffer buffer) throws IOException {
+        int format = -1;
+        int channels = 0;
+        int sampleRate = 0;
+        int bitsPerSample = 0;
+
+        int position = 12;
+        while (position + 8 <= buffer.limit()) {
+            int id = buffer.getInt(position);
+            int size = buffer.getInt(position + 4);
+            int body = position + 8;
+
+            if (id == 0x20746D66 /* "fmt " */) {
+                if (size < 16 || size > buffer.limit() - body) {
+                    throw new IOException("Corrupt WAV fmt chunk size: " + (size & 0xFFFFFFFFL));
+                }
+                format = buffer.getShort(body) & 0xFFFF;
+                channels = buffer.getShort(body + 2) & 0xFFFF;
+                sampleRate = buffer.getInt(body + 4);
+                bitsPerSample = buffer.getShort(body + 14) & 0xFFFF;
+                if (format == WAVE_FORMAT_EXTENSIBLE && size >= 26) {
+                    // First two bytes of the sub-format GUID carry the actual format
+                    format = buffer.getShort(body + 24) & 0xFFFF;
+                }
+            } else if (id == 0x61746164 /* "data" */) {
+                if (format < 0) throw new IOException("WAV data chunk before fmt chunk");
+                // Recorders that stop abruptly leave the size at 0 or past the end of the file
+                int length = size <= 0 || body + size > buffer.limit() ? buffer.limit() - body : size;
+                return new DecodedAudio(decodeWavData(buffer, body, length, format, channels, bitsPerSample), sampleRate);
+            }
+            // Unsigned 32-bit on disk: anything negative or past the end is corrupt, and would
+            // otherwise send the position back or leave it where it is
+            if (size < 0 || size > buffer.limit() - body) {
+                throw new IOException("Corrupt WAV chunk size: " + (size & 0xFFFFFFFFL));
+            }
+            // Chunks are padded to an even size
+            int next = body + size + (size & 1);
+            if (next <= position) {
+                throw new IOException("Corrupt WAV chunk at " + position);
+            }
+            position = next;
+        }
+        throw new IOException("WAV file has no data chunk");
+    }
+
+    private static float[] decodeWavData(ByteBuffer buffer, int offset, int length, int format, int channels,
+                                         int bitsPerSample) throws IOException {
+        if (channels <= 0) throw new IOException("Invalid WAV channel count: " + channels);
+
+        if (format == WAVE_FORMAT_PCM && bitsPerSample == 16) {
+            return decodePcm16(buffer, offset, length, channels);
+        }
+        if (format != WAVE_FORMAT_PCM && format != WAVE_FORMAT_IEEE_FLOAT) {
+            throw new IOException("Unsupported WAV format: " + format);
+        }
+        if (format == WAVE_FORMAT_IEEE_FLOAT && bitsPerSample != 32) {
+            throw new IOException("Unsupported float WAV: " + bitsPerSample + " bits");
+        }
+        if (bitsPerSample != 8 && bitsPerSample != 24 && bitsPerSample != 32) {
+            throw new IOException("Unsupported WAV sample size: " + bitsPerSample + " bits");
+        }
+
+        int bytesPerSample = bitsPerSample / 8;
+        int frames = length / (bytesPerSample * channels);
+        float[] samples = new float[frames];
+        int position = offset;
+        for (int i = 0; i < frames; i++) {
+            float sum = 0;
+            for (int c = 0; c < channels; c++) {
+                sum += readSample(buffer, position, format, bitsPerSample);
+                position += bytesPerSample;
+            }
+            samples[i] = sum / channels;
+        }
+        return samples;
+    }
+
+    private static float readSample(ByteBuffer buffer, int position, int format, int bitsPerSample) {
+        if (format == WAVE_FORMAT_IEEE_FLOAT) {
+            return buffer.getFloat(position);
+        }
+        switch (bitsPerSample) {
+            case 8:
+                // 8-bit WAV is unsigned
+                return ((buffer.get(position) & 0xFF) - 128) / 128f;
+            case 24:
+                int value = (buffer.get(position) & 0xFF)
+                        | (buffer.get(position + 1) & 0xFF) << 8
+                        | buffer.get(position + 2) << 16;
+                return value / 8388608f;
+            default:
+                return buffer.getInt(position) / 2147483648f;
+        }
+    }
+
+    private static float[] decodePcm16(ByteBuffer buffer, int offset, int length, int channels) {
+        int frames = length / (2 * channels);
+        float[] samples = new float[frames];
+        int position = offset;
+        for (int i = 0; i < frames; i++) {
+            int sum = 0;
+            for (int c = 0; c < channels; c++) {
+                sum += buffer.getShort(position);
+                position += 2;
+            }
+            samples[i] = sum / (32768f * channels);
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,234 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the detection input to a WAV or FLAC file while detection runs.
+ *
+ * The audio thread only converts its new samples to 16-bit into chunks from a fixed pool and
+ * queues each one once full; a writer thread encodes them into the file through a {@link FileChannel}. When
+ * storage falls behind by the whole pool ({@code maxQueueSeconds} of audio) samples are dropped
+ * and counted rather than making the audio thread wait.
+ */
+public class AudioFileRecorder {
+    private static final int CHUNK_SAMPLES = 4096;
+    private static final long STOP_TIMEOUT_MILLIS = 10000;
+
+    public enum Format {
+        WAV, FLAC;
+
+        public static Format fromKey(String key) {
+            if (key == null || key.equals("wav")) return WAV;
+            if (key.equals("flac")) return FLAC;
+            throw new IllegalArgumentException("Unknown recording format: " + key);
+        }
+    }
+
+    /** What a finished recording holds. */
+    public static final class Result {
+        public final File file;
+        public final Format format;
+        public final int sampleRate;
+        public final long samples;
+        // Lost to a full queue, or sent at another sample rate
+        public final long droppedSamples;
+        public final long bytes;
+
+        Result(File file, Format format, int sampleRate, long samples, long droppedSamples, long bytes) {
+            this.file = file;
+            this.format = format;
+            this.sampleRate = sampleRate;
+            this.samples = samples;
+            this.droppedSamples = droppedSamples;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final class Chunk {
+        final short[] samples = new short[CHUNK_SAMPLES];
+        int length;
+    }
+
+    // Queued by stop() after the last chunk
+    private static final Chunk END = new Chunk();
+
+    private final File file;
+    private final Format format;
+    private final int sampleRate;
+    private final ArrayBlockingQueue<Chunk> free;
+    private final ArrayBlockingQueue<Chunk> pending;
+    private final AtomicLong writtenSamples = new AtomicLong();
+    private final AtomicLong droppedSamples = new AtomicLong();
+    private final FileChannel channel;
+    private final RecordingEncoder encoder;
+    private final Thread writer;
+    private final Object lock = new Object();
+    // Audio thread: the chunk being filled, queued once full or on stop()
+    private Chunk filling;
+    private volatile boolean stopped = false;
+    private volatile IOException failure;
+
+    /**
+     * Creates (or truncates) {@code file} and starts the writer thread.
+     *
+     * @param maxQueueSeconds how much audio may wait for storage before samples are dropped
+     */
+    public AudioFileRecorder(File file, Format format, int sampleRate, double maxQueueSeconds) throws IOException {
+        if (maxQueueSeconds <= 0) {
+            throw new IllegalArgumentException("maxQueueSeconds must be positive");
+        }
+        this.file = file;
+        this.format = format;
+        this.sampleRate = sampleRate;
+        this.encoder = format == Format.FLAC ? new FlacEncoder() : new WavEncoder();
+
+        int chunks = Math.max(2, (int) Math.ceil(maxQueueSeconds * sampleRate / CHUNK_SAMPLES));
+        free = new ArrayBlockingQueue<>(chunks);
+        pending = new ArrayBlockingQueue<>(chunks + 1);
+        for (int i = 0; i < chunks; i++) {
+            free.add(new Chunk());
+        }
+
+        // java.nio.file needs API 26
+        RandomAccessFile output = new RandomAccessFile(file, "rw");
+        channel = output.getChannel();
+        try {
+            output.setLength(0);
+            encoder.start(channel, sampleRate);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        writer = new Thread(this::drain, "Audio Recording");
+        writer.start();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /** Audio thread: queues the samples, or counts them as dropped. Never waits for storage. */
+    public void write(float[] buffer, int offset, int length, int sampleRate) {
+        if (length <= 0) return;
+        // Only contended while stop() hands the last chunk over
+        synchronized (lock) {
+            if (stopped) return;
+            if (sampleRate != this.sampleRate) {
+                droppedSamples.addAndGet(length);
+                return;
+            }
+            int end = offset + length;
+            while (offset < end) {
+                if (filling == null) {
+                    filling = failure == null ? free.poll() : null;
+                    if (filling == null) {
+                        droppedSamples.addAndGet(end - offset);
+                        return;
+                    }
+                    filling.length = 0;
+                }
+                int count = Math.min(end - offset, CHUNK_SAMPLES - filling.length);
+                short[] samples = filling.samples;
+                int at = filling.length;
+                for (int i = 0; i < count; i++) {
+                    float sample = Math.max(-1f, Math.min(1f, buffer[offset + i]));
+                    samples[at + i] = (short) Math.round(sample * 32767f);
+                }
+                filling.length += count;
+                offset += count;
+                // Whole chunks only, so small hops don't leave the pool mostly empty space
+                if (filling.length == CHUNK_SAMPLES) {
+                    pending.offer(filling);
+                    filling = null;
+                }
+            }
+        }
+    }
+
+    // Writer thread, until stop() queues END
+    private void drain() {
+        try {
+            while (true) {
+                Chunk chunk = pending.take();
+                if (chunk == END) break;
+                if (failure == null) {
+                    try {
+                        encoder.encode(chunk.samples, chunk.length);
+                        writtenSamples.addAndGet(chunk.length);
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+                free.offer(chunk);
+            }
+            if (failure == null) {
+                encoder.finish();
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+            }
+        }
+    }
+
+    /**
+     * Stops taking samples, waits for the queue to be written and completes the file header.
+     * Blocks for as long as storage needs, up to a few seconds: not for the main thread.
+     */
+    public Result stop() throws IOException {
+        synchronized (lock) {
+            if (!stopped) {
+                stopped = true;
+                if (filling != null) {
+                    pending.offer(filling);
+                    filling = null;
+                }
+                // Room is kept for it: the pool is one chunk smaller than the queue
+                pending.offer(END);
+            }
+        }
+        try {
+            writer.join(STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            throw new IOException("Recording still writing after " + STOP_TIMEOUT_MILLIS + " ms");
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return new Result(file, format, sampleRate, writtenSamples.get(), droppedSamples.get(), file.length());
+    }
+
+    public long getWrittenSamples() {
+        return writtenSamples.get();
+    }
+
+    public long getDroppedSamples() {
+        return droppedSamples.get();
+    }
+}
@@ -0,0 +1,155 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import io.flutter.plugin.common.BasicMessageChannel;
+import io.flutter.plugin.common.BinaryCodec;
+import io.flutter.plugin.common.BinaryMessenger;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends raw audio frames to Dart as binary messages, bypassing the standard codec.
+ *
+ * Frame layout (native byte order):
+ * <pre>
+ *   0  int32  format (0 = float32, 1 = int16)
+ *   4  int32  sample rate
+ *   8  int64  sequence number
+ *  16  samples
+ * </pre>
+ * Frames are preallocated direct buffers filled on the audio thread and sent from the main
+ * thread. When every frame is in flight the new audio is dropped instead of queued.
+ *
+ * The messenger copies the message before {@code send} returns, so a frame goes back to the pool
+ * as soon as it has been sent.
+ */
+public class AudioFrameChannel implements PitchDetectionService.AudioFrameListener {
+    public static final int FORMAT_FLOAT32 = 0;
+    public static final int FORMAT_INT16 = 1;
+
+    private static final String CHANNEL = "pitch_detection/audio";
+    private static final int HEADER_BYTES = 16;
+    private static final int POOL_SIZE = 4;
+
+    private final BasicMessageChannel<ByteBuffer> channel;
+    private final Handler mainHandler;
+    private final ArrayBlockingQueue<Frame> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private volatile int format = FORMAT_FLOAT32;
+    private volatile boolean enabled = false;
+    private int frameCapacity = 0;
+    private long sequence = 0;
+
+    public AudioFrameChannel(BinaryMessenger messenger) {
+        this(messenger, new Handler(Looper.getMainLooper()));
+    }
+
+    // Tests send from their own handler
+    AudioFrameChannel(BinaryMessenger messenger, Handler mainHandler) {
+        this.channel = new BasicMessageChannel<>(messenger, CHANNEL, BinaryCodec.INSTANCE);
+        this.mainHandler = mainHandler;
+    }
+
+    public synchronized void start(int format, int maxSamplesPerFrame) {
+        if (format != FORMAT_FLOAT32 && format != FORMAT_INT16) {
+            throw new IllegalArgumentException("Unknown audio frame format: " + format);
+        }
+        this.format = format;
+        if (maxSamplesPerFrame > frameCapacity) {
+            pool.clear();
+            frameCapacity = maxSamplesPerFrame;
+            for (int i = 0; i < POOL_SIZE; i++) {
+                pool.add(new Frame(frameCapacity));
+            }
+        }
+        sequence = 0;
+        droppedFrames.set(0);
+        enabled = true;
+    }
+
+    public void stop() {
+        enabled = false;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    //audio thread
+    @Override
+    public void onAudioFrame(float[] buffer, int offset, int length, int sampleRate) {
+        if (!enabled) return;
+
+        Frame frame = pool.poll();
+        if (frame == null) {
+            droppedFrames.incrementAndGet();
+            return;
+        }
+        if (length > frame.capacity) {
+            // Only after the buffer size grew mid-session
+            frame = new Frame(length);
+        }
+        frame.fill(format, sampleRate, sequence++, buffer, offset, length);
+        mainHandler.post(frame);
+    }
+
+    private final class Frame implements Runnable {
+        final int capacity;
+        final ByteBuffer bytes;
+        final FloatBuffer floats;
+        final ShortBuffer shorts;
+
+        Frame(int capacity) {
+            this.capacity = capacity;
+            this.bytes = ByteBuffer.allocateDirect(HEADER_BYTES + capacity * 4).order(ByteOrder.nativeOrder());
+            bytes.position(HEADER_BYTES);
+            ByteBuffer body = bytes.slice().order(ByteOrder.nativeOrder());
+            this.floats = body.asFloatBuffer();
+            this.shorts = body.asShortBuffer();
+        }
+
+        void fill(int format, int sampleRate, long sequence, float[] buffer, int offset, int length) {
+            bytes.putInt(0, format);
+            bytes.putInt(4, sampleRate);
+            bytes.putLong(8, sequence);
+
+            int sampleBytes;
+            if (format == FORMAT_FLOAT32) {
+                floats.clear();
+                floats.put(buffer, offset, length);
+                sampleBytes = 4;
+            } else {
+                for (int i = 0; i < length; i++) {
+                    shorts.put(i, (short) (buffer[offset + i] * Short.MAX_VALUE));
+                }
+                sampleBytes = 2;
+            }
+            // The messenger sends [0, position), the same as the standard codecs produce
+            bytes.clear();
+            bytes.position(HEADER_BYTES + length * sampleBytes);
+        }
+
+        //main thread
+        @Override
+        public void run() {
+            try {
+                if (enabled) {
+                    channel.send(bytes);
+                }
+            } finally {
+                pool.offer(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+/**
+ * Fixed-size history of the most recent audio samples, kept both as normalized floats and as
+ * 16-bit PCM.
+ *
+ * Single producer (the audio dispatcher thread), any number of readers. The producer never
+ * blocks: it claims the range it is about to overwrite, copies the samples in and then publishes
+ * the new write cursor. Readers copy with {@link System#arraycopy} and drop whatever prefix the
+ * producer may have overwritten while they were copying.
+ */
+public class AudioHistoryBuffer {
+    private final int capacity;
+    private final float[] samples;
+    private final short[] pcm;
+
+    // Total samples ever written. Published after the data is in place.
+    private volatile long writeCursor = 0;
+    // End of the range the producer is currently writing. Published before the data is touched.
+    private volatile long claimCursor = 0;
+    // Written by readers before they re-read claimCursor: a volatile store keeps the array loads
+    // above it, and the volatile load after it can't move up past it. That is the load-load fence
+    // a torn-read check needs; VarHandle.acquireFence() would say so directly but needs API 33
+    private volatile int loadFence;
+
+    public AudioHistoryBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.samples = new float[capacity];
+        this.pcm = new short[capacity];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getWriteCursor() {
+        return writeCursor;
+    }
+
+    public int size() {
+        return (int) Math.min(writeCursor, capacity);
+    }
+
+    //producer only
+    public void write(float[] buffer, int offset, int length) {
+        if (length <= 0) return;
+        if (length > capacity) {
+            offset += length - capacity;
+            length = capacity;
+        }
+
+        long start = writeCursor;
+        claimCursor = start + length;
+
+        int pos = (int) (start % capacity);
+        int first = Math.min(length, capacity - pos);
+        System.arraycopy(buffer, offset, samples, pos, first);
+        System.arraycopy(buffer, offset + first, samples, 0, length - first);
+        toPcm(buffer, offset, pos, first);
+        toPcm(buffer, offset + first, 0, length - first);
+
+        writeCursor = start + length;
+    }
+
+    private void toPcm(float[] src, int srcPos, int dstPos, int length) {
+        for (int i = 0; i < length; i++) {
+            pcm[dstPos + i] = (short) (src[srcPos + i] * Short.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Copies the newest samples into {@code dst} and returns how many were copied.
+     */
+    public int copyLatest(float[] dst) {
+        long end = writeCursor;
+        long start = Math.max(0, end - Math.min(capacity, dst.length));
+        int length = (int) (end - start);
+        copyRange(samples, start, dst, length);
+
+        int torn = Math.min(tornPrefix(start), length);
+        if (torn > 0) {
+            length -= torn;
+            System.arraycopy(dst, torn, dst, 0, length);
+        }
+        return length;
+    }
+
+    public double[] snapshot() {
+        long end = writeCursor;
+        long start = Math.max(0, end - capacity);
+        float[] copy = new float[(int) (end - start)];
+        copyRange(samples, start, copy, copy.length);
+
+        int torn = Math.min(tornPrefix(start), copy.length);
+        double[] result = new double[copy.length - torn];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = copy[torn + i];
+        }
+        return result;
+    }
+
+    //16-bit little endian
+    public byte[] snapshotPcm() {
+        long end = writeCursor;
+        long start = Math.max(0, end - capacity);
+        short[] copy = new short[(int) (end - start)];
+        copyRange(pcm, start, copy, copy.length);
+
+        int torn = Math.min(tornPrefix(start), copy.length);
+        byte[] result = new byte[(copy.length - torn) * 2];
+        for (int i = torn, j = 0; i < copy.length; i++) {
+            short sample = copy[i];
+            result[j++] = (byte) (sample & 0xff);
+            result[j++] = (byte) ((sample >> 8) & 0xff);
+        }
+        return result;
+    }
+
+    /**
+     * 16-bit little endian samples appended since {@code fromSample} (an absolute sample index).
+     * If the reader fell behind by more than the capacity, the chunk starts at the oldest sample
+     * still available and {@link PcmChunk#offset} shows the gap.
+     */
+    public PcmChunk pcmSince(long fromSample) {
+        long end = writeCursor;
+        long start = Math.max(Math.max(0, fromSample), end - capacity);
+        if (start >= end) {
+            return new PcmChunk(end, new byte[0]);
+        }
+
+        short[] copy = new short[(int) (end - start)];
+        copyRange(pcm, start, copy, copy.length);
+
+        int torn = Math.min(tornPrefix(start), copy.length);
+        byte[] result = new byte[(copy.length - torn) * 2];
+        for (int i = torn, j = 0; i < copy.length; i++) {
+            short sample = copy[i];
+            result[j++] = (byte) (sample & 0xff);
+            result[j++] = (byte) ((sample >> 8) & 0xff);
+        }
+        return new PcmChunk(start + torn, result);
+    }
+
+    public static final class PcmChunk {
+        public final long offset;
+        public final byte[] data;
+
+        PcmChunk(long offset, byte[] data) {
+            this.offset = offset;
+            this.data = data;
+        }
+
+        public long end() {
+            return offset + data.length / 2;
+        }
+    }
+
+    private void copyRange(Object src, long start, Object dst, int length) {
+        int pos = (int) (start % capacity);
+        int first = Math.min(length, capacity - pos);
+        System.arraycopy(src, pos, dst, 0, first);
+        System.arraycopy(src, 0, dst, first, length - first);
+    }
+
+    // Samples at the head of a copy starting at `start` that the producer may have overwritten meanwhile
+    private int tornPrefix(long start) {
+        loadFence = 0;
+        long overwritten = claimCursor - capacity;
+        return overwritten > start ? (int) (overwritten - start) : 0;
+    }
+}
@@ -0,0 +1,27 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import java.io.IOException;
+
+import be.tarsos.dsp.io.TarsosDSPAudioInputStream;
+
+/**
+ * Where a {@link PitchDetectionService} session reads its audio from: the microphone by default
+ * ({@link MicrophoneSource}), or a file or generated signal ({@link PcmSource},
+ * {@link SignalSource}) to run the same pipeline without a device.
+ */
+public interface AudioSource {
+
+    /**
+     * Opens a new 16-bit mono stream for one session. Called by {@code startDetection}; the
+     * session closes it when it stops.
+     *
+     * @param bufferSize analysis window, a hint for how much to read at a time
+     */
+    TarsosDSPAudioInputStream open(int sampleRate, int bufferSize) throws IOException;
+
+    /**
+     * True when audio arrives in real time and is lost if not read in time, as from a
+     * microphone. Other sources are read as fast as the chain processes them, and never skipped.
+     */
+    boolean isLive();
+}
@@ -0,0 +1,140 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import java.io.IOException;
+
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.TarsosDSPAudioInputStream;
+
+/**
+ * Decouples capture from analysis. {@link #run()} reads the source on the capture worker into a
+ * ring buffer; the dispatcher reads this stream on the analysis worker. A slow buffer of analysis
+ * then no longer delays the next microphone read: capture keeps up, and only when analysis falls
+ * behind by a whole ring are the oldest bytes overwritten (and counted).
+ *
+ * Nothing is allocated after construction.
+ */
+public class CaptureBufferStream implements TarsosDSPAudioInputStream, Runnable {
+    private final TarsosDSPAudioInputStream source;
+    private final int frameBytes;
+    private final byte[] ring;
+    private final byte[] chunk;
+    private final Object lock = new Object();
+    // Guarded by lock
+    private int readPosition = 0;
+    private int size = 0;
+    private boolean ended = false;
+    private long overwrittenBytes = 0;
+    private volatile boolean closed = false;
+
+    /**
+     * @param chunkBytes  bytes per source read, about one hop
+     * @param ringBytes   how far analysis may fall behind capture
+     */
+    public CaptureBufferStream(TarsosDSPAudioInputStream source, int chunkBytes, int ringBytes) {
+        this.source = source;
+        this.frameBytes = Math.max(1, source.getFormat().getFrameSize());
+        this.chunk = new byte[roundToFrame(chunkBytes)];
+        this.ring = new byte[Math.max(roundToFrame(ringBytes), chunk.length * 2)];
+    }
+
+    private int roundToFrame(int bytes) {
+        return Math.max(frameBytes, bytes / frameBytes * frameBytes);
+    }
+
+    //capture worker, until closed or the source ends
+    @Override
+    public void run() {
+        try {
+            while (!closed) {
+                int read = source.read(chunk, 0, chunk.length);
+                if (read < 0) break;
+                if (read > 0) write(read);
+            }
+        } catch (IOException e) {
+            // The source was closed under the read: the session is over
+        } finally {
+            synchronized (lock) {
+                ended = true;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void write(int length) {
+        synchronized (lock) {
+            int free = ring.length - size;
+            if (length > free) {
+                int drop = length - free;
+                readPosition = (readPosition + drop) % ring.length;
+                size -= drop;
+                overwrittenBytes += drop;
+            }
+            int writePosition = (readPosition + size) % ring.length;
+            int first = Math.min(length, ring.length - writePosition);
+            System.arraycopy(chunk, 0, ring, writePosition, first);
+            System.arraycopy(chunk, first, ring, 0, length - first);
+            size += length;
+            lock.notifyAll();
+        }
+    }
+
+    //analysis worker
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        synchronized (lock) {
+            while (size == 0 && !ended && !closed) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return -1;
+                }
+            }
+            if (size == 0) return -1;
+
+            int count = Math.min(size, length / frameBytes * frameBytes);
+            int first = Math.min(count, ring.length - readPosition);
+            System.arraycopy(ring, readPosition, buffer, offset, first);
+            System.arraycopy(ring, 0, buffer, offset + first, count - first);
+            readPosition = (readPosition + count) % ring.length;
+            size -= count;
+            return count;
+        }
+    }
+
+    @Override
+    public long skip(long bytes) throws IOException {
+        synchronized (lock) {
+            int skipped = (int) Math.min(size, bytes);
+            readPosition = (readPosition + skipped) % ring.length;
+            size -= skipped;
+            return skipped;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        source.close();
+    }
+
+    @Override
+    public TarsosDSPAudioFormat getFormat() {
+        return source.getFormat();
+    }
+
+    @Override
+    public long getFrameLength() {
+        return -1;
+    }
+
+    // Audio lost because analysis fell more than a ring behind
+    public long getOverwrittenBytes() {
+        synchronized (lock) {
+            return overwrittenBytes;
+        }
+    }
+}
@@ -9,18 +9,24 @@ import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
 import io.flutter.plugin.common.MethodChannel.Result;
-import be.tarsos.dsp.pitch.PitchDetectionHandler;
 import com.mattiolichiara.flutter_pitch_detection.*;
+import io.flutter.plugin.common.PluginRegistry;
+import be.tarsos.dsp.pitch.PitchProcessor;
 import android.os.Handler;
+import android.os.IBinder;
 import android.os.Looper;
-import io.flutter.plugin.common.PluginRegistry;
 import android.util.Log;
 
+import java.io.File;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
 import android.app.Activity;
+import android.content.ComponentName;
 import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
 import android.Manifest;
 
@@ -35,11 +41,33 @@ import java.util.List;
 public class FlutterPitchDetectionPlugin implements FlutterPlugin, MethodCallHandler, EventChannel.StreamHandler, ActivityAware, PluginRegistry.RequestPermissionsResultListener {
   private static final String CHANNEL = "pitch_detection/methods";
   private static final String EVENT_CHANNEL = "pitch_detection/events";
+  // Low E on a bass is 41.2 Hz
+  private static final double LOW_LATENCY_MIN_FREQUENCY = 40.0;
+  private static final int DEFAULT_MAX_BUFFERED_RESULTS = 10000;
 
   private MethodChannel methodChannel;
   private EventChannel eventChannel;
+  private AudioFrameChannel audioFrameChannel;
+  private SpectrumChannel spectrumChannel;
+  private NoteEventChannel noteEventChannel;
+  // Kept across sessions: every new service starts with it
+  private PitchSmoother pitchSmoother;
+  private SilenceGate silenceGate;
+  private MultiPitchDetector multiPitchDetector;
+  // null while instrumentation is off
+  private PipelineMetrics pipelineMetrics;
+  private AudioFileRecorder recorder;
   private EventChannel.EventSink eventSink;
+  private PitchEventBuilder eventBuilder = new PitchEventBuilder(PitchPayload.FULL);
+  // PCM delta subscribers need every buffer, pitched or not, to keep the audio gapless
+  private volatile boolean publishUnpitched = false;
   private PitchDetectionService pitchService;
+  // Set while bound to the foreground service; pitchService is then the detection it runs
+  private PitchForegroundService foregroundService;
+  private ServiceConnection foregroundConnection;
+  // Waiting for the bind in progress: callbacks, then method calls that arrived meanwhile
+  private final List<ForegroundServiceCallback> bindCallbacks = new ArrayList<>();
+  private final List<Runnable> callsWhileBinding = new ArrayList<>();
   private final Object sinkLock = new Object();
   private Activity activity;
   private Context context;
@@ -74,7 +102,11 @@ public class FlutterPitchDetectionPlugin implements FlutterPlugin, MethodCallHan
     if (requestCode == 1001) {
       if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
         if (pendingCall != null && pendingResult != null) {
-          startPitchDetection(pendingCall, pendingResult);
+          if ("startBackgroundDetection".equals(pendingCall.method)) {
+            startBackgroundDetection(pendingCall, pendingResult);
+          } else {
+            startPitchDetection(pendingCall, pendingResult);
+          }
         }
       } else {
         if (pendingResult != null) {
@@ -96,38 +128,238 @@ public class FlutterPitchDetectionPlugin implements FlutterPlugin, MethodCallHan
 
     eventChannel = new EventChannel(binding.getBinaryMessenger(), EVENT_CHANNEL);
     eventChannel.setStreamHandler(this);
+
+    audioFrameChannel = new AudioFrameChannel(binding.getBinaryMessenger());
+    spectrumChannel = new SpectrumChannel(binding.getBinaryMessenger());
+    noteEventChannel = new NoteEventChannel(binding.getBinaryMessenger());
+
+    // A session started by a previous engine is still capturing: pick it up
+    if (PitchForegroundService.isRunning()) {
+      bindForegroundService(null);
+    }
   }
 
   private void startPitchDetection(MethodCall call, Result result) {
-    int sampleRate = call.argument("sampleRate");
-    int bufferSize = call.argument("bufferSize");
-    int overlap = call.argument("overlap");
+    stopForegroundDetection();
+    if (pitchService != null) {
+      pitchService.stopDetection();
+    }
+    resetEvents(call);
+
+    pitchService = createPitchService(call, pitchHandler);
+    pitchService.startDetection();
+    result.success(null);
+  }
+
+  private void resetEvents(MethodCall call) {
+    int maxEventsPerSecond = call.argument("maxEventsPerSecond") != null ?
+            ((Integer) call.argument("maxEventsPerSecond")).intValue() : 0;
+    eventPublisher.clear();
+    eventPublisher.setMaxEventsPerSecond(maxEventsPerSecond);
+    synchronized (sinkLock) {
+      eventBuilder.reset();
+    }
+  }
+
+  // A configured but not yet started service for the startDetection arguments
+  private PitchDetectionService createPitchService(MethodCall call, PitchDetectionService.PitchFrameListener listener) {
+    int sampleRate = call.argument("sampleRate") != null ?
+            ((Integer) call.argument("sampleRate")).intValue() : 0;
+    int bufferSize = call.argument("bufferSize") != null ?
+            ((Integer) call.argument("bufferSize")).intValue() : 0;
+    int overlap = call.argument("overlap") != null ?
+            ((Integer) call.argument("overlap")).intValue() : 0;
+    Double minFrequency = call.argument("minFrequency");
+    boolean lowLatency = Boolean.TRUE.equals(call.argument("lowLatency"));
     double toleranceCents = call.argument("toleranceCents") != null ?
             ((Double) call.argument("toleranceCents")).doubleValue() : 0.5;
     double minPrecision = call.argument("minPrecision") != null ?
             ((Double) call.argument("minPrecision")).doubleValue() : 0.8;
     double a4Reference = call.argument("a4Reference") != null ?
             ((Double) call.argument("a4Reference")).doubleValue() : 440.0;
+    String algorithm = call.argument("algorithm");
 
-    if (pitchService != null) {
-      pitchService.stopDetection();
+    if (sampleRate == 0) sampleRate = 44100;
+    if (bufferSize == 0) {
+      // No explicit window: size it for the lowest pitch wanted, or fall back to the default
+      bufferSize = minFrequency != null || lowLatency
+              ? PitchDetectionService.windowForMinFrequency(sampleRate, minFrequency != null ? minFrequency : LOW_LATENCY_MIN_FREQUENCY)
+              : PitchDetectionService.DEFAULT_BUFFER_SIZE;
+    }
+    if (overlap == 0) {
+      overlap = lowLatency ? bufferSize * 3 / 4 : Math.min(1024, bufferSize / 2);
     }
 
-    pitchService = new PitchDetectionService(
-            sampleRate != 0 ? sampleRate : 44100,
-            bufferSize != 0 ? bufferSize : 2048,
-            overlap != 0 ? overlap : 1024,
+    PitchDetectionService service = new PitchDetectionService(
+            sampleRate,
+            bufferSize,
+            overlap,
             toleranceCents != 0.0f ? toleranceCents : 1.0f,
             minPrecision != 0.0f ? minPrecision : 0.8,
             a4Reference,
-            pitchHandler
+            listener
     );
-    pitchService.startDetection();
-    result.success(null);
+    configureService(service);
+    if (algorithm != null) {
+      service.setAlgorithm(PitchEstimationProcessor.parseAlgorithm(algorithm));
+    }
+    service.setSeparateAnalysis(Boolean.TRUE.equals(call.argument("separateAnalysis")));
+    return service;
+  }
+
+  // Sends a service's output to this engine and applies the settings made through the plugin
+  void configureService(PitchDetectionService service) {
+    service.setAudioFrameListener(audioFrameChannel);
+    service.setSpectrumListener(spectrumChannel);
+    applySmoother(service);
+    service.setSilenceGate(silenceGate);
+    service.setMultiPitchDetector(multiPitchDetector);
+    service.setMetrics(pipelineMetrics);
+    service.setRecorder(recorder);
+  }
+
+  private interface ForegroundServiceCallback {
+    // null when the service couldn't be bound
+    void onBound(PitchForegroundService service);
+  }
+
+  // Starts detection in the foreground service, which keeps running when the engine goes away
+  private void startBackgroundDetection(MethodCall call, Result result) {
+    if (pitchService != null && foregroundService == null) {
+      pitchService.stopDetection();
+      pitchService = null;
+    }
+    resetEvents(call);
+
+    Integer maxBufferedResults = call.argument("maxBufferedResults");
+    Intent intent = new Intent(context, PitchForegroundService.class);
+    intent.putExtra(PitchForegroundService.EXTRA_TITLE, (String) call.argument("notificationTitle"));
+    intent.putExtra(PitchForegroundService.EXTRA_TEXT, (String) call.argument("notificationText"));
+    ContextCompat.startForegroundService(context, intent);
+
+    bindForegroundService(service -> {
+      if (service == null) {
+        result.error("BACKGROUND_START_FAILED", "Failed to start background detection: service could not be bound", null);
+        return;
+      }
+      try {
+        PitchDetectionService detection = createPitchService(call, service.getRelay());
+        service.run(detection, maxBufferedResults != null ? maxBufferedResults : DEFAULT_MAX_BUFFERED_RESULTS);
+        pitchService = detection;
+        result.success(null);
+      } catch (Exception e) {
+        stopForegroundDetection();
+        result.error("BACKGROUND_START_FAILED", "Failed to start background detection: " + e.getMessage(), null);
+      }
+    });
+  }
+
+  // Between bindService and onServiceConnected
+  private boolean isBindingForegroundService() {
+    return foregroundConnection != null && foregroundService == null;
+  }
+
+  // Main thread. Runs `callback` (if any) once bound; frames then go to pitchHandler
+  private void bindForegroundService(ForegroundServiceCallback callback) {
+    if (foregroundService != null) {
+      if (callback != null) callback.onBound(foregroundService);
+      return;
+    }
+    if (callback != null) bindCallbacks.add(callback);
+    if (foregroundConnection != null) return;
+    foregroundConnection = new ServiceConnection() {
+      @Override
+      public void onServiceConnected(ComponentName name, IBinder binder) {
+        foregroundService = ((PitchForegroundService.LocalBinder) binder).getService();
+        foregroundService.attach(pitchHandler);
+        PitchDetectionService detection = foregroundService.getDetection();
+        if (detection != null) {
+          // Started by an earlier engine: its channels are gone, send to this engine's instead.
+          // The settings it was started with carry over
+          pitchSmoother = detection.getSmoother();
+          silenceGate = detection.getSilenceGate();
+          multiPitchDetector = detection.getMultiPitchDetector();
+          configureService(detection);
+          pitchService = detection;
+        }
+        finishBinding(foregroundService);
+      }
+
+      @Override
+      public void onServiceDisconnected(ComponentName name) {
+        // Its process is gone: forget it rather than wait for a restart
+        context.unbindService(this);
+        foregroundConnection = null;
+        foregroundService = null;
+        pitchService = null;
+      }
+    };
+    if (!context.bindService(new Intent(context, PitchForegroundService.class), foregroundConnection, Context.BIND_AUTO_CREATE)) {
+      context.unbindService(foregroundConnection);
+      foregroundConnection = null;
+      finishBinding(null);
+    }
+  }
+
+  // Runs what waited for the bind, in arrival order
+  private void finishBinding(PitchForegroundService service) {
+    List<ForegroundServiceCallback> callbacks = new ArrayList<>(bindCallbacks);
+    List<Runnable> calls = new ArrayList<>(callsWhileBinding);
+    bindCallbacks.clear();
+    callsWhileBinding.clear();
+    for (ForegroundServiceCallback callback : callbacks) {
+      callback.onBound(service);
+    }
+    for (Runnable call : calls) {
+      call.run();
+    }
+  }
+
+  // Stops the foreground service's detection and the service itself, if bound
+  private void stopForegroundDetection() {
+    PitchForegroundService service = foregroundService;
+    if (service == null) return;
+    service.detach();
+    service.shutdown();
+    context.unbindService(foregroundConnection);
+    foregroundService = null;
+    foregroundConnection = null;
+    pitchService = null;
+  }
+
+  // Leaves the foreground service running, buffering results until an engine binds again
+  private void releaseForegroundService() {
+    if (isBindingForegroundService()) {
+      context.unbindService(foregroundConnection);
+      foregroundConnection = null;
+      bindCallbacks.clear();
+      callsWhileBinding.clear();
+      return;
+    }
+    PitchForegroundService service = foregroundService;
+    if (service == null) return;
+    PitchDetectionService detection = service.getDetection();
+    if (detection != null) {
+      // The detection outlives this engine; its recording and channels don't
+      detection.setRecorder(null);
+      detection.setAudioFrameListener(null);
+      detection.setSpectrumListener(null);
+    }
+    service.detach();
+    context.unbindService(foregroundConnection);
+    foregroundService = null;
+    foregroundConnection = null;
+    pitchService = null;
   }
 
   @Override
   public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+    if (isBindingForegroundService()) {
+      // Reattaching to a background session: getMissedResults, stopDetection and the rest need
+      // it, so they wait for the bind (a few milliseconds) instead of seeing no session
+      callsWhileBinding.add(() -> onMethodCall(call, result));
+      return;
+    }
     switch (call.method) {
 
 //      case "getPlatformVersion":
@@ -144,24 +376,68 @@ public class FlutterPitchDetectionPlugin implements FlutterPlugin, MethodCallHan
         }
         break;
 
+      case "startBackgroundDetection":
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.RECORD_AUDIO) != PackageManager.PERMISSION_GRANTED) {
+          if (activity == null) {
+            result.error("PERMISSION_DENIED", "Microphone permission not granted", null);
+            break;
+          }
+          pendingCall = call;
+          pendingResult = result;
+          ActivityCompat.requestPermissions(activity, new String[]{Manifest.permission.RECORD_AUDIO}, 1001);
+        } else {
+          startBackgroundDetection(call, result);
+        }
+        break;
+
+      case "isBackgroundDetectionRunning":
+        result.success(PitchForegroundService.isRunning());
+        break;
+
+      case "getMissedResults":
+        try {
+          PitchForegroundService service = foregroundService;
+          PitchResultBuffer.Batch batch = service != null ? service.takeMissedResults() : null;
+          Map<String, Object> data = new HashMap<>();
+          data.put("sampleRate", pitchService != null ? pitchService.getSampleRate() : 0);
+          data.put("fieldsPerFrame", OfflinePitchAnalyzer.FIELDS_PER_FRAME);
+          data.put("track", batch != null ? batch.track : new float[0]);
+          data.put("overwritten", batch != null ? batch.overwritten : 0L);
+          data.put("startedAtMillis", service != null ? service.getStartedAtMillis() : 0L);
+          result.success(data);
+        } catch (Exception e) {
+          result.error("GET_MISSED_RESULTS_FAILED", "Failed to get missed results: " + e.getMessage(), null);
+        }
+        break;
+
       case "setParameters":
         try {
-          int newSampleRate = call.argument("sampleRate");
-          int newBufferSize = call.argument("bufferSize");
-          double newToleranceCents = call.argument("toleranceCents") != null ?
-                  ((Double) call.argument("toleranceCents")).doubleValue() : 0.5;
-          double newMinPrecision = call.argument("minPrecision") != null ?
-                  ((Double) call.argument("minPrecision")).doubleValue() : 0.8;
-          double newA4Reference = call.argument("a4Reference") != null ?
-                  ((Double) call.argument("a4Reference")).doubleValue() : 440.0;
-
-          if (pitchService != null) {
-            pitchService.setParameters(
-                    newSampleRate != 0 ? newSampleRate : 44100,
-                    newBufferSize != 0 ? newBufferSize : 1024,
-                    newToleranceCents != 0.0f ? newToleranceCents : 1.0f,
-                    newMinPrecision != 0.0f ? newMinPrecision : 0.8,
-                    newA4Reference
+          if (pitchService != null) {
+            // Missing arguments keep their current value, so only what changed is reconfigured
+            Integer newSampleRate = call.argument("sampleRate");
+            Integer newBufferSize = call.argument("bufferSize");
+            Integer newOverlap = call.argument("overlap");
+            Double newToleranceCents = call.argument("toleranceCents");
+            Double newMinPrecision = call.argument("minPrecision");
+            Double newA4Reference = call.argument("a4Reference");
+
+            if (newA4Reference != null && (newA4Reference <= 0.0 || newA4Reference > 2000.0)) {
+              result.error("INVALID_A4_REFERENCE", "A4 Reference must be between 0 and 2000 Hz", null);
+              break;
+            }
+            if (newMinPrecision != null && newMinPrecision != 0.0) {
+              pitchService.setMinPrecision(newMinPrecision);
+            }
+            if (newToleranceCents != null && newToleranceCents != 0.0) {
+              pitchService.setToleranceCents(newToleranceCents);
+            }
+            if (newA4Reference != null) {
+              pitchService.setA4Reference(newA4Reference);
+            }
+            pitchService.reconfigure(
+                    newSampleRate != null && newSampleRate != 0 ? newSampleRate : pitchService.getSampleRate(),
+                    newBufferSize != null && newBufferSize != 0 ? newBufferSize : pitchService.getBufferSize(),
+                    newOverlap != null ? newOverlap : pitchService.getOverlap()
             );
             result.success(null);
           } else {
@@ -201,9 +477,12 @@ public class FlutterPitchDetectionPlugin implements FlutterPlugin, MethodCallHan
         break;
 
       case "stopDetection":
-        if (pitchService != null) {
+        if (foregroundService != null) {
+          stopForegroundDetection();
+        } else if (pitchService != null) {
           pitchService.stopDetection();
         }
+        eventPublisher.clear();
         result.success(null);
         break;
 
@@ -430,6 +709,25 @@ public class FlutterPitchDetectionPlugin implements FlutterPlugin, MethodCallHan
         }
         break;
 
+      case "getSnapshot":
+        try {
+          if (pitchService != null) {
+            List<String> fields = call.argument("fields");
+            Double tolerance = call.argument("toleranceCents");
+            Double precision = call.argument("minPrecision");
+            result.success(pitchService.getSnapshot(
+                    fields,
+                    tolerance != null ? tolerance : pitchService.getToleranceCents(),
+                    precision != null ? precision : pitchService.getMinPrecision()
+            ));
+          } else {
+            result.error("SERVICE_NOT_RUNNING", "Pitch detection service not running", null);
+          }
+        } catch (Exception e) {
+          result.error("SNAPSHOT_FAILED", "Failed to get snapshot: " + e.getMessage(), null);
+        }
+        break;
+
       case "getPitchDeviation":
         try {
           if (pitchService != null) {
@@ -492,77 +790,496 @@ public class FlutterPitchDetectionPlugin implements FlutterPlugin, MethodCallHan
         }
         break;
 
+      case "setAlgorithm":
+        try {
+          String algorithm = call.argument("algorithm");
+          if (pitchService != null) {
+            pitchService.setAlgorithm(PitchEstimationProcessor.parseAlgorithm(algorithm));
+            result.success(null);
+          } else {
+            result.error("SERVICE_NOT_RUNNING", "Pitch detection service not running", null);
+          }
+        } catch (Exception e) {
+          result.error("SET_ALGORITHM_FAILED", "Failed to set algorithm: " + e.getMessage(), null);
+        }
+        break;
+
+      case "getAlgorithm":
+        try {
+          if (pitchService != null) {
+            result.success(pitchService.getAlgorithm().name());
+          } else {
+            result.error("SERVICE_NOT_RUNNING", "Pitch detection service not running", null);
+          }
+        } catch (Exception e) {
+          result.error("GET_ALGORITHM_FAILED", "Failed to get algorithm: " + e.getMessage(), null);
+        }
+        break;
+
+      case "getAlgorithmCost":
+        try {
+          if (pitchService != null) {
+            result.success(pitchService.getAlgorithmCost());
+          } else {
+            result.error("SERVICE_NOT_RUNNING", "Pitch detection service not running", null);
+          }
+        } catch (Exception e) {
+          result.error("GET_ALGORITHM_COST_FAILED", "Failed to get algorithm cost: " + e.getMessage(), null);
+        }
+        break;
+
+      case "setAudioFrameStreaming":
+        try {
+          Boolean enabled = call.argument("enabled");
+          if (enabled != null && enabled) {
+            String format = call.argument("format");
+            audioFrameChannel.start(
+                    "int16".equals(format) ? AudioFrameChannel.FORMAT_INT16 : AudioFrameChannel.FORMAT_FLOAT32,
+                    pitchService != null ? pitchService.getBufferSize() : 8192
+            );
+          } else {
+            audioFrameChannel.stop();
+          }
+          result.success(null);
+        } catch (Exception e) {
+          result.error("SET_AUDIO_FRAME_STREAMING_FAILED", "Failed to set audio frame streaming: " + e.getMessage(), null);
+        }
+        break;
+
+      case "setSpectrumStreaming":
+        try {
+          Boolean enabled = call.argument("enabled");
+          if (enabled != null && enabled) {
+            Integer bands = call.argument("bands");
+            Double minFrequency = call.argument("minFrequency");
+            Double maxFrequency = call.argument("maxFrequency");
+            spectrumChannel.start(
+                    bands != null ? bands : 64,
+                    minFrequency != null ? minFrequency : 50.0,
+                    maxFrequency != null ? maxFrequency : 8000.0
+            );
+          } else {
+            spectrumChannel.stop();
+          }
+          result.success(null);
+        } catch (Exception e) {
+          result.error("SET_SPECTRUM_STREAMING_FAILED", "Failed to set spectrum streaming: " + e.getMessage(), null);
+        }
+        break;
+
+      case "setSmoothing":
+        try {
+          String mode = call.argument("mode");
+          Boolean octaveCorrection = call.argument("octaveCorrection");
+          Integer octaveHoldFrames = call.argument("octaveHoldFrames");
+          Integer window = call.argument("window");
+          Double minCutoff = call.argument("minCutoff");
+          Double beta = call.argument("beta");
+          Double processNoise = call.argument("processNoise");
+          Double measurementNoise = call.argument("measurementNoise");
+
+          PitchSmoother.Mode smoothingMode = PitchSmoother.Mode.fromKey(mode);
+          boolean correctOctaves = Boolean.TRUE.equals(octaveCorrection);
+          pitchSmoother = smoothingMode == PitchSmoother.Mode.NONE && !correctOctaves ? null
+                  : new PitchSmoother(
+                          smoothingMode,
+                          correctOctaves,
+                          octaveHoldFrames != null ? octaveHoldFrames : 3,
+                          window != null ? window : 5,
+                          minCutoff != null ? minCutoff : 2.0,
+                          beta != null ? beta : 0.5,
+                          processNoise != null ? processNoise : 0.001,
+                          measurementNoise != null ? measurementNoise : 0.01
+                  );
+          result.success(applySmoother(pitchService));
+        } catch (Exception e) {
+          result.error("SET_SMOOTHING_FAILED", "Failed to set smoothing: " + e.getMessage(), null);
+        }
+        break;
+
+      case "setSilenceGate":
+        try {
+          Boolean enabled = call.argument("enabled");
+          Double thresholdDbFS = call.argument("thresholdDbFS");
+          Double hangoverMillis = call.argument("hangoverMillis");
+          String measure = call.argument("measure");
+          Boolean suppressEvents = call.argument("suppressEvents");
+
+          silenceGate = enabled != null && !enabled ? null
+                  : new SilenceGate(
+                          thresholdDbFS != null ? thresholdDbFS : -60.0,
+                          hangoverMillis != null ? hangoverMillis : 300.0,
+                          "peak".equals(measure),
+                          Boolean.TRUE.equals(suppressEvents)
+                  );
+          if (pitchService != null) {
+            pitchService.setSilenceGate(silenceGate);
+          }
+          result.success(null);
+        } catch (Exception e) {
+          result.error("SET_SILENCE_GATE_FAILED", "Failed to set silence gate: " + e.getMessage(), null);
+        }
+        break;
+
+      case "setMultiPitch":
+        try {
+          Boolean enabled = call.argument("enabled");
+          Integer maxPitches = call.argument("maxPitches");
+          Double minFrequency = call.argument("minFrequency");
+          Double maxFrequency = call.argument("maxFrequency");
+          Double minSalience = call.argument("minSalience");
+
+          multiPitchDetector = enabled != null && !enabled ? null
+                  : new MultiPitchDetector(
+                          maxPitches != null ? maxPitches : 6,
+                          minFrequency != null ? minFrequency : 60.0,
+                          maxFrequency != null ? maxFrequency : 2000.0,
+                          minSalience != null ? minSalience : 0.3
+                  );
+          if (pitchService != null) {
+            pitchService.setMultiPitchDetector(multiPitchDetector);
+          }
+          result.success(null);
+        } catch (Exception e) {
+          result.error("SET_MULTI_PITCH_FAILED", "Failed to set multi-pitch detection: " + e.getMessage(), null);
+        }
+        break;
+
+      case "setLoudnessMetering":
+        try {
+          if (pitchService != null) {
+            pitchService.setLoudnessMetering(Boolean.TRUE.equals(call.argument("enabled")));
+            result.success(null);
+          } else {
+            result.error("SERVICE_NOT_RUNNING", "Pitch detection service not running", null);
+          }
+        } catch (Exception e) {
+          result.error("SET_LOUDNESS_METERING_FAILED", "Failed to set loudness metering: " + e.getMessage(), null);
+        }
+        break;
+
+      case "getLevels":
+        try {
+          LevelMeter.Reading levels = pitchService != null ? pitchService.getLevels() : null;
+          if (levels != null) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("rmsDbFS", levels.rmsDbFS);
+            data.put("peakDbFS", levels.peakDbFS);
+            data.put("dcOffset", levels.dcOffset);
+            data.put("clippedSamples", levels.clippedSamples);
+            if (levels.loudnessEnabled) {
+              data.put("momentaryLufs", levels.momentaryLufs);
+              data.put("shortTermLufs", levels.shortTermLufs);
+              data.put("truePeakDbTP", levels.truePeakDbTP);
+              data.put("maxTruePeakDbTP", levels.maxTruePeakDbTP);
+            }
+            result.success(data);
+          } else {
+            result.error("SERVICE_NOT_RUNNING", "Pitch detection service not running", null);
+          }
+        } catch (Exception e) {
+          result.error("GET_LEVELS_FAILED", "Failed to get levels: " + e.getMessage(), null);
+        }
+        break;
+
+      case "setMetricsEnabled":
+        try {
+          // Enabling again starts over from empty histograms
+          pipelineMetrics = Boolean.TRUE.equals(call.argument("enabled")) ? new PipelineMetrics() : null;
+          eventPublisher.setMetrics(pipelineMetrics);
+          if (pitchService != null) {
+            pitchService.setMetrics(pipelineMetrics);
+          }
+          result.success(null);
+        } catch (Exception e) {
+          result.error("SET_METRICS_FAILED", "Failed to set metrics: " + e.getMessage(), null);
+        }
+        break;
+
+      case "getMetrics":
+        try {
+          PipelineMetrics metrics = pipelineMetrics;
+          if (metrics == null) {
+            result.success(null);
+            break;
+          }
+          Map<String, Object> data = metrics.toMap();
+          data.put("captureOverwrittenBytes", pitchService != null ? pitchService.getCaptureOverwrittenBytes() : 0L);
+          result.success(data);
+        } catch (Exception e) {
+          result.error("GET_METRICS_FAILED", "Failed to get metrics: " + e.getMessage(), null);
+        }
+        break;
+
+      case "getPitchTrack":
+        try {
+          if (pitchService == null) {
+            result.error("SERVICE_NOT_RUNNING", "Pitch detection service not running", null);
+            break;
+          }
+          Double fromMs = call.argument("fromMs");
+          Double toMs = call.argument("toMs");
+          Integer decimation = call.argument("decimation");
+          float[] track = pitchService.getPitchTrack(
+                  fromMs != null ? fromMs / 1000 : 0,
+                  toMs != null ? toMs / 1000 : Double.MAX_VALUE,
+                  decimation != null ? decimation : 1
+          );
+          Map<String, Object> data = new HashMap<>();
+          data.put("sampleRate", pitchService.getSampleRate());
+          data.put("duration", pitchService.getPitchTrackEnd());
+          data.put("fieldsPerFrame", OfflinePitchAnalyzer.FIELDS_PER_FRAME);
+          data.put("track", track);
+          result.success(data);
+        } catch (Exception e) {
+          result.error("GET_PITCH_TRACK_FAILED", "Failed to get pitch track: " + e.getMessage(), null);
+        }
+        break;
+
+      case "startRecording":
+        startRecording(call, result);
+        break;
+
+      case "stopRecording":
+        stopRecording(result);
+        break;
+
+      case "getSkippedFrames":
+        SilenceGate gate = silenceGate;
+        result.success(gate != null ? gate.getSkippedFrames() : 0L);
+        break;
+
+      case "analyzeAudio":
+        analyzeAudio(call, result);
+        break;
+
       default:
         result.notImplemented();
     }
   }
 
-  private final PitchDetectionHandler pitchHandler = (pitchResult, audioEvent) -> {
-    float pitch = pitchResult.getPitch();
-    if (pitch <= 0) return;
+  // Returns the latency the smoother adds, in milliseconds
+  private double applySmoother(PitchDetectionService service) {
+    PitchSmoother smoother = pitchSmoother;
+    if (service == null) {
+      // Nothing running yet: assume the default window
+      int hop = PitchDetectionService.DEFAULT_BUFFER_SIZE - 1024;
+      return smoother == null ? 0 : smoother.getLatencySeconds(hop / 44100.0) * 1000;
+    }
+    return service.setSmoother(smoother);
+  }
 
-    new Handler(Looper.getMainLooper()).post(() -> {
-      synchronized (sinkLock) {
-        if (eventSink != null) {
-          int midi = pitchService.frequencyToMidi(pitch);
-          Map<String, Object> data = new HashMap<>();
-          data.put("noteOctave", pitchService.printNoteOctave());
-          data.put("note", pitchService.midiToNoteName(midi));
-          data.put("octave", pitchService.midiToOctave(midi));
-          data.put("midiNote", midi);
-          data.put("frequency", pitch);
-
-          double toleranceCents = pitchService.getToleranceCents();
-          double minPrecision = pitchService.getMinPrecision();
-
-          data.put("accuracy", pitchService.getAccuracy(toleranceCents));
-          data.put("pitchDeviation", pitchService.getPitchDeviation());
-          data.put("isOnPitch", pitchService.isOnPitch(toleranceCents, minPrecision));
-          data.put("volume", pitchService.getVolume());
-          data.put("volumeDbFS", pitchService.getVolumeFromDbFS());
-
-          data.put("toleranceCents", toleranceCents);
-          data.put("bufferSize", pitchService.getBufferSize());
-          data.put("sampleRate", pitchService.getSampleRate());
-          data.put("minPrecision", minPrecision);
-          data.put("a4Reference", pitchService.getA4Reference());
+  // Replaces any recording in progress, whose file is still completed
+  private void startRecording(MethodCall call, Result result) {
+    String path = call.argument("path");
+    Double maxQueueSeconds = call.argument("maxQueueSeconds");
+    if (path == null) {
+      result.error("MISSING_PARAMETER", "path parameter is required", null);
+      return;
+    }
+    if (pitchService == null) {
+      result.error("SERVICE_NOT_RUNNING", "Pitch detection service not running", null);
+      return;
+    }
+    try {
+      AudioFileRecorder previous = recorder;
+      if (previous != null) {
+        pitchService.setRecorder(null);
+        recorder = null;
+        finishRecording(previous, null);
+      }
+      recorder = new AudioFileRecorder(
+              new File(path),
+              AudioFileRecorder.Format.fromKey(call.argument("format")),
+              pitchService.getSampleRate(),
+              maxQueueSeconds != null ? maxQueueSeconds : 4.0
+      );
+      pitchService.setRecorder(recorder);
+      result.success(null);
+    } catch (Exception e) {
+      result.error("RECORDING_FAILED", "Failed to start recording: " + e.getMessage(), null);
+    }
+  }
 
-          data.put("pcmData", pitchService.getRawPcmDataFromStream());
-          data.put("streamData", pitchService.getRawDataFromStream());
+  private void stopRecording(Result result) {
+    AudioFileRecorder current = recorder;
+    if (current == null) {
+      result.success(null);
+      return;
+    }
+    recorder = null;
+    if (pitchService != null) {
+      pitchService.setRecorder(null);
+    }
+    finishRecording(current, result);
+  }
 
-          eventSink.success(data);
+  // Waiting for the writer can take a while on slow storage: off the main thread
+  private void finishRecording(AudioFileRecorder current, Result result) {
+    Handler mainHandler = new Handler(Looper.getMainLooper());
+    new Thread(() -> {
+      try {
+        AudioFileRecorder.Result recording = current.stop();
+        if (result == null) return;
+        Map<String, Object> data = new HashMap<>();
+        data.put("path", recording.file.getAbsolutePath());
+        data.put("format", recording.format.name().toLowerCase(Locale.ROOT));
+        data.put("sampleRate", recording.sampleRate);
+        data.put("samples", recording.samples);
+        data.put("droppedSamples", recording.droppedSamples);
+        data.put("bytes", recording.bytes);
+        mainHandler.post(() -> result.success(data));
+      } catch (Exception e) {
+        Log.e("PitchDetection", "Recording failed", e);
+        if (result != null) {
+          mainHandler.post(() -> result.error("RECORDING_FAILED", "Failed to stop recording: " + e.getMessage(), null));
         }
       }
-    });
+    }, "Recording Finish").start();
+  }
+
+  // Decoding and analysis run off the main thread; the reply is posted back to it
+  private void analyzeAudio(MethodCall call, Result result) {
+    String path = call.argument("path");
+    byte[] pcm = call.argument("pcm");
+    Integer rawSampleRate = call.argument("sampleRate");
+    Integer rawChannels = call.argument("channels");
+    Integer requestedBufferSize = call.argument("bufferSize");
+    Integer requestedOverlap = call.argument("overlap");
+    Double minPrecision = call.argument("minPrecision");
+    Double a4Reference = call.argument("a4Reference");
+    String algorithm = call.argument("algorithm");
+
+    if (path == null && pcm == null) {
+      result.error("MISSING_PARAMETER", "path or pcm parameter is required", null);
+      return;
+    }
+
+    final OfflinePitchAnalyzer analyzer;
+    try {
+      int bufferSize = requestedBufferSize != null ? requestedBufferSize
+              : pitchService != null ? pitchService.getBufferSize() : PitchDetectionService.DEFAULT_BUFFER_SIZE;
+      int overlap = requestedOverlap != null ? requestedOverlap
+              : pitchService != null ? pitchService.getOverlap() : Math.min(1024, bufferSize / 2);
+      analyzer = new OfflinePitchAnalyzer(
+              algorithm != null ? PitchEstimationProcessor.parseAlgorithm(algorithm)
+                      : pitchService != null ? pitchService.getAlgorithm() : PitchProcessor.PitchEstimationAlgorithm.FFT_YIN,
+              bufferSize,
+              overlap,
+              minPrecision != null ? minPrecision : pitchService != null ? pitchService.getMinPrecision() : 0.8,
+              a4Reference != null ? a4Reference : pitchService != null ? pitchService.getA4Reference() : 440.0
+      );
+      analyzer.setSmoother(pitchSmoother);
+      analyzer.setSilenceGate(silenceGate);
+    } catch (Exception e) {
+      result.error("INVALID_PARAMETERS", "Invalid analysis parameters: " + e.getMessage(), null);
+      return;
+    }
+
+    int sampleRate = rawSampleRate != null ? rawSampleRate : 0;
+    int channels = rawChannels != null ? rawChannels : 1;
+    Handler mainHandler = new Handler(Looper.getMainLooper());
+    new Thread(() -> {
+      try {
+        AudioFileDecoder.DecodedAudio audio = path != null
+                ? AudioFileDecoder.decodeFile(new File(path), sampleRate, channels)
+                : AudioFileDecoder.decode(pcm, sampleRate, channels);
+        float[] track = analyzer.analyze(audio.samples, audio.sampleRate);
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("sampleRate", audio.sampleRate);
+        data.put("duration", (double) audio.samples.length / audio.sampleRate);
+        data.put("fieldsPerFrame", OfflinePitchAnalyzer.FIELDS_PER_FRAME);
+        data.put("track", track);
+        mainHandler.post(() -> result.success(data));
+      } catch (Exception e) {
+        mainHandler.post(() -> result.error("ANALYSIS_FAILED", "Failed to analyze audio: " + e.getMessage(), null));
+      }
+    }, "Offline Pitch Analysis").start();
+  }
+
+  private final PitchEventPublisher<PitchFrame> eventPublisher = new PitchEventPublisher<>(this::emitPitchEvent);
+
+  private final PitchDetectionService.PitchFrameListener pitchHandler = frame -> {
+    NoteEventChannel notes = noteEventChannel;
+    if (notes != null) notes.onPitchFrame(frame);
+
+    if (frame.gated) {
+      SilenceGate gate = silenceGate;
+      if (gate != null && gate.suppressesEvents()) return;
+    }
+    if (frame.pitch <= 0 && !publishUnpitched) return;
+
+    eventPublisher.offer(frame);
   };
 
+  private void emitPitchEvent(PitchFrame frame) {
+    synchronized (sinkLock) {
+      if (eventSink != null && pitchService != null) {
+        eventSink.success(eventBuilder.build(pitchService, frame, eventPublisher.getDroppedFrames()));
+      }
+    }
+  }
+
   @Override
   public void onListen(Object arguments, EventChannel.EventSink events) {
+    PitchPayload requestedPayload = PitchPayload.FULL;
+    if (arguments instanceof Map) {
+      try {
+        requestedPayload = PitchPayload.fromKey((String) ((Map<?, ?>) arguments).get("payload"));
+      } catch (IllegalArgumentException e) {
+        events.error("INVALID_PAYLOAD", e.getMessage(), null);
+        return;
+      }
+    }
+
     synchronized (sinkLock) {
+      this.eventBuilder = new PitchEventBuilder(requestedPayload);
+      this.publishUnpitched = requestedPayload.hasPcmDelta();
       this.eventSink = events;
     }
 
-    if (pitchService == null) {
-      pitchService = new PitchDetectionService(44100, 2048, 1024, 0.5, 0.8, 440.0, pitchHandler);
+    if (pitchService == null && !PitchForegroundService.isRunning()) {
+      // Same window as before: the old default of 2048 was always raised to 8192 on start
+      pitchService = new PitchDetectionService(44100, PitchDetectionService.DEFAULT_BUFFER_SIZE, 1024, 0.5, 0.8, 440.0, pitchHandler);
+      configureService(pitchService);
       pitchService.startDetection();
     }
   }
 
   @Override
   public void onCancel(Object arguments) {
-    if (pitchService != null) {
+    // A background session outlives its listeners; only stopDetection ends it
+    if (pitchService != null && foregroundService == null) {
+      pitchService.setRecorder(null);
       pitchService.stopDetection();
       pitchService = null;
+      // The session was the listener's, so is its recording: the next one may run at another rate
+      if (recorder != null) {
+        finishRecording(recorder, null);
+        recorder = null;
+      }
     }
+    eventPublisher.clear();
     eventSink = null;
   }
 
   @Override
   public void onDetachedFromEngine(@NonNull FlutterPluginBinding binding) {
+    releaseForegroundService();
     if (pitchService != null) {
+      pitchService.setRecorder(null);
       pitchService.stopDetection();
       pitchService = null;
     }
+    if (recorder != null) {
+      finishRecording(recorder, null);
+      recorder = null;
+    }
+    eventPublisher.clear();
+    audioFrameChannel.stop();
+    spectrumChannel.stop();
+    noteEventChannel.dispose();
     methodChannel.setMethodCallHandler(null);
     eventChannel.setStreamHandler(null);
   }
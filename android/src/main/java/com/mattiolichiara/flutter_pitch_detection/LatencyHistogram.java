@@ -0,0 +1,78 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of durations in nanoseconds, in the manner of HdrHistogram: exact below
+ * 64 ns, then 32 buckets per power of two, so any value is recorded within about 3% up to
+ * {@link #MAX_NANOS} (larger ones count as that).
+ *
+ * Recording allocates nothing and takes no lock. Each histogram has one recording thread; any
+ * thread may read, and sees every count written before it read, though not necessarily all the
+ * counts of the latest record.
+ */
+public class LatencyHistogram {
+    private static final int LINEAR_BUCKETS = 64;
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // About 18 minutes: anything slower has already failed
+    public static final long MAX_NANOS = (1L << 40) - 1;
+    private static final int BUCKETS = bucketOf(MAX_NANOS) + 1;
+    // Totals stored after the buckets
+    private static final int COUNT = BUCKETS;
+    private static final int SUM = BUCKETS + 1;
+    private static final int MAX = BUCKETS + 2;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS + 3);
+
+    private static int bucketOf(long nanos) {
+        if (nanos < LINEAR_BUCKETS) return (int) nanos;
+        int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+        int top = (int) (nanos >>> shift);
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (top - SUB_BUCKETS);
+    }
+
+    // Middle of the range of values a bucket holds
+    private static long valueOf(int bucket) {
+        if (bucket < LINEAR_BUCKETS) return bucket;
+        int shift = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long top = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return (top << shift) + (1L << (shift - 1));
+    }
+
+    // Recording thread only: the single writer makes plain increments safe
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_NANOS));
+        int bucket = bucketOf(value);
+        counts.lazySet(bucket, counts.get(bucket) + 1);
+        counts.lazySet(SUM, counts.get(SUM) + value);
+        if (value > counts.get(MAX)) counts.lazySet(MAX, value);
+        counts.lazySet(COUNT, counts.get(COUNT) + 1);
+    }
+
+    public long getCount() {
+        return counts.get(COUNT);
+    }
+
+    public double getMeanNanos() {
+        long count = counts.get(COUNT);
+        return count == 0 ? 0 : (double) counts.get(SUM) / count;
+    }
+
+    public long getMaxNanos() {
+        return counts.get(MAX);
+    }
+
+    /** Smallest recorded value at least {@code quantile} (0 to 1) of the values are below. */
+    public long getValueAtQuantile(double quantile) {
+        long count = counts.get(COUNT);
+        if (count == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= target) return Math.min(valueOf(bucket), counts.get(MAX));
+        }
+        return counts.get(MAX);
+    }
+}
@@ -0,0 +1,242 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+/**
+ * Input level meter fed with every dispatcher buffer on the audio thread. One pass over the buffer
+ * gives RMS, peak and DC offset of the whole window. The samples new to this buffer are also
+ * counted for clipping and, with loudness metering on, K-weighted and oversampled as ITU-R BS.1770
+ * describes, for momentary (400 ms) and short-term (3 s) loudness and true peak. Filter and window
+ * state carries over from one buffer to the next, so overlapping windows don't count samples twice.
+ *
+ * Nothing is allocated per buffer. Readers on other threads get a consistent {@link Reading} through
+ * a sequence counter: the audio thread never waits for them.
+ */
+public class LevelMeter {
+    public static final double FLOOR_DB = -120;
+    // Largest 16-bit sample, as floats come from the recorder
+    private static final float CLIP_LEVEL = 32767f / 32768f;
+    private static final int BLOCKS_SHORT_TERM = 30;
+    private static final int BLOCKS_MOMENTARY = 4;
+    private static final int OVERSAMPLING = 4;
+    private static final int TAPS_PER_PHASE = 12;
+
+    public static final class Reading {
+        public double rmsDbFS = FLOOR_DB;
+        public double peakDbFS = FLOOR_DB;
+        public double dcOffset;
+        public long clippedSamples;
+        public boolean loudnessEnabled;
+        public double momentaryLufs = FLOOR_DB;
+        public double shortTermLufs = FLOOR_DB;
+        // highest inter-sample peak of the latest buffer, and since the meter started
+        public double truePeakDbTP = FLOOR_DB;
+        public double maxTruePeakDbTP = FLOOR_DB;
+    }
+
+    // K-weighting: high shelf then high pass (BS.1770-4, coefficients for any sample rate)
+    private final double shelfB0, shelfB1, shelfB2, shelfA1, shelfA2;
+    private final double passA1, passA2;
+    private double shelfZ1, shelfZ2, passZ1, passZ2;
+
+    // 100 ms blocks of K-weighted energy; momentary and short-term loudness average the latest ones
+    private final int blockLength;
+    private final double[] blockEnergy = new double[BLOCKS_SHORT_TERM];
+    private int blockCount = 0;
+    private int nextBlock = 0;
+    private double blockSum = 0;
+    private int blockFill = 0;
+
+    // True peak: 4x polyphase interpolation over the latest TAPS_PER_PHASE samples
+    private final double[] interpolation = new double[OVERSAMPLING * TAPS_PER_PHASE];
+    private final double[] delay = new double[TAPS_PER_PHASE];
+    private int delayHead = 0;
+    private double maxTruePeak = 0;
+
+    private volatile boolean loudnessEnabled = false;
+    private long clippedSamples = 0;
+
+    // Published values, guarded by `version` (odd while being written)
+    private volatile long version = 0;
+    private final Reading published = new Reading();
+
+    public LevelMeter(int sampleRate) {
+        double k = Math.tan(Math.PI * 1681.974450955533 / sampleRate);
+        double q = 0.7071752369554196;
+        double vh = Math.pow(10, 3.999843853973347 / 20);
+        double vb = Math.pow(vh, 0.4996667741545416);
+        double a0 = 1 + k / q + k * k;
+        shelfB0 = (vh + vb * k / q + k * k) / a0;
+        shelfB1 = 2 * (k * k - vh) / a0;
+        shelfB2 = (vh - vb * k / q + k * k) / a0;
+        shelfA1 = 2 * (k * k - 1) / a0;
+        shelfA2 = (1 - k / q + k * k) / a0;
+
+        k = Math.tan(Math.PI * 38.13547087602444 / sampleRate);
+        q = 0.5003270373238773;
+        a0 = 1 + k / q + k * k;
+        passA1 = 2 * (k * k - 1) / a0;
+        passA2 = (1 - k / q + k * k) / a0;
+
+        blockLength = Math.max(1, sampleRate / 10);
+
+        // Hann-windowed sinc at the 4x rate; each phase normalized to unity gain at DC
+        double center = (interpolation.length - 1) / 2.0;
+        for (int n = 0; n < interpolation.length; n++) {
+            double x = (n - center) / OVERSAMPLING;
+            double sinc = x == 0 ? 1 : Math.sin(Math.PI * x) / (Math.PI * x);
+            double window = 0.5 - 0.5 * Math.cos(2 * Math.PI * (n + 0.5) / interpolation.length);
+            interpolation[n] = sinc * window;
+        }
+        for (int phase = 0; phase < OVERSAMPLING; phase++) {
+            double sum = 0;
+            for (int tap = 0; tap < TAPS_PER_PHASE; tap++) sum += interpolation[tap * OVERSAMPLING + phase];
+            for (int tap = 0; tap < TAPS_PER_PHASE; tap++) interpolation[tap * OVERSAMPLING + phase] /= sum;
+        }
+    }
+
+    public void setLoudnessEnabled(boolean enabled) {
+        this.loudnessEnabled = enabled;
+    }
+
+    /**
+     * Audio thread.
+     *
+     * @param fresh number of samples at the end of {@code buffer} that previous buffers didn't have
+     */
+    public void process(float[] buffer, int fresh) {
+        int length = buffer.length;
+        int freshStart = length - Math.min(fresh, length);
+        boolean loudness = loudnessEnabled;
+
+        double sum = 0;
+        double sumSquares = 0;
+        float peak = 0;
+        int clipped = 0;
+        double truePeak = 0;
+
+        for (int i = 0; i < freshStart; i++) {
+            float sample = buffer[i];
+            sum += sample;
+            sumSquares += sample * sample;
+            float magnitude = Math.abs(sample);
+            if (magnitude > peak) peak = magnitude;
+        }
+        for (int i = freshStart; i < length; i++) {
+            float sample = buffer[i];
+            sum += sample;
+            sumSquares += sample * sample;
+            float magnitude = Math.abs(sample);
+            if (magnitude > peak) peak = magnitude;
+            if (magnitude >= CLIP_LEVEL) clipped++;
+            if (loudness) {
+                weigh(sample);
+                double interpolated = interpolatedPeak(sample);
+                if (interpolated > truePeak) truePeak = interpolated;
+            }
+        }
+
+        clippedSamples += clipped;
+        if (truePeak > maxTruePeak) maxTruePeak = truePeak;
+
+        long v = version;
+        version = v + 1;
+        Reading out = published;
+        out.rmsDbFS = toDb(Math.sqrt(sumSquares / length));
+        out.peakDbFS = toDb(peak);
+        out.dcOffset = sum / length;
+        out.clippedSamples = clippedSamples;
+        out.loudnessEnabled = loudness;
+        if (loudness) {
+            out.momentaryLufs = loudness(BLOCKS_MOMENTARY);
+            out.shortTermLufs = loudness(BLOCKS_SHORT_TERM);
+            out.truePeakDbTP = toDb(truePeak);
+            out.maxTruePeakDbTP = toDb(maxTruePeak);
+        }
+        version = v + 2;
+    }
+
+    public double getRmsDbFS() {
+        return published.rmsDbFS;
+    }
+
+    public double getPeakDbFS() {
+        return published.peakDbFS;
+    }
+
+    /**
+     * Copies the latest values into {@code into}. Any thread; retries while the audio thread is
+     * publishing.
+     */
+    public Reading read(Reading into) {
+        while (true) {
+            long before = version;
+            if ((before & 1) == 0) {
+                Reading source = published;
+                into.rmsDbFS = source.rmsDbFS;
+                into.peakDbFS = source.peakDbFS;
+                into.dcOffset = source.dcOffset;
+                into.clippedSamples = source.clippedSamples;
+                into.loudnessEnabled = source.loudnessEnabled;
+                into.momentaryLufs = source.momentaryLufs;
+                into.shortTermLufs = source.shortTermLufs;
+                into.truePeakDbTP = source.truePeakDbTP;
+                into.maxTruePeakDbTP = source.maxTruePeakDbTP;
+                if (version == before) return into;
+            }
+            Thread.yield();
+        }
+    }
+
+    private void weigh(float sample) {
+        // Direct form II transposed, shelf then high pass (whose numerator is 1, -2, 1)
+        double shelved = shelfB0 * sample + shelfZ1;
+        shelfZ1 = shelfB1 * sample - shelfA1 * shelved + shelfZ2;
+        shelfZ2 = shelfB2 * sample - shelfA2 * shelved;
+
+        double weighted = shelved + passZ1;
+        passZ1 = -2 * shelved - passA1 * weighted + passZ2;
+        passZ2 = shelved - passA2 * weighted;
+
+        blockSum += weighted * weighted;
+        if (++blockFill == blockLength) {
+            blockEnergy[nextBlock] = blockSum / blockLength;
+            nextBlock = (nextBlock + 1) % BLOCKS_SHORT_TERM;
+            if (blockCount < BLOCKS_SHORT_TERM) blockCount++;
+            blockSum = 0;
+            blockFill = 0;
+        }
+    }
+
+    private double interpolatedPeak(float sample) {
+        delay[delayHead] = sample;
+        double peak = Math.abs(sample);
+        for (int phase = 0; phase < OVERSAMPLING; phase++) {
+            double value = 0;
+            int index = delayHead;
+            for (int tap = 0; tap < TAPS_PER_PHASE; tap++) {
+                value += interpolation[tap * OVERSAMPLING + phase] * delay[index];
+                index = index == 0 ? TAPS_PER_PHASE - 1 : index - 1;
+            }
+            double magnitude = Math.abs(value);
+            if (magnitude > peak) peak = magnitude;
+        }
+        delayHead = (delayHead + 1) % TAPS_PER_PHASE;
+        return peak;
+    }
+
+    private double loudness(int blocks) {
+        int available = Math.min(blocks, blockCount);
+        if (available == 0) return FLOOR_DB;
+        double energy = 0;
+        int index = nextBlock;
+        for (int i = 0; i < available; i++) {
+            index = index == 0 ? BLOCKS_SHORT_TERM - 1 : index - 1;
+            energy += blockEnergy[index];
+        }
+        energy /= available;
+        return energy <= 0 ? FLOOR_DB : Math.max(FLOOR_DB, -0.691 + 10 * Math.log10(energy));
+    }
+
+    private static double toDb(double level) {
+        return Math.max(FLOOR_DB, 20 * Math.log10(Math.max(level, 1e-12)));
+    }
+}
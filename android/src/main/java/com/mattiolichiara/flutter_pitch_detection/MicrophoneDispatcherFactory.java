@@ -0,0 +1,51 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.android.AndroidAudioInputStream;
+
+/**
+ * Like TarsosDSP's {@code AudioDispatcherFactory.fromDefaultMicrophone}, but sizes the
+ * AudioRecord buffer independently of the analysis window. TarsosDSP rejects any window smaller
+ * than the device's minimum recording buffer, which rules out short low-latency windows.
+ */
+public class MicrophoneDispatcherFactory {
+
+    private MicrophoneDispatcherFactory() {
+    }
+
+    public static AudioDispatcher fromDefaultMicrophone(int sampleRate, int bufferSize, int overlap) {
+        return new AudioDispatcher(openMicrophone(sampleRate, bufferSize), bufferSize, overlap);
+    }
+
+    // A recording 16-bit mono stream of the default microphone
+    public static AndroidAudioInputStream openMicrophone(int sampleRate, int bufferSize) {
+        int minBufferBytes = AudioRecord.getMinBufferSize(sampleRate,
+                AudioFormat.CHANNEL_IN_MONO,
+                AudioFormat.ENCODING_PCM_16BIT);
+        if (minBufferBytes <= 0) {
+            throw new IllegalArgumentException("Unsupported sample rate: " + sampleRate);
+        }
+
+        // The recorder only has to hold the audio arriving between two reads
+        int recordBufferBytes = Math.max(minBufferBytes * 2, bufferSize * 2);
+        AudioRecord audioRecord = new AudioRecord(
+                MediaRecorder.AudioSource.MIC,
+                sampleRate,
+                AudioFormat.CHANNEL_IN_MONO,
+                AudioFormat.ENCODING_PCM_16BIT,
+                recordBufferBytes);
+        if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+            audioRecord.release();
+            throw new IllegalStateException("Microphone could not be initialized");
+        }
+
+        TarsosDSPAudioFormat format = new TarsosDSPAudioFormat(sampleRate, 16, 1, true, false);
+        audioRecord.startRecording();
+        return new AndroidAudioInputStream(audioRecord, format);
+    }
+}
@@ -0,0 +1,21 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import be.tarsos.dsp.io.TarsosDSPAudioInputStream;
+
+// The default microphone, as opened by MicrophoneDispatcherFactory
+public final class MicrophoneSource implements AudioSource {
+    public static final MicrophoneSource INSTANCE = new MicrophoneSource();
+
+    private MicrophoneSource() {
+    }
+
+    @Override
+    public TarsosDSPAudioInputStream open(int sampleRate, int bufferSize) {
+        return MicrophoneDispatcherFactory.openMicrophone(sampleRate, bufferSize);
+    }
+
+    @Override
+    public boolean isLive() {
+        return true;
+    }
+}
@@ -0,0 +1,194 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+/**
+ * Finds up to {@code maxPitches} simultaneous fundamentals in a magnitude spectrum by harmonic
+ * summation with iterative estimate-and-cancel (after Klapuri, ISMIR 2006).
+ *
+ * Candidate fundamentals sit on a grid of a third of a semitone. The salience of a candidate is
+ * the weighted sum of the strongest bin near each of its harmonics, with weights falling with the
+ * harmonic number so subharmonics don't win. The most salient candidate is taken, its harmonics
+ * are attenuated in the residual spectrum, and the search repeats until the best remaining
+ * candidate is weaker than {@code minSalience} times the first one.
+ *
+ * Bin ranges and weights are planned once per FFT size and sample rate; detection itself
+ * allocates only the result. Audio thread only.
+ */
+public class MultiPitchDetector {
+    private static final int STEPS_PER_SEMITONE = 3;
+    private static final int MAX_HARMONICS = 20;
+    private static final double MAX_HARMONIC_HZ = 6000;
+    // Harmonic weight (f0 + ALPHA) / (h f0 + BETA) from Klapuri's paper
+    private static final double ALPHA = 27;
+    private static final double BETA = 320;
+    // Share of a harmonic removed from the residual once its fundamental is taken
+    private static final float CANCEL = 0.9f;
+    // Below this (about -60 dB of harmonic energy) the input is treated as silence
+    private static final float MIN_ABSOLUTE_SALIENCE = 1e-3f;
+
+    /** Fundamentals of one buffer, strongest first. Immutable. */
+    public static final class Result {
+        public final float[] frequencies;
+        // relative to the strongest fundamental, which has 1
+        public final float[] saliences;
+        public final int[] midiNotes;
+
+        Result(float[] frequencies, float[] saliences, int[] midiNotes) {
+            this.frequencies = frequencies;
+            this.saliences = saliences;
+            this.midiNotes = midiNotes;
+        }
+
+        public int size() {
+            return frequencies.length;
+        }
+    }
+
+    private final int maxPitches;
+    private final double minFrequency;
+    private final double maxFrequency;
+    private final double minSalience;
+    private final int candidates;
+
+    // Plan for the current FFT size: per candidate and harmonic, the bin range [low, high] and weight
+    private int fftSize = 0;
+    private double binHz;
+    private int[] low;
+    private int[] high;
+    private float[] weight;
+    private int[] harmonics;
+    private float[] residual;
+    private float[] salience;
+
+    // Picks of the current buffer, before the result is copied out
+    private final float[] pickedFrequencies;
+    private final float[] pickedSaliences;
+
+    public MultiPitchDetector(int maxPitches, double minFrequency, double maxFrequency, double minSalience) {
+        if (maxPitches < 1 || minFrequency <= 0 || maxFrequency <= minFrequency || minSalience < 0 || minSalience > 1) {
+            throw new IllegalArgumentException("Invalid multi-pitch settings");
+        }
+        this.maxPitches = maxPitches;
+        this.minFrequency = minFrequency;
+        this.maxFrequency = maxFrequency;
+        this.minSalience = minSalience;
+        this.candidates = 1 + (int) Math.floor(12 * STEPS_PER_SEMITONE * Math.log(maxFrequency / minFrequency) / Math.log(2));
+        this.pickedFrequencies = new float[maxPitches];
+        this.pickedSaliences = new float[maxPitches];
+    }
+
+    private double candidateHz(double index) {
+        return minFrequency * Math.pow(2, index / (12.0 * STEPS_PER_SEMITONE));
+    }
+
+    private void plan(SpectrumAnalyzer spectrum) {
+        fftSize = spectrum.getFftSize();
+        binHz = spectrum.getBinHz();
+        int bins = fftSize / 2;
+        double nyquist = spectrum.getSampleRate() / 2.0;
+        // Half the distance to the neighbouring candidates, as a frequency ratio
+        double spread = Math.pow(2, 1 / (24.0 * STEPS_PER_SEMITONE)) - 1;
+
+        low = new int[candidates * MAX_HARMONICS];
+        high = new int[candidates * MAX_HARMONICS];
+        weight = new float[candidates * MAX_HARMONICS];
+        harmonics = new int[candidates];
+        residual = new float[bins];
+        salience = new float[candidates];
+
+        for (int c = 0; c < candidates; c++) {
+            double f0 = candidateHz(c);
+            int count = 0;
+            for (int h = 1; h <= MAX_HARMONICS; h++) {
+                double frequency = h * f0;
+                if (frequency > MAX_HARMONIC_HZ || frequency >= nyquist) break;
+                double center = frequency / binHz;
+                double reach = Math.max(1, center * spread);
+                int index = c * MAX_HARMONICS + count;
+                low[index] = Math.max(1, (int) Math.floor(center - reach));
+                high[index] = Math.min(bins - 1, (int) Math.ceil(center + reach));
+                weight[index] = (float) ((f0 + ALPHA) / (frequency + BETA));
+                count++;
+            }
+            harmonics[c] = count;
+        }
+    }
+
+    /**
+     * @return the fundamentals found in the latest spectrum, or null when there are none
+     */
+    public Result detect(SpectrumAnalyzer spectrum, TuningTable tuning) {
+        // A new sample rate at the same buffer size moves every bin
+        if (spectrum.getFftSize() != fftSize || spectrum.getBinHz() != binHz) {
+            plan(spectrum);
+        }
+        System.arraycopy(spectrum.getMagnitudes(), 0, residual, 0, residual.length);
+
+        int found = 0;
+        float first = 0;
+        while (found < maxPitches) {
+            int best = -1;
+            float bestSalience = 0;
+            for (int c = 0; c < candidates; c++) {
+                float s = salience(c);
+                salience[c] = s;
+                if (s > bestSalience) {
+                    bestSalience = s;
+                    best = c;
+                }
+            }
+            if (best < 0 || bestSalience < MIN_ABSOLUTE_SALIENCE || (found > 0 && bestSalience < minSalience * first)) break;
+            if (found == 0) first = bestSalience;
+
+            // Parabolic interpolation between neighbouring candidates refines the frequency
+            double offset = 0;
+            if (best > 0 && best < candidates - 1) {
+                double left = salience[best - 1];
+                double right = salience[best + 1];
+                double denominator = left - 2 * bestSalience + right;
+                if (denominator < 0) offset = 0.5 * (left - right) / denominator;
+            }
+            double f0 = candidateHz(best + offset);
+            if (f0 > maxFrequency) f0 = maxFrequency;
+
+            pickedFrequencies[found] = (float) f0;
+            pickedSaliences[found] = bestSalience / first;
+            found++;
+            cancel(best);
+        }
+
+        if (found == 0) return null;
+        float[] frequencies = new float[found];
+        float[] saliences = new float[found];
+        int[] midiNotes = new int[found];
+        for (int i = 0; i < found; i++) {
+            frequencies[i] = pickedFrequencies[i];
+            saliences[i] = pickedSaliences[i];
+            midiNotes[i] = tuning.frequencyToMidi(frequencies[i]);
+        }
+        return new Result(frequencies, saliences, midiNotes);
+    }
+
+    private float salience(int candidate) {
+        float sum = 0;
+        int base = candidate * MAX_HARMONICS;
+        for (int h = 0; h < harmonics[candidate]; h++) {
+            int index = base + h;
+            float peak = 0;
+            for (int bin = low[index]; bin <= high[index]; bin++) {
+                if (residual[bin] > peak) peak = residual[bin];
+            }
+            sum += weight[index] * peak;
+        }
+        return sum;
+    }
+
+    private void cancel(int candidate) {
+        int base = candidate * MAX_HARMONICS;
+        for (int h = 0; h < harmonics[candidate]; h++) {
+            int index = base + h;
+            for (int bin = low[index]; bin <= high[index]; bin++) {
+                residual[bin] *= 1 - CANCEL;
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Event channel of note on/off events. Frames are segmented on the audio thread only while Dart
+ * listens; each note boundary becomes one event, posted to the main thread in order.
+ *
+ * Segmentation settings are the listen arguments: {@code minNoteMillis}, {@code releaseMillis},
+ * {@code hysteresisCents} and {@code silenceThresholdDbFS}. A segmenter replaced by a new listen,
+ * or dropped by a cancel, is reset on the audio thread before the next frame, so a note it was
+ * holding still gets its note off.
+ */
+public class NoteEventChannel implements EventChannel.StreamHandler, NoteSegmenter.Listener {
+    private static final String CHANNEL = "pitch_detection/notes";
+
+    private final EventChannel channel;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile NoteSegmenter segmenter;
+    // Swapped out on the main thread, reset by the audio thread, which alone may touch it
+    private final AtomicReference<NoteSegmenter> retired = new AtomicReference<>();
+    private EventChannel.EventSink sink;
+
+    public NoteEventChannel(BinaryMessenger messenger) {
+        this.channel = new EventChannel(messenger, CHANNEL);
+        channel.setStreamHandler(this);
+    }
+
+    public void dispose() {
+        channel.setStreamHandler(null);
+        segmenter = null;
+    }
+
+    //audio thread
+    public void onPitchFrame(PitchFrame frame) {
+        NoteSegmenter previous = retired.getAndSet(null);
+        if (previous != null) previous.reset();
+        NoteSegmenter current = segmenter;
+        if (current == null) return;
+        current.process(frame);
+    }
+
+    @Override
+    public void onListen(Object arguments, EventChannel.EventSink events) {
+        Map<?, ?> config = arguments instanceof Map ? (Map<?, ?>) arguments : new HashMap<>();
+        NoteSegmenter next;
+        try {
+            next = new NoteSegmenter(
+                    this,
+                    number(config, "minNoteMillis", 80),
+                    number(config, "releaseMillis", 60),
+                    number(config, "hysteresisCents", 20),
+                    number(config, "silenceThresholdDbFS", -50)
+            );
+        } catch (IllegalArgumentException e) {
+            events.error("INVALID_NOTE_SETTINGS", e.getMessage(), null);
+            return;
+        }
+        retire();
+        segmenter = next;
+        sink = events;
+    }
+
+    @Override
+    public void onCancel(Object arguments) {
+        retire();
+        sink = null;
+    }
+
+    private void retire() {
+        NoteSegmenter previous = segmenter;
+        segmenter = null;
+        // One already waiting means no frame has come since, so this one has no note to end
+        if (previous != null) retired.compareAndSet(null, previous);
+    }
+
+    //audio thread
+    @Override
+    public void onNoteOn(int midiNote, double startTime) {
+        Map<String, Object> event = noteEvent("noteOn", midiNote, startTime);
+        mainHandler.post(() -> send(event));
+    }
+
+    //audio thread
+    @Override
+    public void onNoteOff(int midiNote, double startTime, double duration, double meanFrequency,
+                          double meanCents, double stability) {
+        Map<String, Object> event = noteEvent("noteOff", midiNote, startTime);
+        event.put("duration", duration);
+        event.put("meanFrequency", meanFrequency);
+        event.put("meanCents", meanCents);
+        event.put("stability", stability);
+        mainHandler.post(() -> send(event));
+    }
+
+    private static Map<String, Object> noteEvent(String type, int midiNote, double startTime) {
+        Map<String, Object> event = new HashMap<>();
+        event.put("type", type);
+        event.put("midiNote", midiNote);
+        event.put("note", TuningTable.noteName(midiNote));
+        event.put("octave", TuningTable.midiToOctave(midiNote));
+        event.put("noteOctave", TuningTable.noteOctaveName(midiNote));
+        event.put("startTime", startTime);
+        return event;
+    }
+
+    //main thread
+    private void send(Map<String, Object> event) {
+        EventChannel.EventSink current = sink;
+        if (current != null) current.success(event);
+    }
+
+    private static double number(Map<?, ?> config, String key, double fallback) {
+        Object value = config.get(key);
+        return value instanceof Number ? ((Number) value).doubleValue() : fallback;
+    }
+}
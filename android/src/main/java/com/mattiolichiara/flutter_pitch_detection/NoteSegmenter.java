@@ -0,0 +1,152 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+/**
+ * Turns the per-frame pitch into discrete notes. Runs on the audio thread, one frame at a time,
+ * and calls the listener only when a note starts or ends.
+ *
+ * A frame sounds when it is voiced and its RMS level is above the silence gate. A note starts once
+ * a MIDI note has sounded for {@code minNoteMillis}, and ends after {@code releaseMillis} without
+ * sound or when another note has sounded for {@code minNoteMillis}. Hysteresis keeps a note alive
+ * while the pitch stays within half a semitone plus {@code hysteresisCents} of it, so a voice
+ * wavering around a note boundary doesn't split it. A note ends where its last frame did, so a
+ * rest before the next note isn't counted in its duration.
+ *
+ * The first frame of a session ({@code sequence} 0) resets it, ending any note of the previous one.
+ */
+public class NoteSegmenter {
+
+    public interface Listener {
+        void onNoteOn(int midiNote, double startTime);
+
+        /**
+         * @param stability 1 for a perfectly steady pitch, down to 0 at 50 cents standard deviation
+         */
+        void onNoteOff(int midiNote, double startTime, double duration, double meanFrequency,
+                       double meanCents, double stability);
+    }
+
+    // Pitch statistics of one note (or of a candidate that may become one)
+    private static final class Run {
+        int midi = -1;
+        double startTime;
+        int frames;
+        double frequencySum;
+        // Welford running mean and variance of the deviation in cents
+        double meanCents;
+        double m2;
+
+        void start(int midi, double startTime) {
+            this.midi = midi;
+            this.startTime = startTime;
+            frames = 0;
+            frequencySum = 0;
+            meanCents = 0;
+            m2 = 0;
+        }
+
+        void add(double frequency, double cents) {
+            frames++;
+            frequencySum += frequency;
+            double delta = cents - meanCents;
+            meanCents += delta / frames;
+            m2 += delta * (cents - meanCents);
+        }
+
+        double stability() {
+            double deviation = frames > 1 ? Math.sqrt(m2 / frames) : 0;
+            return Math.max(0, 1 - deviation / 50);
+        }
+    }
+
+    private final Listener listener;
+    private final double minNoteSeconds;
+    private final double releaseSeconds;
+    private final double hysteresisSemitones;
+    private final double silenceThresholdDbFS;
+
+    private Run note = new Run();
+    private Run candidate = new Run();
+    private boolean active = false;
+    // Start of the current silence, or -1 while sounding
+    private double silenceStart = -1;
+    // First frame after the active note's last one, or -1 while the note still sounds
+    private double noteEnd = -1;
+    private double lastTime = 0;
+
+    public NoteSegmenter(Listener listener, double minNoteMillis, double releaseMillis,
+                         double hysteresisCents, double silenceThresholdDbFS) {
+        if (minNoteMillis < 0 || releaseMillis < 0 || hysteresisCents < 0 || hysteresisCents >= 50) {
+            throw new IllegalArgumentException("minNoteMillis and releaseMillis must not be negative, hysteresisCents between 0 and 50");
+        }
+        this.listener = listener;
+        this.minNoteSeconds = minNoteMillis / 1000;
+        this.releaseSeconds = releaseMillis / 1000;
+        this.hysteresisSemitones = hysteresisCents / 100;
+        this.silenceThresholdDbFS = silenceThresholdDbFS;
+    }
+
+    //audio thread
+    public void process(PitchFrame frame) {
+        if (frame.sequence == 0) {
+            // New session: time stamps start over
+            reset();
+        }
+        double time = frame.timeStamp;
+        lastTime = time;
+        double levelDbFS = PitchDetectionService.normalizedVolumeToDbFS(frame.volume);
+        boolean sounding = frame.voiced && levelDbFS >= silenceThresholdDbFS;
+
+        if (!sounding) {
+            candidate.midi = -1;
+            if (silenceStart < 0) silenceStart = time;
+            if (active && noteEnd < 0) noteEnd = time;
+            if (active && time - silenceStart >= releaseSeconds) {
+                endNote(noteEnd);
+            }
+            return;
+        }
+        silenceStart = -1;
+
+        double exactMidi = frame.midiNote + frame.cents / 100;
+        if (active && Math.abs(exactMidi - note.midi) <= 0.5 + hysteresisSemitones) {
+            note.add(frame.pitch, (exactMidi - note.midi) * 100);
+            candidate.midi = -1;
+            noteEnd = -1;
+            return;
+        }
+        if (active && noteEnd < 0) noteEnd = time;
+
+        if (candidate.midi != frame.midiNote) {
+            candidate.start(frame.midiNote, time);
+        }
+        candidate.add(frame.pitch, frame.cents);
+
+        if (time - candidate.startTime >= minNoteSeconds) {
+            if (active) endNote(noteEnd);
+            Run started = note;
+            note = candidate;
+            candidate = started;
+            candidate.midi = -1;
+            active = true;
+            listener.onNoteOn(note.midi, note.startTime);
+        }
+    }
+
+    /**
+     * Ends the sounding note, if any, at the last frame seen and forgets all state. Call between
+     * sessions, whose time stamps start over.
+     */
+    public void reset() {
+        if (active) endNote(noteEnd >= 0 ? noteEnd : lastTime);
+        candidate.midi = -1;
+        silenceStart = -1;
+        lastTime = 0;
+    }
+
+    private void endNote(double endTime) {
+        active = false;
+        noteEnd = -1;
+        listener.onNoteOff(note.midi, note.startTime, Math.max(0, endTime - note.startTime),
+                note.frequencySum / Math.max(1, note.frames), note.meanCents, note.stability());
+    }
+}
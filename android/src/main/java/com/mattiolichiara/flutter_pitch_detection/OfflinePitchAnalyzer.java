@@ -0,0 +1,147 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.pitch.PitchProcessor.PitchEstimationAlgorithm;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Extracts a pitch track from decoded audio as fast as the CPU allows. The audio is replayed
+ * through {@link PitchDetectionService}'s own processing chain from a {@link PcmSource}, so frames
+ * are laid out as live (one window every {@code bufferSize - overlap} samples, the last one
+ * zero-padded) and go through the same silence gate, detector, smoother, precision gate and
+ * tuning table as a live take with the same settings. Samples reach the chain as 16-bit PCM, as
+ * they do from the microphone.
+ *
+ * Long inputs are split into runs of frames analyzed in parallel, one chain per worker. Each
+ * worker writes its own range of the result, so nothing is merged afterwards. With a gate or
+ * smoother, a worker first replays up to {@link #WARMUP_FRAMES} frames before its range to settle
+ * their state; only history longer than that can differ from a single pass.
+ *
+ * The result packs {@link #FIELDS_PER_FRAME} floats per frame: time in seconds, frequency in Hz,
+ * probability, MIDI note and cents. Frequency and MIDI note are -1 and cents 0 for frames below
+ * {@code minPrecision}, as in the live getters.
+ */
+public class OfflinePitchAnalyzer {
+    public static final int FIELDS_PER_FRAME = 5;
+    // Below this a segment isn't worth a task
+    private static final int MIN_FRAMES_PER_SEGMENT = 64;
+    // Replayed and discarded ahead of a segment, for the gate hangover and smoother history
+    static final int WARMUP_FRAMES = 64;
+
+    private final PitchEstimationAlgorithm algorithm;
+    private final int bufferSize;
+    private final int hop;
+    private final double minPrecision;
+    private final double a4Reference;
+    // Settings only: each segment runs a copy with its own state
+    private PitchSmoother smoother;
+    private SilenceGate silenceGate;
+
+    public OfflinePitchAnalyzer(PitchEstimationAlgorithm algorithm, int bufferSize, int overlap,
+                                double minPrecision, double a4Reference) {
+        if (bufferSize < PitchDetectionService.MIN_BUFFER_SIZE) {
+            throw new IllegalArgumentException("bufferSize must be at least " + PitchDetectionService.MIN_BUFFER_SIZE);
+        }
+        if (overlap < 0 || overlap >= bufferSize) {
+            overlap = bufferSize / 2;
+        }
+        this.algorithm = algorithm;
+        this.bufferSize = bufferSize;
+        this.hop = bufferSize - overlap;
+        this.minPrecision = minPrecision;
+        this.a4Reference = a4Reference;
+    }
+
+    // null analyses without smoothing
+    public void setSmoother(PitchSmoother smoother) {
+        this.smoother = smoother;
+    }
+
+    // null analyses every frame
+    public void setSilenceGate(SilenceGate silenceGate) {
+        this.silenceGate = silenceGate;
+    }
+
+    public int frameCount(int sampleCount) {
+        if (sampleCount <= 0) return 0;
+        if (sampleCount <= bufferSize) return 1;
+        return 1 + (sampleCount - bufferSize + hop - 1) / hop;
+    }
+
+    public float[] analyze(float[] samples, int sampleRate) throws InterruptedException {
+        return analyze(samples, sampleRate, Runtime.getRuntime().availableProcessors());
+    }
+
+    float[] analyze(float[] samples, int sampleRate, int maxWorkers) throws InterruptedException {
+        int frames = frameCount(samples.length);
+        float[] track = new float[frames * FIELDS_PER_FRAME];
+
+        int workers = Math.min(maxWorkers, Math.max(1, frames / MIN_FRAMES_PER_SEGMENT));
+        if (workers <= 1) {
+            analyzeRange(samples, sampleRate, 0, frames, track);
+            return track;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<?>> segments = new ArrayList<>(workers);
+            int perSegment = (frames + workers - 1) / workers;
+            for (int start = 0; start < frames; start += perSegment) {
+                final int from = start;
+                final int to = Math.min(frames, start + perSegment);
+                segments.add(executor.submit(() -> analyzeRange(samples, sampleRate, from, to, track)));
+            }
+            for (Future<?> segment : segments) {
+                segment.get();
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Offline analysis failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return track;
+    }
+
+    private void analyzeRange(float[] samples, int sampleRate, int fromFrame, int toFrame, float[] track) {
+        int firstFrame = smoother != null || silenceGate != null ? Math.max(0, fromFrame - WARMUP_FRAMES) : fromFrame;
+        int start = firstFrame * hop;
+        int end = Math.min(samples.length, (toFrame - 1) * hop + bufferSize);
+
+        PitchDetectionService service = new PitchDetectionService(sampleRate, bufferSize, bufferSize - hop,
+                10, minPrecision, a4Reference, frame -> {
+            int index = firstFrame + (int) frame.sequence;
+            if (index < fromFrame || index >= toFrame) return;
+            int out = index * FIELDS_PER_FRAME;
+            track[out] = (float) index * hop / sampleRate;
+            track[out + 1] = (float) frame.getFrequency();
+            track[out + 2] = frame.probability;
+            track[out + 3] = frame.getMidiNote();
+            track[out + 4] = frame.voiced ? (float) frame.cents : 0;
+        });
+        service.setAlgorithm(algorithm);
+        if (smoother != null) service.setSmoother(smoother.copy());
+        if (silenceGate != null) service.setSilenceGate(silenceGate.copy());
+
+        AudioDispatcher dispatcher;
+        try {
+            PcmSource source = new PcmSource(Arrays.copyOfRange(samples, start, end), sampleRate);
+            dispatcher = new AudioDispatcher(source.open(sampleRate, bufferSize), bufferSize, bufferSize - hop);
+        } catch (IOException e) {
+            throw new RuntimeException("Offline analysis failed: " + e.getMessage(), e);
+        }
+        for (AudioProcessor processor : service.createProcessingChain(dispatcher)) {
+            dispatcher.addAudioProcessor(processor);
+        }
+        // On this worker, not the audio executor: segments run side by side
+        dispatcher.run();
+    }
+}
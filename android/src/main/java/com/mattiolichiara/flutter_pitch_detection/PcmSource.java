@@ -0,0 +1,108 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import java.io.File;
+import java.io.IOException;
+
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.TarsosDSPAudioInputStream;
+
+/**
+ * Plays mono float samples (a decoded file, a test fixture) through the pipeline once, as 16-bit
+ * PCM, as fast as it is read. Each session replays from the start.
+ */
+public class PcmSource implements AudioSource {
+    private final float[] samples;
+    private final int sampleRate;
+
+    public PcmSource(float[] samples, int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("sampleRate must be positive");
+        }
+        this.samples = samples;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * A WAV or raw PCM file, decoded with {@link AudioFileDecoder}.
+     *
+     * @param rawSampleRate sample rate of a raw PCM file, ignored for WAV files
+     */
+    public static PcmSource fromFile(File file, int rawSampleRate) throws IOException {
+        AudioFileDecoder.DecodedAudio audio = AudioFileDecoder.decodeFile(file, rawSampleRate, 1);
+        return new PcmSource(audio.samples, audio.sampleRate);
+    }
+
+    public float[] getSamples() {
+        return samples;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public double getDurationSeconds() {
+        return (double) samples.length / sampleRate;
+    }
+
+    // The detection must run at the audio's own rate: no resampling is done
+    @Override
+    public TarsosDSPAudioInputStream open(int sampleRate, int bufferSize) throws IOException {
+        if (sampleRate != this.sampleRate) {
+            throw new IOException("Audio is " + this.sampleRate + " Hz but detection runs at " + sampleRate + " Hz");
+        }
+        return new Stream(samples, sampleRate);
+    }
+
+    @Override
+    public boolean isLive() {
+        return false;
+    }
+
+    private static final class Stream implements TarsosDSPAudioInputStream {
+        private final float[] samples;
+        private final TarsosDSPAudioFormat format;
+        private int position = 0;
+        private volatile boolean closed = false;
+
+        Stream(float[] samples, int sampleRate) {
+            this.samples = samples;
+            this.format = new TarsosDSPAudioFormat(sampleRate, 16, 1, true, false);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (closed || position >= samples.length) return -1;
+            int count = Math.min(length / 2, samples.length - position);
+            int out = offset;
+            for (int i = 0; i < count; i++) {
+                float sample = Math.max(-1f, Math.min(1f, samples[position++]));
+                int value = Math.round(sample * 32767f);
+                buffer[out++] = (byte) value;
+                buffer[out++] = (byte) (value >> 8);
+            }
+            return count * 2;
+        }
+
+        @Override
+        public long skip(long bytes) {
+            long skipped = Math.min(bytes / 2, samples.length - position);
+            position += (int) skipped;
+            return skipped * 2;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public TarsosDSPAudioFormat getFormat() {
+            return format;
+        }
+
+        @Override
+        public long getFrameLength() {
+            return samples.length;
+        }
+    }
+}
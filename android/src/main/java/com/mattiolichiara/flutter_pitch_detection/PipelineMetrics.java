@@ -0,0 +1,123 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Where the time of each frame goes, from the microphone read to the event handed to Flutter, as
+ * one {@link LatencyHistogram} per stage, plus frame counters. Stages recorded on the audio
+ * thread:
+ * <ul>
+ *   <li>{@code capture}: waiting for the next buffer, from the end of the previous one</li>
+ *   <li>{@code levels}: level metering, history and audio frame streaming</li>
+ *   <li>{@code record}: queueing samples for the file recorder, while recording</li>
+ *   <li>{@code gate}, {@code spectrum}, {@code pitch}: the other chain stages</li>
+ *   <li>{@code publish}: handing the frame to the listener (note events, the main-looper post)</li>
+ * </ul>
+ * and on the main thread:
+ * <ul>
+ *   <li>{@code delivery}: from the post to the main looper running it</li>
+ *   <li>{@code encode}: building the event map and sending it through the codec</li>
+ * </ul>
+ *
+ * Turned off, the service and plugin hold no instance and only test for null. Recording
+ * allocates nothing; turning metrics on again starts from a new instance.
+ */
+public final class PipelineMetrics {
+    public static final int CAPTURE = 0;
+    public static final int LEVELS = 1;
+    public static final int GATE = 2;
+    public static final int SPECTRUM = 3;
+    public static final int PITCH = 4;
+    public static final int PUBLISH = 5;
+    public static final int DELIVERY = 6;
+    public static final int ENCODE = 7;
+    public static final int RECORD = 8;
+    private static final String[] STAGE_NAMES = {
+            "capture", "levels", "gate", "spectrum", "pitch", "publish", "delivery", "encode", "record"
+    };
+
+    private final LatencyHistogram[] stages = new LatencyHistogram[STAGE_NAMES.length];
+    private final AtomicLong processedFrames = new AtomicLong();
+    private final AtomicLong gatedFrames = new AtomicLong();
+    private final AtomicLong belowMinPrecisionFrames = new AtomicLong();
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final AtomicLong emittedEvents = new AtomicLong();
+    private final AtomicLong overruns = new AtomicLong();
+    private final long startedAtNanos = System.nanoTime();
+
+    public PipelineMetrics() {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new LatencyHistogram();
+        }
+    }
+
+    public void record(int stage, long nanos) {
+        stages[stage].record(nanos);
+    }
+
+    public LatencyHistogram getStage(int stage) {
+        return stages[stage];
+    }
+
+    //audio thread, once per published frame
+    public void countFrame(PitchFrame frame, double minPrecision) {
+        processedFrames.incrementAndGet();
+        if (frame.gated) {
+            gatedFrames.incrementAndGet();
+        } else if (frame.probability < minPrecision) {
+            belowMinPrecisionFrames.incrementAndGet();
+        }
+    }
+
+    // An event replaced by a newer one before the main thread could send it
+    public void countDroppedEvent() {
+        droppedEvents.incrementAndGet();
+    }
+
+    public void countEmittedEvent() {
+        emittedEvents.incrementAndGet();
+    }
+
+    // Audio the recorder most likely discarded because capture fell behind
+    public void countOverrun() {
+        overruns.incrementAndGet();
+    }
+
+    public long getProcessedFrames() {
+        return processedFrames.get();
+    }
+
+    public long getOverruns() {
+        return overruns.get();
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> stageMaps = new HashMap<>();
+        for (int i = 0; i < stages.length; i++) {
+            LatencyHistogram histogram = stages[i];
+            if (histogram.getCount() == 0) continue;
+
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("count", histogram.getCount());
+            entry.put("meanMicros", histogram.getMeanNanos() / 1000.0);
+            entry.put("p50Micros", histogram.getValueAtQuantile(0.5) / 1000.0);
+            entry.put("p90Micros", histogram.getValueAtQuantile(0.9) / 1000.0);
+            entry.put("p99Micros", histogram.getValueAtQuantile(0.99) / 1000.0);
+            entry.put("maxMicros", histogram.getMaxNanos() / 1000.0);
+            stageMaps.put(STAGE_NAMES[i], entry);
+        }
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("stages", stageMaps);
+        map.put("processedFrames", processedFrames.get());
+        map.put("gatedFrames", gatedFrames.get());
+        map.put("belowMinPrecisionFrames", belowMinPrecisionFrames.get());
+        map.put("emittedEvents", emittedEvents.get());
+        map.put("droppedEvents", droppedEvents.get());
+        map.put("overruns", overruns.get());
+        map.put("elapsedMillis", (System.nanoTime() - startedAtNanos) / 1000000);
+        return map;
+    }
+}
@@ -1,215 +1,468 @@
 package com.mattiolichiara.flutter_pitch_detection;
 import be.tarsos.dsp.AudioDispatcher;
-import be.tarsos.dsp.io.android.AudioDispatcherFactory;
-import be.tarsos.dsp.pitch.PitchDetectionHandler;
 import be.tarsos.dsp.pitch.PitchProcessor;
 import be.tarsos.dsp.AudioProcessor;
 import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.io.TarsosDSPAudioInputStream;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
-import java.util.ArrayDeque;
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
-import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class PitchDetectionService {
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    // Frames of pitch track kept per session: minutes at the smallest hops, hours at the default
+    public static final int PITCH_TRACK_CAPACITY = 16384;
+    public static final int MIN_BUFFER_SIZE = 256;
+    // How long stopDetection waits for the audio tasks to return, in total: it runs on the main thread
+    private static final long STOP_TIMEOUT_MILLIS = 500;
+    // How far analysis may fall behind capture when it runs on its own worker
+    private static final double CAPTURE_BUFFER_SECONDS = 2.0;
+    public static final String[] SNAPSHOT_FIELDS = {
+            "frequency", "note", "octave", "midiNote", "noteOctave", "accuracy", "pitchDeviation",
+            "isOnPitch", "volume", "volumeDbFS", "probability", "timeStamp", "sequence", "pitches"
+    };
     private AudioDispatcher dispatcher;
-    private final PitchDetectionHandler pitchHandler;
+    private Future<?> captureTask;
+    private Future<?> analysisTask;
+    private CaptureBufferStream captureBuffer;
+    private volatile boolean separateAnalysis = false;
+    private volatile AudioSource audioSource = MicrophoneSource.INSTANCE;
+    private final PitchFrameListener pitchFrameListener;
     private int sampleRate;
     private int bufferSize;
     private int overlap;
-    private double toleranceCents = 1f;
+    private volatile double toleranceCents = 1f;
     private boolean isRecording = false;
-    private double currentFrequency = -1f;
-    private int currentMidiNote = -1;
-    private double minPrecision = 0.85;
-    private double lastPitchProbability = 0.0;
-    private double volume = 0;
-    private double volumeFromDbFS = 0;
-    private ArrayDeque<Double> rawAudioData = new ArrayDeque<>();
-    private ArrayDeque<Byte> rawPcmData = new ArrayDeque<>();
-    private int maxSamplesToKeep = 44100;
-    private final DecimalFormat decimalFormat;
-    private double a4Reference = 440.0;
+    private volatile double minPrecision = 0.85;
+    // Latest result, replaced whole by the audio thread; every getter reads from one frame
+    private final AtomicReference<PitchFrame> latestFrame = new AtomicReference<>(PitchFrame.EMPTY);
+    // Audio thread only: levels of the buffer being processed, and the frame counter
+    private double bufferVolume = 0;
+    private double bufferVolumeFromDbFS = 0;
+    private long frameSequence = 0;
+    private SpectrumAnalyzer spectrum;
+    private MultiPitchDetector.Result bufferPitches;
+    private volatile AudioHistoryBuffer audioHistory;
+    // replaced per session, so its times only increase
+    private volatile PitchTrackHistory pitchTrack = new PitchTrackHistory(PITCH_TRACK_CAPACITY);
+    private volatile LevelMeter levelMeter;
+    private volatile boolean loudnessMetering = false;
+    // {bufferSize, overlap} waiting to be applied by the audio thread between two buffers
+    private final AtomicReference<int[]> pendingWindow = new AtomicReference<>();
+    private volatile AudioFrameListener audioFrameListener;
+    private volatile SpectrumListener spectrumListener;
+    private volatile AudioFileRecorder recorder;
+    private PitchProcessor.PitchEstimationAlgorithm algorithm = PitchProcessor.PitchEstimationAlgorithm.FFT_YIN;
+    private PitchEstimationProcessor pitchEstimator;
+    // null while instrumentation is off
+    private volatile PipelineMetrics metrics;
+    // Audio thread only: instrumentation of the current buffer and session
+    private long lastBufferEndNanos;
+    private long publishNanos;
+    private boolean liveCapture;
+    private long captureCapacityNanos;
+    private PipelineMetrics overrunMetrics;
+    private long overrunBaseNanos;
+
+    public interface AudioFrameListener {
+        //called on the audio thread with the samples each buffer adds
+        void onAudioFrame(float[] buffer, int offset, int length, int sampleRate);
+    }
+
+    public interface SpectrumListener {
+        // read before each buffer: the spectrum is only computed while some stage wants it
+        boolean isEnabled();
+
+        //called on the audio thread with the spectrum of each buffer the silence gate lets through
+        void onSpectrum(SpectrumAnalyzer spectrum, TuningTable tuning, double timeStamp, long sequence);
+    }
+
+    public interface PitchFrameListener {
+        //called on the audio thread once the frame is published
+        void onPitchFrame(PitchFrame frame);
+    }
+    private volatile double a4Reference = 440.0;
+    // rebuilt only when a4Reference changes
+    private volatile TuningTable tuning;
+    // null when smoothing is off; replaced whole, its state belongs to the audio thread
+    private volatile PitchSmoother smoother;
+    // null when every buffer goes through pitch estimation
+    private volatile SilenceGate silenceGate;
+    // null when only the single pitch is estimated; its state belongs to the audio thread
+    private volatile MultiPitchDetector multiPitchDetector;
 
 //    public String getPlatformVersion() {
 //        return "Android " + android.os.Build.VERSION.RELEASE;
 //    }
 
     public PitchDetectionService(int sampleRate, int bufferSize, int overlap, double toleranceCents, double minPrecision, double a4Reference,
-                                 PitchDetectionHandler pitchHandler) {
+                                 PitchFrameListener pitchFrameListener) {
         this.sampleRate = sampleRate;
         this.bufferSize = bufferSize;
         this.overlap = overlap;
         this.toleranceCents = toleranceCents;
         this.minPrecision = minPrecision;
-        this.lastPitchProbability = 0.0;
-        this.pitchHandler = pitchHandler;
-        this.maxSamplesToKeep = sampleRate;
+        this.pitchFrameListener = pitchFrameListener;
+        this.audioHistory = new AudioHistoryBuffer(sampleRate);
         this.a4Reference = a4Reference;
-
-        this.decimalFormat = (DecimalFormat) NumberFormat.getInstance(Locale.US);
-        this.decimalFormat.applyPattern("#.##");
-    }
-
-    //RMS
-    protected double calculateNormalizedVolume(float[] audioBuffer) {
-        double sum = 0.0;
-        for (float sample : audioBuffer) {
-            sum += sample * sample;
-        }
-
-        double rms = Math.sqrt(sum / audioBuffer.length);
-        double dbFS = 20 * Math.log10(Math.max(rms, 1e-12));
-        return Math.max(0, Math.min(100, (120 + dbFS) * (100.0 / 120.0)));
+        this.tuning = new TuningTable(a4Reference);
     }
 
-    protected double calculateNormalizedVolumeFromDbFS(float[] audioBuffer) {
-        double dbFS = calculateLoudnessInDbFS(audioBuffer);
+    // Maps -120..0 dBFS to the 0-100 volume scale
+    public static double dbFSToNormalizedVolume(double dbFS) {
         return Math.max(0, Math.min(100, (120 + dbFS) * (100.0 / 120.0)));
     }
 
-    //peak
-    protected double calculateLoudnessInDbFS(float[] audioBuffer) {
-        if (audioBuffer == null || audioBuffer.length == 0) return 0.0;
-
-        double peak = 0.0;
-        for (float sample : audioBuffer) {
-            peak = Math.max(peak, Math.abs(sample));
-        }
-        double dbFS = 20 * Math.log10(Math.max(peak, 1e-12));
-        return Math.max(-120, dbFS);
+    // Inverse of the mapping above (-120 dBFS and below read as -120)
+    public static double normalizedVolumeToDbFS(double volume) {
+        return volume * 1.2 - 120;
     }
 
     public void setA4Reference(double a4Reference) {
         if (a4Reference <= 0.0 || a4Reference > 2000.0) {
             throw new IllegalArgumentException("A4 Reference must be between 0 and 2000 Hz");
         }
+        updateTuning(a4Reference);
+    }
+
+    private void updateTuning(double a4Reference) {
         this.a4Reference = a4Reference;
+        if (tuning.getA4Reference() != a4Reference) {
+            tuning = new TuningTable(a4Reference);
+        }
     }
 
     public double getA4Reference() {
         return a4Reference;
     }
 
+    public PitchFrame getFrame() {
+        return latestFrame.get();
+    }
+
     public int getAccuracy(double toleranceCents) {
-        if (currentFrequency <= 0 || currentMidiNote == -1) return 0;
+        return latestFrame.get().getAccuracy(toleranceCents);
+    }
+
+    public double getPitchDeviation() {
+        return latestFrame.get().getPitchDeviation();
+    }
+
+    public boolean isOnPitch(double toleranceCents, double minPrecision) {
+        return latestFrame.get().isOnPitch(toleranceCents, minPrecision);
+    }
 
-        double targetFrequency = a4Reference * Math.pow(2, (currentMidiNote - 69) / 12.0);
+    public double getFrequency() {
+        return latestFrame.get().getFrequency();
+    }
 
-        double maxCents = toleranceCents * 100;
+    public String getNote() {
+        return latestFrame.get().getNote();
+    }
 
-        double ratio = currentFrequency / targetFrequency;
-        double centsDeviation = Math.abs(1200 * Math.log10(ratio) / Math.log10(2));
+    public int getMidiNote() {
+        return latestFrame.get().getMidiNote();
+    }
 
-        if (centsDeviation >= maxCents) {
-            return 0;
+    public int getOctave() {
+        return latestFrame.get().getOctave();
+    }
+
+    /**
+     * Requested tuner values, all from the same frame. {@code fields} null means every field of
+     * {@link #SNAPSHOT_FIELDS}.
+     */
+    public Map<String, Object> getSnapshot(Collection<String> fields, double toleranceCents, double minPrecision) {
+        PitchFrame frame = latestFrame.get();
+        Map<String, Object> snapshot = new HashMap<>();
+        if (fields == null) {
+            for (String field : SNAPSHOT_FIELDS) {
+                snapshot.put(field, snapshotValue(frame, field, toleranceCents, minPrecision));
+            }
+        } else {
+            for (String field : fields) {
+                snapshot.put(field, snapshotValue(frame, field, toleranceCents, minPrecision));
+            }
+        }
+        return snapshot;
+    }
+
+    private static Object snapshotValue(PitchFrame frame, String field, double toleranceCents, double minPrecision) {
+        switch (field) {
+            case "frequency": return frame.getFrequency();
+            case "note": return frame.getNote();
+            case "octave": return frame.getOctave();
+            case "midiNote": return frame.getMidiNote();
+            case "noteOctave": return frame.getNoteOctave();
+            case "accuracy": return frame.getAccuracy(toleranceCents);
+            case "pitchDeviation": return frame.getPitchDeviation();
+            case "isOnPitch": return frame.isOnPitch(toleranceCents, minPrecision);
+            case "volume": return frame.volume;
+            case "volumeDbFS": return frame.volumeDbFS;
+            case "probability": return (double) frame.probability;
+            case "timeStamp": return frame.timeStamp;
+            case "sequence": return frame.sequence;
+            case "pitches": return pitchesToList(frame.pitches);
+            default: throw new IllegalArgumentException("Unknown snapshot field: " + field);
         }
+    }
 
-        return (int) Math.round(100 * (1 - (centsDeviation / maxCents)));
+    // Strongest first; empty when multi-pitch detection is off or found nothing
+    public static List<Map<String, Object>> pitchesToList(MultiPitchDetector.Result pitches) {
+        List<Map<String, Object>> list = new ArrayList<>();
+        if (pitches == null) return list;
+        for (int i = 0; i < pitches.size(); i++) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("frequency", (double) pitches.frequencies[i]);
+            entry.put("salience", (double) pitches.saliences[i]);
+            entry.put("midiNote", pitches.midiNotes[i]);
+            entry.put("noteOctave", TuningTable.noteOctaveName(pitches.midiNotes[i]));
+            list.add(entry);
+        }
+        return list;
     }
 
-    public double getPitchDeviation() {
-        if (currentFrequency <= 0 || currentMidiNote == -1) return 0;
+    public double[] getRawDataFromStream() {
+        return audioHistory.snapshot();
+    }
 
-        double targetFrequency = midiToFrequency(currentMidiNote);
-        double ratio = currentFrequency / targetFrequency;
-        double centsDeviation = 1200 * Math.log10(ratio) / Math.log10(2);
-        centsDeviation = Math.max(-100, Math.min(100, centsDeviation));
+    public byte[] getRawPcmDataFromStream() {
+        return audioHistory.snapshotPcm();
+    }
 
-        try {
-            return Double.parseDouble(decimalFormat.format(centsDeviation));
-        } catch (NumberFormatException e) {
-            return centsDeviation;
-        }
+    public void setAudioFrameListener(AudioFrameListener audioFrameListener) {
+        this.audioFrameListener = audioFrameListener;
     }
 
-    public boolean isOnPitch(double toleranceCents, double minPrecision) {
-        if (currentFrequency <= 0 || currentMidiNote == -1) return false;
+    public void setSpectrumListener(SpectrumListener spectrumListener) {
+        this.spectrumListener = spectrumListener;
+    }
 
-        double targetFrequency = a4Reference * Math.pow(2, (currentMidiNote - 69) / 12.0);
+    // Gets the new samples of every buffer, gated ones included; null stops feeding it
+    public void setRecorder(AudioFileRecorder recorder) {
+        this.recorder = recorder;
+    }
 
-        double maxCents = toleranceCents * 100;
+    public AudioHistoryBuffer.PcmChunk getPcmDataSince(long fromSample) {
+        return audioHistory.pcmSince(fromSample);
+    }
 
-        double ratio = currentFrequency / targetFrequency;
-        double centsDeviation = Math.abs(1200 * Math.log10(ratio) / Math.log10(2));
+    // The current (or last) session's frames between two stream times; see PitchTrackHistory#query
+    public float[] getPitchTrack(double fromSeconds, double toSeconds, int decimation) {
+        return pitchTrack.query(fromSeconds, toSeconds, decimation);
+    }
 
-        double currentPrecision = 1 - (centsDeviation / maxCents);
+    public double getPitchTrackEnd() {
+        return pitchTrack.getLatestTime();
+    }
 
-        return currentPrecision >= minPrecision;
+    public String printNoteOctave() {
+        return latestFrame.get().getNoteOctave();
     }
 
-    private double midiToFrequency(int midiNote) {
-        return a4Reference * Math.pow(2, (midiNote - 69) / 12.0);
+    public synchronized void setParameters(int sampleRate, int bufferSize, double toleranceCents,
+                              double minPrecision, double a4Reference) {
+        this.toleranceCents = toleranceCents;
+        this.minPrecision = minPrecision;
+        updateTuning(a4Reference);
+
+        reconfigure(sampleRate, bufferSize, overlap);
     }
 
-    protected int frequencyToMidi(float frequency) {
-        if (frequency <= 0) return -1;
-        return (int) Math.round(69 + 12 * (Math.log(frequency / a4Reference) / Math.log(2)));
+    public synchronized void setSampleRate(int sampleRate) {
+        reconfigure(sampleRate, bufferSize, overlap);
     }
 
-    protected String midiToNoteName(int midi) {
-        String[] noteNames = {"C", "C#", "D", "D#", "E", "F", "F#", "G", "G#", "A", "A#", "B"};
-        if (midi < 0 || midi > 127) return "";
-        return noteNames[midi % 12];
+    public synchronized void setBufferSize(int bufferSize) {
+        reconfigure(sampleRate, bufferSize, overlap);
     }
 
-    protected int midiToOctave(int midi) {
-        return (midi / 12) - 1;
+    public synchronized void setOverlap(int overlap) {
+        reconfigure(sampleRate, bufferSize, overlap);
     }
 
-    public double getFrequency() {
-        return currentFrequency;
+    public int getOverlap() {
+        return overlap;
     }
 
-    public String getNote() {
-        if (currentMidiNote == -1) return "";
-        return midiToNoteName(currentMidiNote);
+    /**
+     * Applies new capture settings to the running pipeline, rebuilding only what they require:
+     * a buffer size or overlap change is swapped in between two buffers, a sample rate change
+     * needs a new AudioRecord and restarts capture.
+     */
+    public synchronized void reconfigure(int sampleRate, int bufferSize, int overlap) {
+        if (bufferSize < MIN_BUFFER_SIZE) {
+            throw new IllegalArgumentException("bufferSize must be at least " + MIN_BUFFER_SIZE);
+        }
+        if (overlap < 0 || overlap >= bufferSize) {
+            overlap = bufferSize / 2;
+        }
+
+        boolean rateChanged = sampleRate != this.sampleRate;
+        boolean windowChanged = bufferSize != this.bufferSize || overlap != this.overlap;
+        this.sampleRate = sampleRate;
+        this.bufferSize = bufferSize;
+        this.overlap = overlap;
+
+        if (!isRecording) return;
+
+        if (rateChanged) {
+            stopDetection();
+            startDetection();
+        } else if (windowChanged) {
+            pitchEstimator.prepareBufferSize(bufferSize);
+            pendingWindow.set(new int[]{bufferSize, overlap});
+        }
     }
 
-    public int getMidiNote() {
-        if (currentMidiNote == -1) return -1;
-        return currentMidiNote;
+    /**
+     * Smallest window that still holds two periods of {@code minFrequency}, which the YIN family
+     * needs to find it, rounded up to a multiple of 256 so the FFT stays fast. About 2300 samples
+     * (52 ms) for low E at 44.1 kHz, against the 8192 (186 ms) default.
+     */
+    public static int windowForMinFrequency(int sampleRate, double minFrequency) {
+        if (minFrequency <= 0) {
+            throw new IllegalArgumentException("minFrequency must be positive");
+        }
+        int samples = (int) Math.ceil(2 * sampleRate / minFrequency);
+        return Math.max(MIN_BUFFER_SIZE, (samples + 255) / 256 * 256);
     }
 
-    public int getOctave() {
-        if (currentMidiNote < 0) return -1;
-        return midiToOctave(currentMidiNote);
+    // Audio thread, after the current buffer: the next read uses the new window. The old buffer's
+    // tail seeds the new one so the first overlap isn't zeros.
+    private void applyWindow(AudioDispatcher dispatcher, float[] current, int[] window) {
+        float[] seeded = new float[window[0]];
+        int keep = Math.min(current.length, seeded.length);
+        System.arraycopy(current, current.length - keep, seeded, seeded.length - keep, keep);
+
+        dispatcher.setStepSizeAndOverlap(window[0], window[1]);
+        dispatcher.setAudioFloatBuffer(seeded);
+    }
+
+    /**
+     * Smooths the pitch between detection and the published frame, or stops smoothing when
+     * {@code smoother} is null. Returns the latency it adds at the current hop, in milliseconds.
+     */
+    public synchronized double setSmoother(PitchSmoother smoother) {
+        this.smoother = smoother;
+        return getSmoothingLatencyMillis();
     }
 
-    public synchronized List<Double> getRawDataFromStream() {
-        return new ArrayList<>(rawAudioData);
+    public synchronized PitchSmoother getSmoother() {
+        return smoother;
     }
 
-    public synchronized byte[] getRawPcmDataFromStream() {
-        byte[] pcmArray = new byte[rawPcmData.size()];
-        int i = 0;
-        for (byte b : rawPcmData) {
-            pcmArray[i++] = b;
+    public synchronized double getSmoothingLatencyMillis() {
+        PitchSmoother current = smoother;
+        if (current == null) return 0;
+        int hop = Math.max(1, bufferSize - overlap);
+        return current.getLatencySeconds((double) hop / sampleRate) * 1000;
+    }
+
+    // null turns gating off
+    public void setSilenceGate(SilenceGate silenceGate) {
+        this.silenceGate = silenceGate;
+    }
+
+    public SilenceGate getSilenceGate() {
+        return silenceGate;
+    }
+
+    // Looks for simultaneous fundamentals in every buffer the gate lets through; null turns it off
+    public void setMultiPitchDetector(MultiPitchDetector multiPitchDetector) {
+        this.multiPitchDetector = multiPitchDetector;
+    }
+
+    public MultiPitchDetector getMultiPitchDetector() {
+        return multiPitchDetector;
+    }
+
+    public synchronized void setAlgorithm(PitchProcessor.PitchEstimationAlgorithm algorithm) {
+        this.algorithm = algorithm;
+        if (pitchEstimator != null) {
+            pitchEstimator.setAlgorithm(algorithm);
         }
-        return pcmArray;
     }
 
-    public String printNoteOctave() {
-        return getNote() + (getOctave() == -1 ? "" : String.valueOf(getOctave()));
+    /**
+     * Runs the processing chain on its own worker, fed through a ring buffer, so a chain heavier
+     * than capture (multi-pitch, spectrum, slow algorithms) can't delay microphone reads. Applies
+     * from the next start.
+     */
+    public void setSeparateAnalysis(boolean separateAnalysis) {
+        this.separateAnalysis = separateAnalysis;
     }
 
-    public void setParameters(int sampleRate, int bufferSize, double toleranceCents,
-                              double minPrecision, double a4Reference) {
-        this.sampleRate = sampleRate;
-        this.bufferSize = bufferSize;
-        this.toleranceCents = toleranceCents;
-        this.minPrecision = minPrecision;
+    public boolean isSeparateAnalysis() {
+        return separateAnalysis;
+    }
 
-        this.a4Reference = a4Reference;
+    /**
+     * Reads the next sessions from {@code audioSource} instead of the microphone. Sources that
+     * aren't live are processed as fast as the chain allows, on one worker, and end the session
+     * when they run out; {@link #awaitCompletion} waits for that.
+     */
+    public void setAudioSource(AudioSource audioSource) {
+        this.audioSource = audioSource != null ? audioSource : MicrophoneSource.INSTANCE;
     }
 
-    public void setSampleRate(int sampleRate) {
-        this.sampleRate = sampleRate;
+    public AudioSource getAudioSource() {
+        return audioSource;
     }
 
-    public void setBufferSize(int bufferSize) {
-        this.bufferSize = bufferSize;
+    /**
+     * Records stage latencies and frame counts into {@code metrics}, from the next buffer; null
+     * turns instrumentation off.
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Bytes of audio capture had to overwrite because analysis fell behind, this session
+    public synchronized long getCaptureOverwrittenBytes() {
+        return captureBuffer != null ? captureBuffer.getOverwrittenBytes() : 0;
+    }
+
+    public synchronized PitchProcessor.PitchEstimationAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    //per-frame getPitch() cost of every algorithm that has run, against the time one hop of audio lasts
+    public synchronized Map<String, Object> getAlgorithmCost() {
+        Map<String, Object> costs = new HashMap<>();
+        if (pitchEstimator != null) {
+            for (PitchProcessor.PitchEstimationAlgorithm value : PitchProcessor.PitchEstimationAlgorithm.values()) {
+                PitchEstimationProcessor.Cost cost = pitchEstimator.getCost(value);
+                if (cost.getFrames() == 0) continue;
+
+                Map<String, Object> entry = new HashMap<>();
+                entry.put("frames", cost.getFrames());
+                entry.put("averageNanos", cost.getAverageNanos());
+                entry.put("maxNanos", cost.getMaxNanos());
+                entry.put("load", cost.getAverageNanos() / getFrameBudgetNanos());
+                costs.put(value.name(), entry);
+            }
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("algorithm", algorithm.name());
+        result.put("budgetNanos", getFrameBudgetNanos());
+        result.put("costs", costs);
+        return result;
+    }
+
+    // Time between two buffers: processing must stay below this to keep up with capture
+    private double getFrameBudgetNanos() {
+        int hop = Math.max(1, bufferSize - overlap);
+        return hop * 1e9 / sampleRate;
     }
 
     public void setToleranceCents(double toleranceCents) {
@@ -222,8 +475,9 @@ public class PitchDetectionService {
         }
         this.minPrecision = minPrecision;
     }
-    public boolean isRecording() {
-        return isRecording;
+    // False again once a source that isn't live has been played to its end
+    public synchronized boolean isRecording() {
+        return isRecording && dispatcher != null && !dispatcher.isStopped();
     }
 
     public int getSampleRate() {
@@ -242,96 +496,337 @@ public class PitchDetectionService {
         return minPrecision;
     }
 
+    // Turns K-weighted loudness and true peak metering on or off, also while running
+    public void setLoudnessMetering(boolean enabled) {
+        this.loudnessMetering = enabled;
+        LevelMeter meter = levelMeter;
+        if (meter != null) meter.setLoudnessEnabled(enabled);
+    }
+
+    // Latest input levels, or null before detection has started
+    public LevelMeter.Reading getLevels() {
+        LevelMeter meter = levelMeter;
+        return meter != null ? meter.read(new LevelMeter.Reading()) : null;
+    }
+
     public double getVolume() {
-        return volume;
+        return latestFrame.get().volume;
     }
 
     public double getVolumeFromDbFS() {
-        return volumeFromDbFS;
+        return latestFrame.get().volumeDbFS;
     }
 
     public synchronized void startDetection() {
-        if (isRecording) return;
+        if (isRecording()) return;
 
         try {
-            if (bufferSize < 7056) bufferSize = 8192;
+            if (overlap < 0 || overlap >= bufferSize) {
+                overlap = bufferSize / 2;
+            }
+            AudioSource source = audioSource;
+            TarsosDSPAudioInputStream input = source.open(sampleRate, bufferSize);
+            final AudioDispatcher dispatcher;
+            // The ring buffer only pays off against a live source; it would drop recorded audio
+            if (separateAnalysis && source.isLive()) {
+                int hopBytes = Math.max(1, bufferSize - overlap) * 2;
+                captureBuffer = new CaptureBufferStream(
+                        input,
+                        hopBytes,
+                        (int) (CAPTURE_BUFFER_SECONDS * sampleRate) * 2);
+                dispatcher = new AudioDispatcher(captureBuffer, bufferSize, overlap);
+            } else {
+                captureBuffer = null;
+                dispatcher = new AudioDispatcher(input, bufferSize, overlap);
+            }
+            this.dispatcher = dispatcher;
+            // Overruns can only be told from wall time when this thread reads the recorder itself
+            liveCapture = source.isLive() && captureBuffer == null;
+
+            for (AudioProcessor processor : createProcessingChain(dispatcher)) {
+                dispatcher.addAudioProcessor(processor);
+            }
+
+            AudioExecutor executor = AudioExecutor.shared();
+            if (captureBuffer != null) {
+                captureTask = executor.submitCapture(captureBuffer);
+                analysisTask = executor.submitAnalysis(dispatcher);
+            } else {
+                captureTask = executor.submitCapture(dispatcher);
+                analysisTask = null;
+            }
+            isRecording = true;
+
+        } catch (Exception e) {
+            stopDetection();
+            throw new RuntimeException("Start failed: " + e.getMessage(), e);
+        }
+    }
 
-            dispatcher = AudioDispatcherFactory.fromDefaultMicrophone(
-                    sampleRate,
-                    bufferSize,
-                    overlap
-            );
+    /**
+     * Starts a new session and returns its per-buffer processing chain, in dispatch order:
+     * levels and history, recording, silence gate, spectrum, pitch estimation. {@code dispatcher}
+     * only receives window changes and may be null when the chain is driven directly, as the
+     * benchmarks do.
+     */
+    List<AudioProcessor> createProcessingChain(final AudioDispatcher dispatcher) {
+        pendingWindow.set(null);
+        frameSequence = 0;
+        bufferPitches = null;
+        spectrum = new SpectrumAnalyzer(sampleRate);
+        latestFrame.set(PitchFrame.EMPTY);
+        if (pitchTrack.size() > 0) {
+            pitchTrack = new PitchTrackHistory(PITCH_TRACK_CAPACITY);
+        }
+        if (audioHistory == null || audioHistory.getCapacity() != sampleRate) {
+            audioHistory = new AudioHistoryBuffer(sampleRate);
+        }
+        final LevelMeter meter = new LevelMeter(sampleRate);
+        meter.setLoudnessEnabled(loudnessMetering);
+        levelMeter = meter;
+        lastBufferEndNanos = 0;
+        overrunMetrics = null;
+        // The recorder holds at least one window (see MicrophoneDispatcherFactory)
+        captureCapacityNanos = (long) (bufferSize * 1e9 / sampleRate);
+
+        List<AudioProcessor> chain = new ArrayList<>();
+        chain.add(timed(PipelineMetrics.LEVELS, new AudioProcessor() {
+            @Override
+            public boolean process(AudioEvent audioEvent) {
+                float[] audioBuffer = audioEvent.getFloatBuffer();
+                int fresh = freshSamples(audioEvent);
+
+                meter.process(audioBuffer, fresh);
+                bufferVolume = dbFSToNormalizedVolume(meter.getRmsDbFS());
+                bufferVolumeFromDbFS = dbFSToNormalizedVolume(meter.getPeakDbFS());
+
+                // Keeps the last second, lock-free for readers
+                audioHistory.write(audioBuffer, audioBuffer.length - fresh, fresh);
+
+                AudioFrameListener listener = audioFrameListener;
+                if (listener != null) {
+                    listener.onAudioFrame(audioBuffer, audioBuffer.length - fresh, fresh, sampleRate);
+                }
 
-            dispatcher.addAudioProcessor(new AudioProcessor() {
-                @Override
-                public boolean process(AudioEvent audioEvent) {
+                int[] window = pendingWindow.getAndSet(null);
+                if (window != null) {
+                    applyWindow(dispatcher, audioBuffer, window);
+                }
+                return true;
+            }
+
+            @Override
+            public void processingFinished() {
+            }
+        }));
+        // Ahead of the gate, so silences are recorded too
+        chain.add(timed(PipelineMetrics.RECORD, new AudioProcessor() {
+            @Override
+            public boolean process(AudioEvent audioEvent) {
+                AudioFileRecorder current = recorder;
+                if (current != null) {
                     float[] audioBuffer = audioEvent.getFloatBuffer();
-                    synchronized (PitchDetectionService.this) {
-                        volume = calculateNormalizedVolume(audioBuffer);
-                        volumeFromDbFS = calculateNormalizedVolumeFromDbFS(audioBuffer);
-
-                        for (float sample : audioBuffer) {
-                            rawAudioData.add((double) sample);
-
-                            // Convert to PCM
-                            short pcmSample = (short) (sample * Short.MAX_VALUE);
-                            rawPcmData.add((byte) (pcmSample & 0xff));
-                            rawPcmData.add((byte) ((pcmSample >> 8) & 0xff));
-
-                            // Remove oldest samples if we exceed 1 second
-                            if (rawAudioData.size() > maxSamplesToKeep) {
-                                rawAudioData.removeFirst();
-                                rawPcmData.removeFirst();
-                                rawPcmData.removeFirst(); // Remove 2 PCM bytes per sample
-                            }
-                        }
-                    }
+                    int fresh = freshSamples(audioEvent);
+                    current.write(audioBuffer, audioBuffer.length - fresh, fresh, sampleRate);
+                }
+                return true;
+            }
+
+            @Override
+            public void processingFinished() {
+            }
+        }));
+
+        pitchEstimator = new PitchEstimationProcessor(
+                algorithm,
+                sampleRate,
+                bufferSize,
+                (pitchResult, audioEvent) -> {
+                    publish(buildFrame(pitchResult.getPitch(), pitchResult.getProbability(),
+                            audioEvent.getTimeStamp(), false));
+                }
+        );
+
+        // Ahead of the estimator: a quiet buffer still publishes a frame (with its levels) but
+        // returning false ends the chain before the pitch is estimated
+        chain.add(timed(PipelineMetrics.GATE, new AudioProcessor() {
+            @Override
+            public boolean process(AudioEvent audioEvent) {
+                SilenceGate gate = silenceGate;
+                if (gate == null) return true;
+                if (frameSequence == 0) gate.reset();
+
+                double time = audioEvent.getTimeStamp();
+                if (gate.admit(normalizedVolumeToDbFS(bufferVolume), normalizedVolumeToDbFS(bufferVolumeFromDbFS), time)) {
                     return true;
                 }
+                bufferPitches = null;
+                publish(buildFrame(-1, 0, time, true));
+                return false;
+            }
+
+            @Override
+            public void processingFinished() {
+            }
+        }));
+        // One FFT of the buffer, only while a spectral stage wants it
+        chain.add(timed(PipelineMetrics.SPECTRUM, new AudioProcessor() {
+            @Override
+            public boolean process(AudioEvent audioEvent) {
+                MultiPitchDetector detector = multiPitchDetector;
+                SpectrumListener listener = spectrumListener;
+                boolean streaming = listener != null && listener.isEnabled();
+                bufferPitches = null;
+                if (detector == null && !streaming) return true;
+
+                TuningTable table = tuning;
+                spectrum.process(audioEvent.getFloatBuffer());
+                if (detector != null) {
+                    bufferPitches = detector.detect(spectrum, table);
+                }
+                if (streaming) {
+                    listener.onSpectrum(spectrum, table, audioEvent.getTimeStamp(), frameSequence);
+                }
+                return true;
+            }
+
+            @Override
+            public void processingFinished() {
+            }
+        }));
+        chain.add(timed(PipelineMetrics.PITCH, pitchEstimator));
+        return chain;
+    }
+
+    // Overlapping buffers repeat the previous tail: only this many samples are new
+    private static int freshSamples(AudioEvent audioEvent) {
+        int length = audioEvent.getFloatBuffer().length;
+        return audioEvent.getSamplesProcessed() == 0 ? length : length - audioEvent.getOverlap();
+    }
+
+    // Times `processor` as `stage` while metrics are on; off, it costs one volatile read
+    private AudioProcessor timed(final int stage, final AudioProcessor processor) {
+        return new AudioProcessor() {
+            @Override
+            public boolean process(AudioEvent audioEvent) {
+                publishNanos = 0;
+                PipelineMetrics current = metrics;
+                if (current == null) {
+                    lastBufferEndNanos = 0;
+                    return processor.process(audioEvent);
+                }
 
-                @Override
-                public void processingFinished() {
+                long start = System.nanoTime();
+                if (stage == PipelineMetrics.LEVELS) {
+                    onBufferStart(current, audioEvent, start);
                 }
-            });
-
-            dispatcher.addAudioProcessor(new PitchProcessor(
-                    PitchProcessor.PitchEstimationAlgorithm.FFT_YIN,
-                    sampleRate,
-                    bufferSize,
-                    (pitchResult, audioEvent) -> {
-                        float pitch = pitchResult.getPitch();
-                        float probability = pitchResult.getProbability();
-
-                        if (pitch > 0 && probability >= minPrecision) {
-                            synchronized (this) {
-                                currentFrequency = pitch;
-                                currentMidiNote = frequencyToMidi(pitch);
-                                lastPitchProbability = probability;
-                            }
-                        } else {
-                            synchronized (this) {
-                                currentFrequency = -1;
-                                currentMidiNote = -1;
-                                lastPitchProbability = 0;
-                            }
-                        }
-                        pitchHandler.handlePitch(pitchResult, audioEvent);
-                    }
-            ));
-
-            new Thread(dispatcher, "Audio Dispatcher").start();
-            isRecording = true;
+                boolean proceed = processor.process(audioEvent);
+                long end = System.nanoTime();
+                // Publishing is a stage of its own
+                current.record(stage, end - start - publishNanos);
+                lastBufferEndNanos = end;
+                return proceed;
+            }
+
+            @Override
+            public void processingFinished() {
+                processor.processingFinished();
+            }
+        };
+    }
+
+    private void onBufferStart(PipelineMetrics current, AudioEvent audioEvent, long now) {
+        if (lastBufferEndNanos != 0) {
+            current.record(PipelineMetrics.CAPTURE, now - lastBufferEndNanos);
+        }
+        if (!liveCapture) return;
+
+        // Wall time running ahead of the audio received means the recorder is filling up; past
+        // its capacity it discards audio, and the lag it had built up goes with it
+        long audioNanos = (long) (audioEvent.getTimeStamp() * 1e9);
+        if (overrunMetrics != current) {
+            overrunMetrics = current;
+            overrunBaseNanos = now - audioNanos;
+            return;
+        }
+        long backlog = now - overrunBaseNanos - audioNanos;
+        if (backlog > captureCapacityNanos) {
+            current.countOverrun();
+            overrunBaseNanos += backlog;
+        }
+    }
 
-        } catch (Exception e) {
-            stopDetection();
-            throw new RuntimeException("Start failed: " + e.getMessage(), e);
+    private void publish(PitchFrame frame) {
+        latestFrame.set(frame);
+        pitchTrack.add(frame);
+        PipelineMetrics current = metrics;
+        if (current == null) {
+            pitchFrameListener.onPitchFrame(frame);
+            return;
+        }
+        long start = System.nanoTime();
+        pitchFrameListener.onPitchFrame(frame);
+        long elapsed = System.nanoTime() - start;
+        current.record(PipelineMetrics.PUBLISH, elapsed);
+        current.countFrame(frame, minPrecision);
+        publishNanos += elapsed;
+    }
+
+    // Audio thread. One log for note, octave and cents; the getters only read the results
+    private PitchFrame buildFrame(float pitch, float probability, double timeStamp, boolean gated) {
+        int midi = -1;
+        double cents = 0;
+        boolean voiced = pitch > 0 && probability >= minPrecision;
+        PitchSmoother smoother = this.smoother;
+        // A smoother carried over from the previous session starts clean
+        if (smoother != null && (!voiced || frameSequence == 0)) {
+            smoother.reset();
         }
+        if (pitch > 0) {
+            TuningTable table = tuning;
+            double exactMidi = table.exactMidi(pitch);
+            if (smoother != null && voiced) {
+                exactMidi = smoother.process(exactMidi, probability, timeStamp);
+                pitch = (float) table.exactMidiToFrequency(exactMidi);
+            }
+            midi = (int) Math.round(exactMidi);
+            cents = (exactMidi - midi) * 100;
+        }
+        return new PitchFrame(pitch, probability, voiced, midi, cents,
+                bufferVolume, bufferVolumeFromDbFS, timeStamp, frameSequence++, gated, bufferPitches);
     }
 
+    /**
+     * Stops capture and waits (up to {@link #STOP_TIMEOUT_MILLIS} for both) for the audio tasks to
+     * return, so the microphone is free when a new session starts. A task still running after that
+     * is left to finish on its worker, where the next session's task queues behind it.
+     */
     public synchronized void stopDetection() {
         if (dispatcher != null && !dispatcher.isStopped()) {
             dispatcher.stop();
-            isRecording = false;
         }
+        isRecording = false;
+        AudioExecutor executor = AudioExecutor.shared();
+        long deadline = System.nanoTime() + STOP_TIMEOUT_MILLIS * 1_000_000;
+        executor.join(captureTask, STOP_TIMEOUT_MILLIS);
+        executor.join(analysisTask, Math.max(0, (deadline - System.nanoTime()) / 1_000_000));
+        captureTask = null;
+        analysisTask = null;
+    }
+
+    /**
+     * Waits up to {@code timeoutMillis} for the session to end on its own, as it does when a
+     * source that isn't live runs out, and returns whether it did. Every frame has been delivered
+     * to the listener by then.
+     */
+    public boolean awaitCompletion(long timeoutMillis) {
+        Future<?> capture;
+        Future<?> analysis;
+        synchronized (this) {
+            capture = captureTask;
+            analysis = analysisTask;
+        }
+        AudioExecutor executor = AudioExecutor.shared();
+        return executor.join(capture, timeoutMillis) && executor.join(analysis, timeoutMillis);
     }
-}
\ No newline at end of file
+}
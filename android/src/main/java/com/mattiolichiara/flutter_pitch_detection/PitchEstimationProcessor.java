@@ -0,0 +1,165 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.pitch.PitchDetectionHandler;
+import be.tarsos.dsp.pitch.PitchDetectionResult;
+import be.tarsos.dsp.pitch.PitchDetector;
+import be.tarsos.dsp.pitch.PitchProcessor.PitchEstimationAlgorithm;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Drop-in replacement for TarsosDSP's {@code PitchProcessor} whose algorithm can be swapped while
+ * the dispatcher is running. The new detector is built on the caller's thread and takes over at
+ * the next buffer. The same goes for buffer size changes, where the detector for the new size is
+ * prepared up front and swapped in by the first buffer that has that size.
+ *
+ * The current detector and the one prepared for a size change are published together as one
+ * immutable {@link State}. Every change, from the caller's thread or the audio thread, replaces it
+ * with compareAndSet and retries on a race, so an algorithm change can't be lost to a swap.
+ *
+ * Also measures how long {@code getPitch} takes per buffer for each algorithm that has run, so the
+ * app can compare the cost against the real-time budget.
+ */
+public class PitchEstimationProcessor implements AudioProcessor {
+
+    private static final class Estimator {
+        final PitchEstimationAlgorithm algorithm;
+        final PitchDetector detector;
+        final int bufferSize;
+
+        Estimator(PitchEstimationAlgorithm algorithm, float sampleRate, int bufferSize) {
+            this.algorithm = algorithm;
+            this.detector = algorithm.getDetector(sampleRate, bufferSize);
+            this.bufferSize = bufferSize;
+        }
+    }
+
+    private static final class State {
+        final Estimator current;
+        // Built ahead of a buffer size change, taken over by the first buffer of the new size
+        final Estimator pending;
+
+        State(Estimator current, Estimator pending) {
+            this.current = current;
+            this.pending = pending;
+        }
+    }
+
+    // Written by the audio thread only
+    public static final class Cost {
+        private volatile long frames = 0;
+        private volatile long maxNanos = 0;
+        private volatile double averageNanos = 0;
+
+        void add(long nanos) {
+            long n = frames + 1;
+            // Exponential moving average once warmed up, so it follows the current load
+            averageNanos = n <= 32 ? averageNanos + (nanos - averageNanos) / n
+                    : averageNanos + (nanos - averageNanos) / 32.0;
+            if (nanos > maxNanos) maxNanos = nanos;
+            frames = n;
+        }
+
+        public long getFrames() {
+            return frames;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public double getAverageNanos() {
+            return averageNanos;
+        }
+    }
+
+    private final PitchDetectionHandler handler;
+    private final Map<PitchEstimationAlgorithm, Cost> costs = new EnumMap<>(PitchEstimationAlgorithm.class);
+    private final AtomicReference<State> state;
+    private final float sampleRate;
+
+    public PitchEstimationProcessor(PitchEstimationAlgorithm algorithm, float sampleRate, int bufferSize,
+                                    PitchDetectionHandler handler) {
+        this.handler = handler;
+        this.sampleRate = sampleRate;
+        for (PitchEstimationAlgorithm value : PitchEstimationAlgorithm.values()) {
+            costs.put(value, new Cost());
+        }
+        this.state = new AtomicReference<>(new State(new Estimator(algorithm, sampleRate, bufferSize), null));
+    }
+
+    public void setAlgorithm(PitchEstimationAlgorithm algorithm) {
+        while (true) {
+            State seen = state.get();
+            if (algorithm == seen.current.algorithm) return;
+            Estimator pending = seen.pending == null ? null
+                    : new Estimator(algorithm, sampleRate, seen.pending.bufferSize);
+            State next = new State(new Estimator(algorithm, sampleRate, seen.current.bufferSize), pending);
+            if (state.compareAndSet(seen, next)) return;
+        }
+    }
+
+    public void prepareBufferSize(int bufferSize) {
+        while (true) {
+            State seen = state.get();
+            Estimator current = seen.current;
+            Estimator pending = bufferSize == current.bufferSize ? null
+                    : new Estimator(current.algorithm, sampleRate, bufferSize);
+            if (state.compareAndSet(seen, new State(current, pending))) return;
+        }
+    }
+
+    public PitchEstimationAlgorithm getAlgorithm() {
+        return state.get().current.algorithm;
+    }
+
+    public Cost getCost(PitchEstimationAlgorithm algorithm) {
+        return costs.get(algorithm);
+    }
+
+    @Override
+    public boolean process(AudioEvent audioEvent) {
+        float[] audioBuffer = audioEvent.getFloatBuffer();
+        Estimator current = state.get().current;
+        if (audioBuffer.length != current.bufferSize) {
+            current = swapFor(audioBuffer.length);
+        }
+
+        long start = System.nanoTime();
+        PitchDetectionResult result = current.detector.getPitch(audioBuffer);
+        costs.get(current.algorithm).add(System.nanoTime() - start);
+
+        handler.handlePitch(result, audioEvent);
+        return true;
+    }
+
+    private Estimator swapFor(int length) {
+        while (true) {
+            State seen = state.get();
+            Estimator current = seen.current;
+            if (current.bufferSize == length) return current;
+            Estimator next = seen.pending;
+            if (next == null || next.bufferSize != length || next.algorithm != current.algorithm) {
+                // Unprepared size (e.g. a short last buffer): build it here rather than fail
+                next = new Estimator(current.algorithm, sampleRate, length);
+            }
+            if (state.compareAndSet(seen, new State(next, null))) return next;
+        }
+    }
+
+    @Override
+    public void processingFinished() {
+    }
+
+    public static PitchEstimationAlgorithm parseAlgorithm(String name) {
+        try {
+            return PitchEstimationAlgorithm.valueOf(name);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new IllegalArgumentException("Unknown pitch algorithm: " + name);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds the map sent on the pitch event channel. Only the fields of the requested
+ * {@link PitchPayload} are computed, and all pitch and level fields come from the one
+ * {@link PitchFrame} the event is for.
+ *
+ * For {@link PitchPayload#WITH_PCM_DELTA} it remembers how far the previous event got, so each
+ * event only carries the samples appended since then.
+ */
+public class PitchEventBuilder {
+    private final PitchPayload payload;
+    private long pcmCursor = 0;
+
+    public PitchEventBuilder(PitchPayload payload) {
+        this.payload = payload;
+    }
+
+    public PitchPayload getPayload() {
+        return payload;
+    }
+
+    //call when the service (and its sample counter) is replaced
+    public void reset() {
+        pcmCursor = 0;
+    }
+
+    public Map<String, Object> build(PitchDetectionService service, PitchFrame frame, long droppedFrames) {
+        Map<String, Object> data = new HashMap<>();
+
+        int midi = frame.midiNote;
+        double toleranceCents = service.getToleranceCents();
+        double minPrecision = service.getMinPrecision();
+
+        data.put("noteOctave", frame.getNoteOctave());
+        data.put("note", TuningTable.noteName(midi));
+        data.put("octave", TuningTable.midiToOctave(midi));
+        data.put("midiNote", midi);
+        data.put("frequency", frame.pitch);
+
+        data.put("accuracy", frame.getAccuracy(toleranceCents));
+        data.put("pitchDeviation", frame.getPitchDeviation());
+        data.put("isOnPitch", frame.isOnPitch(toleranceCents, minPrecision));
+        data.put("probability", frame.probability);
+        data.put("timeStamp", frame.timeStamp);
+        data.put("sequence", frame.sequence);
+        data.put("droppedFrames", droppedFrames);
+        if (frame.pitches != null) {
+            data.put("pitches", PitchDetectionService.pitchesToList(frame.pitches));
+        }
+
+        if (payload.hasLevels()) {
+            data.put("volume", frame.volume);
+            data.put("volumeDbFS", frame.volumeDbFS);
+        }
+
+        if (payload.hasPcmDelta()) {
+            AudioHistoryBuffer.PcmChunk chunk = service.getPcmDataSince(pcmCursor);
+            data.put("pcmDelta", chunk.data);
+            data.put("pcmOffset", chunk.offset);
+            pcmCursor = chunk.end();
+        }
+
+        if (payload.hasFullWindow()) {
+            data.put("toleranceCents", toleranceCents);
+            data.put("bufferSize", service.getBufferSize());
+            data.put("sampleRate", service.getSampleRate());
+            data.put("minPrecision", minPrecision);
+            data.put("a4Reference", service.getA4Reference());
+
+            data.put("pcmData", service.getRawPcmDataFromStream());
+            data.put("streamData", service.getRawDataFromStream());
+        }
+
+        return data;
+    }
+}
@@ -0,0 +1,126 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands frames from the audio thread to the main thread, keeping only the latest one.
+ *
+ * At most one drain is queued on the main looper at any time, so a stalled UI thread never
+ * accumulates posts. Frames replaced before they could be emitted are counted as dropped, and
+ * emission is capped at {@code maxEventsPerSecond} (0 means no cap). With {@link PipelineMetrics}
+ * set, the wait for the main looper and the emitter's run are recorded as its delivery and
+ * encode stages.
+ */
+public class PitchEventPublisher<T> {
+
+    public interface Emitter<T> {
+        void emit(T frame);
+    }
+
+    private final Handler mainHandler;
+    private final Emitter<T> emitter;
+    private final AtomicReference<T> latest = new AtomicReference<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong emittedFrames = new AtomicLong();
+    private volatile long minIntervalMs = 0;
+    private volatile long lastEmitMs = 0;
+    private volatile PipelineMetrics metrics;
+    // When the latest frame was offered, while metrics are on
+    private volatile long offeredAtNanos = 0;
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            scheduled.set(false);
+            T frame = latest.getAndSet(null);
+            if (frame == null) return;
+
+            lastEmitMs = SystemClock.uptimeMillis();
+            emittedFrames.incrementAndGet();
+            PipelineMetrics current = metrics;
+            if (current == null) {
+                emitter.emit(frame);
+                return;
+            }
+            long start = System.nanoTime();
+            long offeredAt = offeredAtNanos;
+            if (offeredAt != 0) {
+                current.record(PipelineMetrics.DELIVERY, start - offeredAt);
+            }
+            emitter.emit(frame);
+            current.record(PipelineMetrics.ENCODE, System.nanoTime() - start);
+            current.countEmittedEvent();
+        }
+    };
+
+    public PitchEventPublisher(Emitter<T> emitter) {
+        this(emitter, new Handler(Looper.getMainLooper()));
+    }
+
+    // Tests drain through their own handler
+    PitchEventPublisher(Emitter<T> emitter, Handler mainHandler) {
+        this.emitter = emitter;
+        this.mainHandler = mainHandler;
+    }
+
+    public void setMaxEventsPerSecond(int maxEventsPerSecond) {
+        if (maxEventsPerSecond < 0) {
+            throw new IllegalArgumentException("maxEventsPerSecond must be 0 (unlimited) or positive");
+        }
+        this.minIntervalMs = maxEventsPerSecond == 0 ? 0 : Math.max(1, 1000 / maxEventsPerSecond);
+    }
+
+    public int getMaxEventsPerSecond() {
+        long interval = minIntervalMs;
+        return interval == 0 ? 0 : (int) (1000 / interval);
+    }
+
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+        offeredAtNanos = 0;
+    }
+
+    //audio thread
+    public void offer(T frame) {
+        PipelineMetrics current = metrics;
+        if (current != null) {
+            offeredAtNanos = System.nanoTime();
+        }
+        if (latest.getAndSet(frame) != null) {
+            droppedFrames.incrementAndGet();
+            if (current != null) current.countDroppedEvent();
+        }
+
+        if (scheduled.compareAndSet(false, true)) {
+            long delay = lastEmitMs + minIntervalMs - SystemClock.uptimeMillis();
+            if (delay > 0) {
+                mainHandler.postDelayed(drain, delay);
+            } else {
+                mainHandler.post(drain);
+            }
+        }
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    public long getEmittedFrames() {
+        return emittedFrames.get();
+    }
+
+    public void clear() {
+        mainHandler.removeCallbacks(drain);
+        latest.set(null);
+        scheduled.set(false);
+        droppedFrames.set(0);
+        emittedFrames.set(0);
+    }
+}
@@ -0,0 +1,171 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.os.Binder;
+import android.os.Build;
+import android.os.IBinder;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.ServiceCompat;
+
+/**
+ * Runs a {@link PitchDetectionService} in an Android foreground service, so capture and analysis
+ * go on while the app is in the background and across activity restarts.
+ *
+ * The plugin binds to it, creates the detection with {@link #getRelay()} as its listener and
+ * attaches its own listener. While no listener is attached (the Flutter engine is gone) frames
+ * are kept in a bounded {@link PitchResultBuffer}, which the next engine takes as one batch.
+ */
+public class PitchForegroundService extends Service {
+    public static final String EXTRA_TITLE = "title";
+    public static final String EXTRA_TEXT = "text";
+    private static final String NOTIFICATION_CHANNEL = "pitch_detection";
+    private static final int NOTIFICATION_ID = 4401;
+
+    private static volatile boolean running = false;
+
+    public class LocalBinder extends Binder {
+        public PitchForegroundService getService() {
+            return PitchForegroundService.this;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+    private PitchDetectionService detection;
+    private volatile PitchResultBuffer missedResults = new PitchResultBuffer(1);
+    private volatile PitchDetectionService.PitchFrameListener client;
+    private long startedAtMillis;
+
+    private final PitchDetectionService.PitchFrameListener relay = frame -> {
+        PitchDetectionService.PitchFrameListener current = client;
+        if (current != null) {
+            current.onPitchFrame(frame);
+        } else if (!frame.gated) {
+            missedResults.add(frame);
+        }
+    };
+
+    // True from the start command until the service is destroyed
+    public static boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        running = true;
+        String title = intent != null ? intent.getStringExtra(EXTRA_TITLE) : null;
+        String text = intent != null ? intent.getStringExtra(EXTRA_TEXT) : null;
+        Notification notification = buildNotification(
+                title != null ? title : "Pitch detection",
+                text != null ? text : "Listening in the background");
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            startForeground(NOTIFICATION_ID, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_MICROPHONE);
+        } else {
+            startForeground(NOTIFICATION_ID, notification);
+        }
+        // Not sticky: after the process dies there is no engine left to configure a new session
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public void onDestroy() {
+        running = false;
+        synchronized (this) {
+            if (detection != null) {
+                detection.stopDetection();
+                detection = null;
+            }
+        }
+        client = null;
+        super.onDestroy();
+    }
+
+    // The listener to build the detection with
+    public PitchDetectionService.PitchFrameListener getRelay() {
+        return relay;
+    }
+
+    /**
+     * Starts {@code detection}, replacing the one running before, and keeps up to
+     * {@code maxBufferedResults} frames while nobody is attached.
+     */
+    public synchronized void run(PitchDetectionService detection, int maxBufferedResults) {
+        if (this.detection != null) {
+            this.detection.stopDetection();
+        }
+        missedResults = new PitchResultBuffer(maxBufferedResults);
+        this.detection = detection;
+        startedAtMillis = System.currentTimeMillis();
+        detection.startDetection();
+    }
+
+    // null until the plugin has started a detection
+    public synchronized PitchDetectionService getDetection() {
+        return detection;
+    }
+
+    // Wall clock time at the start of the session, which frame time stamps count from
+    public synchronized long getStartedAtMillis() {
+        return startedAtMillis;
+    }
+
+    public void attach(PitchDetectionService.PitchFrameListener listener) {
+        client = listener;
+    }
+
+    public void detach() {
+        client = null;
+    }
+
+    public PitchResultBuffer.Batch takeMissedResults() {
+        return missedResults.take();
+    }
+
+    // Stops the detection and the service
+    public void shutdown() {
+        synchronized (this) {
+            if (detection != null) {
+                detection.stopDetection();
+                detection = null;
+            }
+        }
+        ServiceCompat.stopForeground(this, ServiceCompat.STOP_FOREGROUND_REMOVE);
+        stopSelf();
+    }
+
+    private Notification buildNotification(String title, String text) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+            manager.createNotificationChannel(new NotificationChannel(
+                    NOTIFICATION_CHANNEL, "Pitch detection", NotificationManager.IMPORTANCE_LOW));
+        }
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, NOTIFICATION_CHANNEL)
+                .setContentTitle(title)
+                .setContentText(text)
+                .setSmallIcon(getApplicationInfo().icon)
+                .setOngoing(true)
+                .setPriority(NotificationCompat.PRIORITY_LOW);
+
+        // Tapping the notification brings the app back
+        Intent launch = getPackageManager().getLaunchIntentForPackage(getPackageName());
+        if (launch != null) {
+            int flags = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_IMMUTABLE : 0;
+            builder.setContentIntent(PendingIntent.getActivity(this, 0, launch, flags));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,77 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+/**
+ * Everything detected in one audio buffer. Built once by the audio thread and never modified, so
+ * a reader holding a frame sees pitch, note and levels from the same buffer.
+ *
+ * {@code pitch} and {@code midiNote} are the detector's raw answer. A frame is voiced when that
+ * answer is at least {@code minPrecision} probable; the tuner getters only report voiced frames.
+ */
+public final class PitchFrame {
+    public static final PitchFrame EMPTY = new PitchFrame(-1, 0, false, -1, 0, 0, 0, 0, -1, false, null);
+
+    public final float pitch;
+    public final float probability;
+    public final boolean voiced;
+    public final int midiNote;
+    // signed deviation of pitch from midiNote
+    public final double cents;
+    public final double volume;
+    public final double volumeDbFS;
+    // stream time of the buffer start, in seconds
+    public final double timeStamp;
+    // per session, starting at 0
+    public final long sequence;
+    // skipped by the silence gate: no pitch was estimated
+    public final boolean gated;
+    // simultaneous fundamentals, or null when multi-pitch detection is off or found none
+    public final MultiPitchDetector.Result pitches;
+
+    public PitchFrame(float pitch, float probability, boolean voiced, int midiNote, double cents,
+                      double volume, double volumeDbFS, double timeStamp, long sequence, boolean gated,
+                      MultiPitchDetector.Result pitches) {
+        this.pitch = pitch;
+        this.probability = probability;
+        this.voiced = voiced;
+        this.midiNote = midiNote;
+        this.cents = cents;
+        this.volume = volume;
+        this.volumeDbFS = volumeDbFS;
+        this.timeStamp = timeStamp;
+        this.sequence = sequence;
+        this.gated = gated;
+        this.pitches = pitches;
+    }
+
+    public double getFrequency() {
+        return voiced ? pitch : -1;
+    }
+
+    public int getMidiNote() {
+        return voiced ? midiNote : -1;
+    }
+
+    public String getNote() {
+        return voiced ? TuningTable.noteName(midiNote) : "";
+    }
+
+    public int getOctave() {
+        return voiced ? TuningTable.midiToOctave(midiNote) : -1;
+    }
+
+    public String getNoteOctave() {
+        return voiced ? TuningTable.noteOctaveName(midiNote) : "";
+    }
+
+    public int getAccuracy(double toleranceCents) {
+        return voiced ? TuningTable.accuracy(cents, toleranceCents) : 0;
+    }
+
+    public double getPitchDeviation() {
+        return voiced ? TuningTable.pitchDeviation(cents) : 0;
+    }
+
+    public boolean isOnPitch(double toleranceCents, double minPrecision) {
+        return voiced && TuningTable.isOnPitch(cents, toleranceCents, minPrecision);
+    }
+}
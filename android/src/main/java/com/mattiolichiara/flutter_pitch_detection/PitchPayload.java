@@ -0,0 +1,43 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+/**
+ * Which fields a pitch event carries. Chosen by the Dart side when it subscribes to the event
+ * channel.
+ */
+public enum PitchPayload {
+    PITCH_ONLY("pitchOnly"),
+    PITCH_AND_LEVEL("pitchAndLevel"),
+    // pitch and level plus only the PCM samples appended since the previous event
+    WITH_PCM_DELTA("withPcmDelta"),
+    FULL("full");
+
+    private final String key;
+
+    PitchPayload(String key) {
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public boolean hasLevels() {
+        return this != PITCH_ONLY;
+    }
+
+    public boolean hasPcmDelta() {
+        return this == WITH_PCM_DELTA;
+    }
+
+    public boolean hasFullWindow() {
+        return this == FULL;
+    }
+
+    public static PitchPayload fromKey(String key) {
+        if (key == null) return FULL;
+        for (PitchPayload payload : values()) {
+            if (payload.key.equals(key)) return payload;
+        }
+        throw new IllegalArgumentException("Unknown payload profile: " + key);
+    }
+}
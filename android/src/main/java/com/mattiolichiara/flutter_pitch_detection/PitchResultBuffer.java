@@ -0,0 +1,75 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+/**
+ * Bounded store of pitch frames nobody was listening to, kept in the packed layout of
+ * {@link OfflinePitchAnalyzer} so Dart reads it as a pitch track. When full, the oldest frames are
+ * overwritten and counted.
+ *
+ * The audio thread adds, the main thread takes everything at once; both hold the lock only to
+ * copy a few floats.
+ */
+public class PitchResultBuffer {
+    private static final int FIELDS = OfflinePitchAnalyzer.FIELDS_PER_FRAME;
+
+    /** Frames taken in one go, oldest first. */
+    public static final class Batch {
+        public final float[] track;
+        // frames lost to the capacity limit since the previous take
+        public final long overwritten;
+
+        Batch(float[] track, long overwritten) {
+            this.track = track;
+            this.overwritten = overwritten;
+        }
+    }
+
+    private final int capacity;
+    private final float[] frames;
+    private int head = 0;
+    private int size = 0;
+    private long overwritten = 0;
+
+    public PitchResultBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.frames = new float[capacity * FIELDS];
+    }
+
+    //audio thread
+    public synchronized void add(PitchFrame frame) {
+        int out = ((head + size) % capacity) * FIELDS;
+        if (size == capacity) {
+            head = (head + 1) % capacity;
+            overwritten++;
+        } else {
+            size++;
+        }
+        frames[out] = (float) frame.timeStamp;
+        frames[out + 1] = (float) frame.getFrequency();
+        frames[out + 2] = frame.probability;
+        frames[out + 3] = frame.getMidiNote();
+        frames[out + 4] = frame.voiced ? (float) frame.cents : 0;
+    }
+
+    public synchronized Batch take() {
+        float[] track = new float[size * FIELDS];
+        int first = Math.min(size, capacity - head);
+        System.arraycopy(frames, head * FIELDS, track, 0, first * FIELDS);
+        System.arraycopy(frames, 0, track, first * FIELDS, (size - first) * FIELDS);
+        Batch batch = new Batch(track, overwritten);
+        head = 0;
+        size = 0;
+        overwritten = 0;
+        return batch;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
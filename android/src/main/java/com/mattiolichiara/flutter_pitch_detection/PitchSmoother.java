@@ -0,0 +1,250 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import java.util.Arrays;
+
+/**
+ * Steadies the detected pitch before it reaches the frame. Works on the fractional MIDI number, so
+ * smoothing is even across the range and a jitter of a few cents weighs the same on every note.
+ *
+ * Runs on the audio thread only and allocates nothing per frame. An unvoiced frame resets it, so
+ * a new note doesn't start from the previous one.
+ *
+ * Octave correction folds a jump of about an octave (or two) back onto the previous pitch, unless
+ * the new octave holds for {@code octaveHoldFrames} frames. It applies before any smoothing mode.
+ */
+public class PitchSmoother {
+
+    public enum Mode {
+        NONE("none"),
+        // median of the last `window` frames
+        MEDIAN("median"),
+        // mean of the last `window` frames weighted by detection probability
+        WEIGHTED_MEAN("weightedMean"),
+        // speed-adaptive low-pass (Casiez et al. 2012): steady when still, responsive on glides
+        ONE_EURO("oneEuro"),
+        // random-walk Kalman filter; less probable frames count as noisier measurements
+        KALMAN("kalman");
+
+        private final String key;
+
+        Mode(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public static Mode fromKey(String key) {
+            if (key == null) return NONE;
+            for (Mode mode : values()) {
+                if (mode.key.equals(key)) return mode;
+            }
+            throw new IllegalArgumentException("Unknown smoothing mode: " + key);
+        }
+    }
+
+    private final Mode mode;
+    private final boolean octaveCorrection;
+    private final int octaveHoldFrames;
+    private final int window;
+    private final double minCutoff;
+    private final double beta;
+    private final double processNoise;
+    private final double measurementNoise;
+
+    // MEDIAN / WEIGHTED_MEAN history, oldest overwritten first
+    private final double[] history;
+    private final double[] weights;
+    private final double[] sorted;
+    private int count = 0;
+    private int next = 0;
+
+    // ONE_EURO / KALMAN state
+    private double estimate;
+    private double derivative;
+    private double variance;
+    private double lastTime;
+
+    // Octave correction state
+    private double reference;
+    private int octaveRun = 0;
+    private boolean started = false;
+
+    /**
+     * @param window           frames for MEDIAN and WEIGHTED_MEAN
+     * @param minCutoff        ONE_EURO cutoff in Hz for a still pitch; lower is steadier
+     * @param beta             ONE_EURO cutoff increase per semitone/second of pitch change
+     * @param processNoise     KALMAN pitch drift per frame, in semitones squared
+     * @param measurementNoise KALMAN detector noise, in semitones squared
+     */
+    public PitchSmoother(Mode mode, boolean octaveCorrection, int octaveHoldFrames, int window,
+                         double minCutoff, double beta, double processNoise, double measurementNoise) {
+        if (window < 1 || octaveHoldFrames < 1 || minCutoff <= 0 || beta < 0
+                || processNoise <= 0 || measurementNoise <= 0) {
+            throw new IllegalArgumentException("Invalid smoothing settings");
+        }
+        this.mode = mode;
+        this.octaveCorrection = octaveCorrection;
+        this.octaveHoldFrames = octaveHoldFrames;
+        this.window = window;
+        this.minCutoff = minCutoff;
+        this.beta = beta;
+        this.processNoise = processNoise;
+        this.measurementNoise = measurementNoise;
+        this.history = new double[window];
+        this.weights = new double[window];
+        this.sorted = new double[window];
+    }
+
+    // Same settings, fresh state: for another thread or session
+    public PitchSmoother copy() {
+        return new PitchSmoother(mode, octaveCorrection, octaveHoldFrames, window,
+                minCutoff, beta, processNoise, measurementNoise);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Delay the smoothing adds to a steady pitch, in seconds, for frames {@code hopSeconds} apart.
+     * A glide is followed with about this lag; for ONE_EURO it shrinks as the glide speeds up.
+     */
+    public double getLatencySeconds(double hopSeconds) {
+        switch (mode) {
+            case MEDIAN:
+            case WEIGHTED_MEAN:
+                // The output reflects the middle of the window
+                return (window - 1) / 2.0 * hopSeconds;
+            case ONE_EURO:
+                return 1 / (2 * Math.PI * minCutoff);
+            case KALMAN:
+                // Steady-state gain of the random-walk filter, then the lag of that exponential smoother
+                double prior = (processNoise + Math.sqrt(processNoise * processNoise + 4 * processNoise * measurementNoise)) / 2;
+                double gain = prior / (prior + measurementNoise);
+                return (1 - gain) / gain * hopSeconds;
+            default:
+                return 0;
+        }
+    }
+
+    public void reset() {
+        count = 0;
+        next = 0;
+        octaveRun = 0;
+        started = false;
+    }
+
+    /**
+     * @param exactMidi fractional MIDI number of the detected pitch
+     * @return the smoothed fractional MIDI number
+     */
+    public double process(double exactMidi, double probability, double time) {
+        if (octaveCorrection) {
+            exactMidi = correctOctave(exactMidi);
+        }
+
+        double result;
+        switch (mode) {
+            case MEDIAN:
+                push(exactMidi, 1);
+                result = median();
+                break;
+            case WEIGHTED_MEAN:
+                push(exactMidi, Math.max(probability, 1e-3));
+                result = weightedMean();
+                break;
+            case ONE_EURO:
+                result = oneEuro(exactMidi, time);
+                break;
+            case KALMAN:
+                result = kalman(exactMidi, probability);
+                break;
+            default:
+                result = exactMidi;
+        }
+        started = true;
+        lastTime = time;
+        return result;
+    }
+
+    private double correctOctave(double exactMidi) {
+        if (!started) {
+            reference = exactMidi;
+            return exactMidi;
+        }
+        double jump = exactMidi - reference;
+        long octaves = Math.round(jump / 12);
+        // Only jumps landing within a semitone of a whole octave look like octave errors
+        if (octaves != 0 && Math.abs(jump - octaves * 12) < 1) {
+            if (++octaveRun < octaveHoldFrames) {
+                return exactMidi - octaves * 12;
+            }
+            // The new octave held: take it, and drop the history of the old one
+            count = 0;
+            next = 0;
+            started = false;
+        }
+        octaveRun = 0;
+        reference = exactMidi;
+        return exactMidi;
+    }
+
+    private void push(double value, double weight) {
+        history[next] = value;
+        weights[next] = weight;
+        next = (next + 1) % window;
+        if (count < window) count++;
+    }
+
+    private double median() {
+        System.arraycopy(history, 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        return (count & 1) == 1 ? sorted[count / 2]
+                : (sorted[count / 2 - 1] + sorted[count / 2]) / 2;
+    }
+
+    private double weightedMean() {
+        double sum = 0;
+        double weightSum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += history[i] * weights[i];
+            weightSum += weights[i];
+        }
+        return sum / weightSum;
+    }
+
+    private double oneEuro(double value, double time) {
+        if (!started) {
+            estimate = value;
+            derivative = 0;
+            return value;
+        }
+        double dt = Math.max(time - lastTime, 1e-4);
+        double rawDerivative = (value - estimate) / dt;
+        derivative += alpha(1.0, dt) * (rawDerivative - derivative);
+        double cutoff = minCutoff + beta * Math.abs(derivative);
+        estimate += alpha(cutoff, dt) * (value - estimate);
+        return estimate;
+    }
+
+    private static double alpha(double cutoff, double dt) {
+        double tau = 1 / (2 * Math.PI * cutoff);
+        return 1 / (1 + tau / dt);
+    }
+
+    private double kalman(double value, double probability) {
+        if (!started) {
+            estimate = value;
+            variance = measurementNoise;
+            return value;
+        }
+        double prior = variance + processNoise;
+        double noise = measurementNoise / Math.max(probability, 1e-3);
+        double gain = prior / (prior + noise);
+        estimate += gain * (value - estimate);
+        variance = (1 - gain) * prior;
+        return estimate;
+    }
+}
@@ -0,0 +1,168 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size history of the most recent pitch frames of a session, one primitive array per field,
+ * queried by time range into the packed layout of {@link OfflinePitchAnalyzer} so Dart reads it
+ * as a pitch track.
+ *
+ * Single producer (the audio thread), any number of readers, as in {@link AudioHistoryBuffer}:
+ * the producer claims the slot it is about to overwrite, fills it and then publishes the new
+ * write cursor. A reader that finds its range overwritten while copying starts over from the
+ * oldest frame still held.
+ */
+public class PitchTrackHistory {
+    private static final int FIELDS = OfflinePitchAnalyzer.FIELDS_PER_FRAME;
+
+    private final int capacity;
+    // stream time of the frame, in seconds
+    private final double[] times;
+    // -1 for frames below minPrecision
+    private final float[] frequencies;
+    private final float[] probabilities;
+    private final short[] midiNotes;
+    private final float[] cents;
+
+    // Total frames ever added. Published after the frame is in place.
+    private volatile long writeCursor = 0;
+    // End of the slot the producer is currently writing. Published before the slot is touched.
+    private volatile long claimCursor = 0;
+    // Stored to before re-reading claimCursor, so the array loads can't move past that read; the
+    // same load-load fence as in AudioHistoryBuffer
+    private volatile int loadFence;
+
+    public PitchTrackHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.times = new double[capacity];
+        this.frequencies = new float[capacity];
+        this.probabilities = new float[capacity];
+        this.midiNotes = new short[capacity];
+        this.cents = new float[capacity];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return (int) Math.min(writeCursor, capacity);
+    }
+
+    //producer only
+    public void add(PitchFrame frame) {
+        long index = writeCursor;
+        claimCursor = index + 1;
+        int slot = (int) (index % capacity);
+        times[slot] = frame.timeStamp;
+        frequencies[slot] = (float) frame.getFrequency();
+        probabilities[slot] = frame.probability;
+        midiNotes[slot] = (short) frame.getMidiNote();
+        cents[slot] = frame.voiced ? (float) frame.cents : 0;
+        writeCursor = index + 1;
+    }
+
+    /** Stream time of the newest frame, in seconds, or 0 when there is none. */
+    public double getLatestTime() {
+        long end = writeCursor;
+        return end == 0 ? 0 : times[(int) ((end - 1) % capacity)];
+    }
+
+    /**
+     * The frames from {@code fromSeconds} up to and including {@code toSeconds}, oldest first,
+     * packed {@link OfflinePitchAnalyzer#FIELDS_PER_FRAME} floats per frame.
+     *
+     * With a {@code decimation} above 1, frames are grouped in buckets of that many (aligned to
+     * the session's frame count, so a scrolling range keeps the same buckets) and each bucket
+     * contributes at most two frames: its lowest and highest voiced pitch, in time order, or its
+     * first frame when none is voiced. Peaks and gaps stay visible at any zoom.
+     */
+    public float[] query(double fromSeconds, double toSeconds, int decimation) {
+        if (decimation < 1) {
+            throw new IllegalArgumentException("decimation must be at least 1");
+        }
+        while (true) {
+            long end = writeCursor;
+            long oldest = Math.max(0, end - capacity);
+            long first = firstAtOrAfter(oldest, end, fromSeconds);
+            long last = firstAtOrAfter(first, end, Math.nextUp(toSeconds));
+
+            float[] track = decimation == 1
+                    ? copy(first, last)
+                    : minMax(first, last, decimation);
+
+            // The producer may have lapped the start of the range meanwhile
+            loadFence = 0;
+            if (claimCursor - capacity <= first) {
+                return track;
+            }
+        }
+    }
+
+    // Times only increase within a session: the first index in [from, to) at or after `seconds`
+    private long firstAtOrAfter(long from, long to, double seconds) {
+        long low = from;
+        long high = to;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (times[(int) (middle % capacity)] < seconds) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private float[] copy(long first, long last) {
+        float[] track = new float[(int) (last - first) * FIELDS];
+        for (long i = first, out = 0; i < last; i++, out += FIELDS) {
+            put(track, (int) out, (int) (i % capacity));
+        }
+        return track;
+    }
+
+    private float[] minMax(long first, long last, int decimation) {
+        long firstBucket = first / decimation;
+        long lastBucket = last == first ? firstBucket : (last - 1) / decimation + 1;
+        float[] track = new float[(int) (lastBucket - firstBucket) * 2 * FIELDS];
+        int out = 0;
+        for (long bucket = firstBucket; bucket < lastBucket; bucket++) {
+            long start = Math.max(first, bucket * decimation);
+            long stop = Math.min(last, (bucket + 1) * decimation);
+            int low = -1;
+            int high = -1;
+            for (long i = start; i < stop; i++) {
+                int slot = (int) (i % capacity);
+                float frequency = frequencies[slot];
+                if (frequency < 0) continue;
+                if (low < 0 || frequency < frequencies[low]) low = slot;
+                if (high < 0 || frequency > frequencies[high]) high = slot;
+            }
+            if (low < 0) {
+                put(track, out, (int) (start % capacity));
+                out += FIELDS;
+            } else if (low == high) {
+                put(track, out, low);
+                out += FIELDS;
+            } else {
+                boolean lowFirst = times[low] <= times[high];
+                put(track, out, lowFirst ? low : high);
+                put(track, out + FIELDS, lowFirst ? high : low);
+                out += 2 * FIELDS;
+            }
+        }
+        return out == track.length ? track : Arrays.copyOf(track, out);
+    }
+
+    private void put(float[] track, int out, int slot) {
+        track[out] = (float) times[slot];
+        track[out + 1] = frequencies[slot];
+        track[out + 2] = probabilities[slot];
+        track[out + 3] = midiNotes[slot];
+        track[out + 4] = cents[slot];
+    }
+}
@@ -0,0 +1,18 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Streaming file format used by {@link AudioFileRecorder}, called on its writer thread only:
+ * {@link #start} once, {@link #encode} for every chunk of 16-bit mono samples, then
+ * {@link #finish} to flush and complete the header.
+ */
+interface RecordingEncoder {
+
+    void start(FileChannel channel, int sampleRate) throws IOException;
+
+    void encode(short[] samples, int length) throws IOException;
+
+    void finish() throws IOException;
+}
@@ -0,0 +1,92 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import java.io.IOException;
+import java.util.Random;
+
+import be.tarsos.dsp.io.TarsosDSPAudioInputStream;
+
+/**
+ * Generated test signals with a known pitch: a sine, an exponential sweep or white noise,
+ * rendered at the detection's sample rate when a session opens it. {@link #frequencyAt} gives
+ * the ground truth to compare detected frequencies against.
+ */
+public final class SignalSource implements AudioSource {
+    private enum Kind { SINE, SWEEP, NOISE }
+
+    private final Kind kind;
+    private final double startFrequency;
+    private final double endFrequency;
+    private final double amplitude;
+    private final double seconds;
+    private final long seed;
+
+    private SignalSource(Kind kind, double startFrequency, double endFrequency, double amplitude,
+                         double seconds, long seed) {
+        if (seconds <= 0) {
+            throw new IllegalArgumentException("seconds must be positive");
+        }
+        if (kind != Kind.NOISE && (startFrequency <= 0 || endFrequency <= 0)) {
+            throw new IllegalArgumentException("Frequencies must be positive");
+        }
+        this.kind = kind;
+        this.startFrequency = startFrequency;
+        this.endFrequency = endFrequency;
+        this.amplitude = amplitude;
+        this.seconds = seconds;
+        this.seed = seed;
+    }
+
+    // amplitude is the peak, 1 being full scale
+    public static SignalSource sine(double frequency, double amplitude, double seconds) {
+        return new SignalSource(Kind.SINE, frequency, frequency, amplitude, seconds, 0);
+    }
+
+    // Glides from startFrequency to endFrequency at a constant rate in cents per second
+    public static SignalSource sweep(double startFrequency, double endFrequency, double amplitude, double seconds) {
+        return new SignalSource(Kind.SWEEP, startFrequency, endFrequency, amplitude, seconds, 0);
+    }
+
+    // Uniform white noise, the same samples for the same seed
+    public static SignalSource noise(double amplitude, double seconds, long seed) {
+        return new SignalSource(Kind.NOISE, 0, 0, amplitude, seconds, seed);
+    }
+
+    // Frequency playing at {@code time} seconds, or -1 for noise and past the end
+    public double frequencyAt(double time) {
+        if (kind == Kind.NOISE || time < 0 || time > seconds) return -1;
+        return startFrequency * Math.pow(endFrequency / startFrequency, time / seconds);
+    }
+
+    public double getDurationSeconds() {
+        return seconds;
+    }
+
+    public float[] render(int sampleRate) {
+        float[] samples = new float[(int) Math.round(seconds * sampleRate)];
+        if (kind == Kind.NOISE) {
+            Random random = new Random(seed);
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = (float) (amplitude * (2 * random.nextDouble() - 1));
+            }
+            return samples;
+        }
+        // Accumulated phase keeps the sweep continuous as its frequency moves
+        double phase = 0;
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (float) (amplitude * Math.sin(phase));
+            phase += 2 * Math.PI * frequencyAt((double) i / sampleRate) / sampleRate;
+            if (phase > 2 * Math.PI) phase -= 2 * Math.PI;
+        }
+        return samples;
+    }
+
+    @Override
+    public TarsosDSPAudioInputStream open(int sampleRate, int bufferSize) throws IOException {
+        return new PcmSource(render(sampleRate), sampleRate).open(sampleRate, bufferSize);
+    }
+
+    @Override
+    public boolean isLive() {
+        return false;
+    }
+}
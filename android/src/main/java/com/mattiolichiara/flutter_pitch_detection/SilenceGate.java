@@ -0,0 +1,65 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+/**
+ * Decides, per buffer, whether the input is loud enough to be worth a pitch estimate. The gate
+ * opens on the first buffer above {@code thresholdDbFS} and stays open for {@code hangoverMillis}
+ * after the last one, so the decay of a note and short pauses within a phrase are still analysed.
+ *
+ * Audio thread only, except for the settings and {@link #getSkippedFrames()}.
+ */
+public class SilenceGate {
+    private final double thresholdDbFS;
+    private final double hangoverSeconds;
+    private final boolean usePeak;
+    private final boolean suppressEvents;
+
+    private double lastLoudTime = Double.NEGATIVE_INFINITY;
+    private volatile long skippedFrames = 0;
+
+    /**
+     * @param usePeak        compare the peak level instead of the RMS level
+     * @param suppressEvents don't send pitch events for gated buffers
+     */
+    public SilenceGate(double thresholdDbFS, double hangoverMillis, boolean usePeak, boolean suppressEvents) {
+        if (thresholdDbFS > 0 || hangoverMillis < 0) {
+            throw new IllegalArgumentException("thresholdDbFS must be at most 0 and hangoverMillis must not be negative");
+        }
+        this.thresholdDbFS = thresholdDbFS;
+        this.hangoverSeconds = hangoverMillis / 1000;
+        this.usePeak = usePeak;
+        this.suppressEvents = suppressEvents;
+    }
+
+    // Same settings, fresh state and count: for another thread or session
+    public SilenceGate copy() {
+        return new SilenceGate(thresholdDbFS, hangoverSeconds * 1000, usePeak, suppressEvents);
+    }
+
+    public boolean suppressesEvents() {
+        return suppressEvents;
+    }
+
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    //start of a session, whose time stamps start over
+    public void reset() {
+        lastLoudTime = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * @return false when the buffer should skip pitch estimation
+     */
+    public boolean admit(double rmsDbFS, double peakDbFS, double time) {
+        if ((usePeak ? peakDbFS : rmsDbFS) >= thresholdDbFS) {
+            lastLoudTime = time;
+            return true;
+        }
+        if (time - lastLoudTime <= hangoverSeconds) {
+            return true;
+        }
+        skippedFrames++;
+        return false;
+    }
+}
@@ -0,0 +1,141 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+/**
+ * Reduces a {@link SpectrumAnalyzer} spectrum to {@code bandCount} log-spaced bands between
+ * {@code minFrequency} and {@code maxFrequency}, and to a 12-bin chroma vector (C first) aligned
+ * to the tuning's A4.
+ *
+ * A band holds the strongest FFT bin inside it; bands narrower than a bin, at the low end,
+ * interpolate between the two bins around their center. Chroma sums the energy of each bin into
+ * the pitch class of its nearest note and is scaled so the strongest class is 1. Bins too coarse
+ * to tell two neighbouring semitones apart are left out of the chroma.
+ *
+ * The bin maps are planned once per FFT size and sample rate (and per tuning, for the chroma);
+ * the output arrays are reused for every buffer. Audio thread only.
+ */
+public class SpectralFeatures {
+    public static final int CHROMA_BINS = 12;
+    // Frequency ratio between two semitones, minus one
+    private static final double SEMITONE_STEP = Math.pow(2, 1 / 12.0) - 1;
+
+    private final int bandCount;
+    private final double minFrequency;
+    private final double maxFrequency;
+    private final float[] bands;
+    private final float[] chroma = new float[CHROMA_BINS];
+
+    // Per band: FFT bins [bandLow, bandHigh], or bandHigh -1 to interpolate at bandLow + bandFraction
+    private int fftSize = 0;
+    // Bin width the maps were planned for: a sample rate change keeps the FFT size but not this
+    private double binHz = 0;
+    private final int[] bandLow;
+    private final int[] bandHigh;
+    private final float[] bandFraction;
+    // Per FFT bin: pitch class, or -1 when outside the chroma range
+    private int[] binClass;
+    private TuningTable chromaTuning;
+
+    public SpectralFeatures(int bandCount, double minFrequency, double maxFrequency) {
+        if (bandCount < 1 || minFrequency <= 0 || maxFrequency <= minFrequency) {
+            throw new IllegalArgumentException("bands must be positive and minFrequency below maxFrequency");
+        }
+        this.bandCount = bandCount;
+        this.minFrequency = minFrequency;
+        this.maxFrequency = maxFrequency;
+        this.bands = new float[bandCount];
+        this.bandLow = new int[bandCount];
+        this.bandHigh = new int[bandCount];
+        this.bandFraction = new float[bandCount];
+    }
+
+    public void process(SpectrumAnalyzer spectrum, TuningTable tuning) {
+        if (spectrum.getFftSize() != fftSize || spectrum.getBinHz() != binHz) {
+            planBands(spectrum);
+            chromaTuning = null;
+        }
+        if (tuning != chromaTuning) {
+            planChroma(spectrum, tuning);
+        }
+        float[] magnitudes = spectrum.getMagnitudes();
+
+        for (int band = 0; band < bandCount; band++) {
+            int low = bandLow[band];
+            int high = bandHigh[band];
+            if (high < 0) {
+                float fraction = bandFraction[band];
+                bands[band] = magnitudes[low] + fraction * (magnitudes[low + 1] - magnitudes[low]);
+                continue;
+            }
+            float peak = 0;
+            for (int bin = low; bin <= high; bin++) {
+                if (magnitudes[bin] > peak) peak = magnitudes[bin];
+            }
+            bands[band] = peak;
+        }
+
+        for (int c = 0; c < CHROMA_BINS; c++) chroma[c] = 0;
+        for (int bin = 0; bin < binClass.length; bin++) {
+            int pitchClass = binClass[bin];
+            if (pitchClass >= 0) chroma[pitchClass] += magnitudes[bin] * magnitudes[bin];
+        }
+        float strongest = 0;
+        for (int c = 0; c < CHROMA_BINS; c++) {
+            if (chroma[c] > strongest) strongest = chroma[c];
+        }
+        if (strongest > 0) {
+            for (int c = 0; c < CHROMA_BINS; c++) chroma[c] /= strongest;
+        }
+    }
+
+    private void planBands(SpectrumAnalyzer spectrum) {
+        fftSize = spectrum.getFftSize();
+        binHz = spectrum.getBinHz();
+        int lastBin = fftSize / 2 - 1;
+        double ratio = maxFrequency / minFrequency;
+
+        for (int band = 0; band < bandCount; band++) {
+            double lowHz = minFrequency * Math.pow(ratio, (double) band / bandCount);
+            double highHz = minFrequency * Math.pow(ratio, (double) (band + 1) / bandCount);
+            int low = (int) Math.ceil(lowHz / binHz);
+            int high = Math.min(lastBin, (int) Math.ceil(highHz / binHz) - 1);
+            if (high >= low && low <= lastBin) {
+                bandLow[band] = low;
+                bandHigh[band] = high;
+            } else {
+                double center = Math.min(lastBin - 1, Math.sqrt(lowHz * highHz) / binHz);
+                bandLow[band] = (int) Math.floor(center);
+                bandHigh[band] = -1;
+                bandFraction[band] = (float) (center - bandLow[band]);
+            }
+        }
+    }
+
+    private void planChroma(SpectrumAnalyzer spectrum, TuningTable tuning) {
+        // Below this, neighbouring semitones are less than half a bin apart
+        double lowest = Math.max(minFrequency, 0.5 * binHz / SEMITONE_STEP);
+        binClass = new int[fftSize / 2];
+        for (int bin = 0; bin < binClass.length; bin++) {
+            double frequency = bin * binHz;
+            if (frequency < lowest || frequency > maxFrequency) {
+                binClass[bin] = -1;
+            } else {
+                binClass[bin] = tuning.frequencyToMidi(frequency) % CHROMA_BINS;
+            }
+        }
+        chromaTuning = tuning;
+    }
+
+    // Magnitude per band, lowest first; reused for every buffer
+    public float[] getBands() {
+        return bands;
+    }
+
+    // Energy per pitch class, C to B, the strongest scaled to 1; reused for every buffer
+    public float[] getChroma() {
+        return chroma;
+    }
+
+    public int getBandCount() {
+        return bandCount;
+    }
+}
@@ -0,0 +1,73 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import be.tarsos.dsp.util.fft.FFT;
+
+/**
+ * One Hann-windowed FFT per dispatcher buffer, shared by every stage that needs a spectrum.
+ * TarsosDSP's detectors keep their FFT to themselves, so this is the only other transform the
+ * pipeline runs, and only while some stage asks for it.
+ *
+ * The buffer is zero-padded to the next power of two. The plan, window and arrays are kept until
+ * the buffer size changes. Audio thread only.
+ */
+public class SpectrumAnalyzer {
+    private final int sampleRate;
+    private int bufferSize = 0;
+    private int fftSize = 0;
+    private FFT fft;
+    private float[] window;
+    private float[] work;
+    private float[] magnitudes;
+
+    public SpectrumAnalyzer(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public void process(float[] buffer) {
+        if (buffer.length != bufferSize) {
+            plan(buffer.length);
+        }
+        for (int i = 0; i < bufferSize; i++) {
+            work[i] = buffer[i] * window[i];
+        }
+        for (int i = bufferSize; i < fftSize; i++) {
+            work[i] = 0;
+        }
+        fft.forwardTransform(work);
+        fft.modulus(work, magnitudes);
+    }
+
+    private void plan(int bufferSize) {
+        int size = Integer.highestOneBit(bufferSize);
+        if (size < bufferSize) size <<= 1;
+
+        this.bufferSize = bufferSize;
+        this.fftSize = size;
+        this.fft = new FFT(size);
+        this.work = new float[size];
+        this.magnitudes = new float[size / 2];
+        this.window = new float[bufferSize];
+        // Normalized so a full-scale sine peaks at about 1
+        double gain = 4.0 / bufferSize;
+        for (int i = 0; i < bufferSize; i++) {
+            window[i] = (float) (gain * (0.5 - 0.5 * Math.cos(2 * Math.PI * i / (bufferSize - 1))));
+        }
+    }
+
+    // Magnitude per bin of the latest buffer; the array is reused until the size changes
+    public float[] getMagnitudes() {
+        return magnitudes;
+    }
+
+    public int getFftSize() {
+        return fftSize;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public double getBinHz() {
+        return (double) sampleRate / fftSize;
+    }
+}
@@ -0,0 +1,135 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import io.flutter.plugin.common.BasicMessageChannel;
+import io.flutter.plugin.common.BinaryCodec;
+import io.flutter.plugin.common.BinaryMessenger;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends the log-spaced spectrum and chroma of every analysed buffer to Dart as binary messages.
+ *
+ * Frame layout (native byte order):
+ * <pre>
+ *   0  int32    band count
+ *   4  int32    chroma bins (12)
+ *   8  float64  stream time of the buffer, in seconds
+ *  16  int64    sequence of the pitch frame built from the same buffer
+ *  24  float32  band magnitudes, lowest first
+ *      float32  chroma, C to B
+ * </pre>
+ * Like {@link AudioFrameChannel}, frames come from a small pool of direct buffers filled on the
+ * audio thread, and a buffer is skipped rather than queued when every frame is in flight.
+ */
+public class SpectrumChannel implements PitchDetectionService.SpectrumListener {
+    private static final String CHANNEL = "pitch_detection/spectrum";
+    private static final int HEADER_BYTES = 24;
+    private static final int POOL_SIZE = 4;
+
+    private final BasicMessageChannel<ByteBuffer> channel;
+    private final Handler mainHandler;
+    private final ArrayBlockingQueue<Frame> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final AtomicLong droppedFrames = new AtomicLong();
+    // null while stopped; replaced whole on start, its state belongs to the audio thread
+    private volatile SpectralFeatures features;
+
+    public SpectrumChannel(BinaryMessenger messenger) {
+        this(messenger, new Handler(Looper.getMainLooper()));
+    }
+
+    // Tests send from their own handler
+    SpectrumChannel(BinaryMessenger messenger, Handler mainHandler) {
+        this.channel = new BasicMessageChannel<>(messenger, CHANNEL, BinaryCodec.INSTANCE);
+        this.mainHandler = mainHandler;
+    }
+
+    public synchronized void start(int bands, double minFrequency, double maxFrequency) {
+        SpectralFeatures started = new SpectralFeatures(bands, minFrequency, maxFrequency);
+        pool.clear();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            pool.add(new Frame(bands));
+        }
+        droppedFrames.set(0);
+        features = started;
+    }
+
+    public void stop() {
+        features = null;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return features != null;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    //audio thread
+    @Override
+    public void onSpectrum(SpectrumAnalyzer spectrum, TuningTable tuning, double timeStamp, long sequence) {
+        SpectralFeatures current = features;
+        if (current == null) return;
+
+        Frame frame = pool.poll();
+        if (frame == null) {
+            droppedFrames.incrementAndGet();
+            return;
+        }
+        if (frame.bands != current.getBandCount()) {
+            // A frame from before a restart with another band count
+            frame = new Frame(current.getBandCount());
+        }
+        current.process(spectrum, tuning);
+        frame.fill(current, timeStamp, sequence);
+        mainHandler.post(frame);
+    }
+
+    private final class Frame implements Runnable {
+        final int bands;
+        final ByteBuffer bytes;
+        final FloatBuffer floats;
+
+        Frame(int bands) {
+            this.bands = bands;
+            this.bytes = ByteBuffer.allocateDirect(HEADER_BYTES + (bands + SpectralFeatures.CHROMA_BINS) * 4)
+                    .order(ByteOrder.nativeOrder());
+            bytes.position(HEADER_BYTES);
+            this.floats = bytes.slice().order(ByteOrder.nativeOrder()).asFloatBuffer();
+            bytes.clear();
+        }
+
+        void fill(SpectralFeatures features, double timeStamp, long sequence) {
+            bytes.putInt(0, bands);
+            bytes.putInt(4, SpectralFeatures.CHROMA_BINS);
+            bytes.putDouble(8, timeStamp);
+            bytes.putLong(16, sequence);
+            floats.clear();
+            floats.put(features.getBands());
+            floats.put(features.getChroma());
+            // The messenger sends [0, position)
+            bytes.clear();
+            bytes.position(bytes.capacity());
+        }
+
+        //main thread
+        @Override
+        public void run() {
+            try {
+                if (features != null) {
+                    channel.send(bytes);
+                }
+            } finally {
+                pool.offer(this);
+            }
+        }
+    }
+}
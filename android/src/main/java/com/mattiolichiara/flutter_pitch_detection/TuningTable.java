@@ -0,0 +1,85 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+/**
+ * Precomputed equal-temperament values for one A4 reference. Immutable: a new table is built when
+ * the reference changes, so the audio thread can use it without locks.
+ *
+ * A single {@link Math#log} gives the fractional MIDI number of a frequency, and from it the
+ * nearest note and the cents deviation. Note names are a table lookup.
+ */
+public final class TuningTable {
+    public static final int MIDI_NOTES = 128;
+
+    private static final String[] NOTE_NAMES = {"C", "C#", "D", "D#", "E", "F", "F#", "G", "G#", "A", "A#", "B"};
+    private static final String[] NOTE_OCTAVE_NAMES = new String[MIDI_NOTES];
+    private static final double SEMITONES_PER_LN = 12 / Math.log(2);
+
+    static {
+        for (int midi = 0; midi < MIDI_NOTES; midi++) {
+            NOTE_OCTAVE_NAMES[midi] = (NOTE_NAMES[midi % 12] + midiToOctave(midi)).intern();
+        }
+    }
+
+    private final double a4Reference;
+    // midi = midiOffset + SEMITONES_PER_LN * ln(frequency)
+    private final double midiOffset;
+
+    public TuningTable(double a4Reference) {
+        this.a4Reference = a4Reference;
+        this.midiOffset = 69 - SEMITONES_PER_LN * Math.log(a4Reference);
+    }
+
+    public double getA4Reference() {
+        return a4Reference;
+    }
+
+    /**
+     * MIDI number with the deviation from the nearest note as the fractional part. 69.25 is A4
+     * plus 25 cents.
+     */
+    public double exactMidi(double frequency) {
+        return midiOffset + SEMITONES_PER_LN * Math.log(frequency);
+    }
+
+    public double exactMidiToFrequency(double exactMidi) {
+        return Math.exp((exactMidi - midiOffset) / SEMITONES_PER_LN);
+    }
+
+    public int frequencyToMidi(double frequency) {
+        if (frequency <= 0) return -1;
+        return (int) Math.round(exactMidi(frequency));
+    }
+
+    public static String noteName(int midi) {
+        if (midi < 0 || midi >= MIDI_NOTES) return "";
+        return NOTE_NAMES[midi % 12];
+    }
+
+    public static String noteOctaveName(int midi) {
+        if (midi < 0 || midi >= MIDI_NOTES) return "";
+        return NOTE_OCTAVE_NAMES[midi];
+    }
+
+    public static int midiToOctave(int midi) {
+        return (midi / 12) - 1;
+    }
+
+    //0-100, 0 once the deviation reaches the tolerance
+    public static int accuracy(double cents, double toleranceCents) {
+        double maxCents = toleranceCents * 100;
+        double deviation = Math.abs(cents);
+        if (deviation >= maxCents) return 0;
+        return (int) Math.round(100 * (1 - (deviation / maxCents)));
+    }
+
+    public static boolean isOnPitch(double cents, double toleranceCents, double minPrecision) {
+        double maxCents = toleranceCents * 100;
+        return 1 - (Math.abs(cents) / maxCents) >= minPrecision;
+    }
+
+    // Clamped to +-100 and rounded to two decimals (half-even, as DecimalFormat did)
+    public static double pitchDeviation(double cents) {
+        double clamped = Math.max(-100, Math.min(100, cents));
+        return Math.rint(clamped * 100) / 100;
+    }
+}
@@ -0,0 +1,72 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * 16-bit mono PCM WAV. The header goes out first with empty sizes, which {@link #finish} fills in;
+ * a recording cut short still holds all its audio, and {@link AudioFileDecoder} reads it.
+ */
+class WavEncoder implements RecordingEncoder {
+    private static final int HEADER_BYTES = 44;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    private FileChannel channel;
+    private long dataBytes = 0;
+
+    @Override
+    public void start(FileChannel channel, int sampleRate) throws IOException {
+        this.channel = channel;
+        // Goes out with the first samples
+        buffer.putInt(0x46464952); // RIFF
+        buffer.putInt(0);
+        buffer.putInt(0x45564157); // WAVE
+        buffer.putInt(0x20746D66); // "fmt "
+        buffer.putInt(16);
+        buffer.putShort((short) 1); // PCM
+        buffer.putShort((short) 1);
+        buffer.putInt(sampleRate);
+        buffer.putInt(sampleRate * 2);
+        buffer.putShort((short) 2);
+        buffer.putShort((short) 16);
+        buffer.putInt(0x61746164); // data
+        buffer.putInt(0);
+    }
+
+    @Override
+    public void encode(short[] samples, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            if (buffer.remaining() < 2) flush();
+            buffer.putShort(samples[i]);
+        }
+        dataBytes += length * 2L;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        flush();
+        // Sizes past 4 GB don't fit; readers then take the data up to the end of the file
+        ByteBuffer size = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        size.putInt(0, (int) Math.min(0xFFFFFFFFL, HEADER_BYTES - 8 + dataBytes));
+        writeFully(size, 4);
+        size.clear();
+        size.putInt(0, (int) Math.min(0xFFFFFFFFL, dataBytes));
+        writeFully(size, 40);
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+public class AudioFileDecoderTest {
+
+    // RIFF header, a chunk of `extraSize` with no body, fmt (16-bit mono 8 kHz) and two samples
+    private static byte[] wav(int extraSize) {
+        ByteBuffer buffer = ByteBuffer.allocate(12 + 8 + 24 + 12).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0x46464952).putInt(buffer.capacity() - 8).putInt(0x45564157);
+        buffer.putInt(0x5453494C /* LIST */).putInt(extraSize);
+        buffer.putInt(0x20746D66).putInt(16).putShort((short) 1).putShort((short) 1)
+                .putInt(8000).putInt(16000).putShort((short) 2).putShort((short) 16);
+        buffer.putInt(0x61746164).putInt(4).putShort((short) 16384).putShort((short) -16384);
+        return buffer.array();
+    }
+
+    @Test
+    public void decodesPcm16() throws IOException {
+        AudioFileDecoder.DecodedAudio audio = AudioFileDecoder.decode(wav(0), 0, 1);
+        assertEquals(8000, audio.sampleRate);
+        assertEquals(2, audio.samples.length);
+        assertEquals(0.5, audio.samples[0], 1e-4);
+        assertEquals(-0.5, audio.samples[1], 1e-4);
+    }
+
+    @Test
+    public void rejectsChunkSizeThatWouldNotAdvance() {
+        // -8 would put the next chunk back at this one
+        assertCorrupt(wav(0xFFFFFFF8));
+    }
+
+    @Test
+    public void rejectsNegativeAndOversizedChunks() {
+        assertCorrupt(wav(0x80000000));
+        assertCorrupt(wav(1 << 20));
+    }
+
+    private static void assertCorrupt(byte[] bytes) {
+        try {
+            AudioFileDecoder.decode(bytes, 0, 1);
+            fail("Expected a corrupt chunk to be rejected");
+        } catch (IOException e) {
+            assertEquals(true, e.getMessage().startsWith("Corrupt WAV"));
+        }
+    }
+}
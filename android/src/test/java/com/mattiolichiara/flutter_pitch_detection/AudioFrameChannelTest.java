@@ -0,0 +1,101 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class AudioFrameChannelTest {
+    private static final int SAMPLE_RATE = 44100;
+    private static final float[] BUFFER = {0f, 0.25f, -0.5f, 1f, 0.125f, -1f};
+
+    @Test
+    public void float32FrameCarriesHeaderAndSamples() {
+        RecordingMessenger messenger = new RecordingMessenger();
+        QueuedHandler handler = new QueuedHandler();
+        AudioFrameChannel channel = new AudioFrameChannel(messenger, handler);
+        channel.start(AudioFrameChannel.FORMAT_FLOAT32, 8);
+
+        channel.onAudioFrame(BUFFER, 1, 4, SAMPLE_RATE);
+        channel.onAudioFrame(BUFFER, 0, 2, SAMPLE_RATE);
+        handler.runAll();
+
+        assertEquals(2, messenger.sent.size());
+        ByteBuffer first = messenger.sent.get(0);
+        assertEquals(16 + 4 * 4, first.remaining());
+        assertEquals(AudioFrameChannel.FORMAT_FLOAT32, first.getInt(0));
+        assertEquals(SAMPLE_RATE, first.getInt(4));
+        assertEquals(0, first.getLong(8));
+        for (int i = 0; i < 4; i++) {
+            assertEquals(BUFFER[1 + i], first.getFloat(16 + 4 * i), 0);
+        }
+        ByteBuffer second = messenger.sent.get(1);
+        assertEquals(16 + 2 * 4, second.remaining());
+        assertEquals(1, second.getLong(8));
+    }
+
+    @Test
+    public void int16FrameScalesSamples() {
+        RecordingMessenger messenger = new RecordingMessenger();
+        QueuedHandler handler = new QueuedHandler();
+        AudioFrameChannel channel = new AudioFrameChannel(messenger, handler);
+        channel.start(AudioFrameChannel.FORMAT_INT16, 8);
+
+        channel.onAudioFrame(BUFFER, 0, BUFFER.length, SAMPLE_RATE);
+        handler.runAll();
+
+        ByteBuffer frame = messenger.sent.get(0);
+        assertEquals(16 + BUFFER.length * 2, frame.remaining());
+        assertEquals(AudioFrameChannel.FORMAT_INT16, frame.getInt(0));
+        for (int i = 0; i < BUFFER.length; i++) {
+            assertEquals((short) (BUFFER[i] * Short.MAX_VALUE), frame.getShort(16 + 2 * i));
+        }
+    }
+
+    @Test
+    public void framesBeyondThePoolAreDroppedNotQueued() {
+        RecordingMessenger messenger = new RecordingMessenger();
+        QueuedHandler handler = new QueuedHandler();
+        AudioFrameChannel channel = new AudioFrameChannel(messenger, handler);
+        channel.start(AudioFrameChannel.FORMAT_FLOAT32, 8);
+
+        for (int i = 0; i < 6; i++) channel.onAudioFrame(BUFFER, 0, 4, SAMPLE_RATE);
+        assertEquals(4, handler.queue.size());
+        assertEquals(2, channel.getDroppedFrames());
+
+        // Sent frames go back to the pool
+        handler.runAll();
+        channel.onAudioFrame(BUFFER, 0, 4, SAMPLE_RATE);
+        handler.runAll();
+        assertEquals(5, messenger.sent.size());
+        assertEquals(4, messenger.sent.get(4).getLong(8));
+    }
+
+    @Test
+    public void framesQueuedBeforeStopAreNotSent() {
+        RecordingMessenger messenger = new RecordingMessenger();
+        QueuedHandler handler = new QueuedHandler();
+        AudioFrameChannel channel = new AudioFrameChannel(messenger, handler);
+        channel.start(AudioFrameChannel.FORMAT_FLOAT32, 8);
+
+        channel.onAudioFrame(BUFFER, 0, 4, SAMPLE_RATE);
+        channel.stop();
+        channel.onAudioFrame(BUFFER, 0, 4, SAMPLE_RATE);
+        handler.runAll();
+        assertTrue(messenger.sent.isEmpty());
+    }
+
+    @Test
+    public void unknownFormatIsRejected() {
+        AudioFrameChannel channel = new AudioFrameChannel(new RecordingMessenger(), new QueuedHandler());
+        try {
+            channel.start(7, 8);
+            fail("Expected an unknown format to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("7"));
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package com.mattiolichiara.flutter_pitch_detection;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
+import java.util.HashMap;
+import java.util.Map;
 import org.junit.Test;
 
 /**
@@ -26,4 +32,47 @@ public class FlutterPitchDetectionPluginTest {
 ////
 ////    verify(mockResult).success("Android " + android.os.Build.VERSION.RELEASE);
 //  }
+
+  private static void call(FlutterPitchDetectionPlugin plugin, String method, Map<String, Object> arguments) {
+    MethodChannel.Result result = mock(MethodChannel.Result.class);
+    plugin.onMethodCall(new MethodCall(method, arguments), result);
+    verify(result).success(any());
+  }
+
+  @Test
+  public void settingsMadeBeforeStartReachTheNextService() {
+    FlutterPitchDetectionPlugin plugin = new FlutterPitchDetectionPlugin();
+    Map<String, Object> gate = new HashMap<>();
+    gate.put("thresholdDbFS", -45.0);
+    call(plugin, "setSilenceGate", gate);
+    call(plugin, "setMultiPitch", new HashMap<>());
+    Map<String, Object> smoothing = new HashMap<>();
+    smoothing.put("mode", "median");
+    call(plugin, "setSmoothing", smoothing);
+    Map<String, Object> metrics = new HashMap<>();
+    metrics.put("enabled", true);
+    call(plugin, "setMetricsEnabled", metrics);
+
+    PitchDetectionService service = new PitchDetectionService(44100, 2048, 1024, 10, 0.8, 440.0, frame -> { });
+    plugin.configureService(service);
+
+    assertNotNull(service.getSilenceGate());
+    assertNotNull(service.getMultiPitchDetector());
+    assertNotNull(service.getSmoother());
+    assertNotNull(service.getMetrics());
+
+    // Turning them off again applies to the next service too
+    Map<String, Object> off = new HashMap<>();
+    off.put("enabled", false);
+    call(plugin, "setSilenceGate", off);
+    call(plugin, "setMultiPitch", off);
+    call(plugin, "setMetricsEnabled", off);
+    PitchDetectionService next = new PitchDetectionService(44100, 2048, 1024, 10, 0.8, 440.0, frame -> { });
+    plugin.configureService(next);
+
+    assertNull(next.getSilenceGate());
+    assertNull(next.getMultiPitchDetector());
+    assertNull(next.getMetrics());
+    assertEquals(service.getSmoother().getMode(), next.getSmoother().getMode());
+  }
 }
@@ -0,0 +1,103 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LevelMeterTest {
+    private static final int SAMPLE_RATE = 48000;
+    private static final int BUFFER_SIZE = 2048;
+    private static final int OVERLAP = 1024;
+
+    private static float[] sine(double frequency, double amplitude, double phase, double seconds) {
+        float[] samples = new float[(int) (seconds * SAMPLE_RATE)];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (float) (amplitude * Math.sin(2 * Math.PI * frequency * i / SAMPLE_RATE + phase));
+        }
+        return samples;
+    }
+
+    // Feeds `signal` in overlapping windows, as the dispatcher does, and returns the last reading
+    private static LevelMeter.Reading meter(LevelMeter meter, float[] signal) {
+        int hop = BUFFER_SIZE - OVERLAP;
+        float[] window = new float[BUFFER_SIZE];
+        for (int start = 0; start + BUFFER_SIZE <= signal.length; start += hop) {
+            System.arraycopy(signal, start, window, 0, BUFFER_SIZE);
+            meter.process(window, start == 0 ? BUFFER_SIZE : hop);
+        }
+        return meter.read(new LevelMeter.Reading());
+    }
+
+    private static LevelMeter loudnessMeter() {
+        LevelMeter meter = new LevelMeter(SAMPLE_RATE);
+        meter.setLoudnessEnabled(true);
+        return meter;
+    }
+
+    @Test
+    public void referenceSineReadsMinus23Lufs() {
+        // BS.1770 calibration: 997 Hz at -20 dBFS in one channel reads -23.0 LUFS
+        LevelMeter.Reading reading = meter(loudnessMeter(), sine(997, 0.1, 0, 4.0));
+
+        assertEquals(-23.0, reading.momentaryLufs, 0.1);
+        assertEquals(-23.0, reading.shortTermLufs, 0.1);
+        assertEquals(-20.0, reading.truePeakDbTP, 0.1);
+        assertEquals(-20.0, reading.maxTruePeakDbTP, 0.1);
+        assertEquals(-20.0, reading.peakDbFS, 0.1);
+        assertEquals(-23.01, reading.rmsDbFS, 0.05);
+        assertEquals(0, reading.dcOffset, 1e-3);
+        assertEquals(0, reading.clippedSamples);
+    }
+
+    @Test
+    public void truePeakFindsThePeakBetweenSamples() {
+        // A quarter of the sample rate at 45 degrees: every sample lands at 0.707 of the peak
+        LevelMeter.Reading reading = meter(loudnessMeter(), sine(SAMPLE_RATE / 4.0, 0.5, Math.PI / 4, 1.0));
+
+        assertEquals(20 * Math.log10(0.5 * Math.sqrt(0.5)), reading.peakDbFS, 0.05);
+        assertEquals(20 * Math.log10(0.5), reading.truePeakDbTP, 0.5);
+        assertTrue(reading.truePeakDbTP > reading.peakDbFS + 2.5);
+    }
+
+    @Test
+    public void kWeightingCutsLowFrequencies() {
+        double at1k = meter(loudnessMeter(), sine(1000, 0.1, 0, 2.0)).momentaryLufs;
+        double at30 = meter(loudnessMeter(), sine(30, 0.1, 0, 2.0)).momentaryLufs;
+        double at8k = meter(loudnessMeter(), sine(8000, 0.1, 0, 2.0)).momentaryLufs;
+        // The high pass takes several dB off at 30 Hz. The shelf adds about 4 dB at 8 kHz, of
+        // which 0.7 dB already at 1 kHz
+        assertTrue("30 Hz read " + at30, at30 < at1k - 3);
+        assertEquals(at1k + 3.3, at8k, 0.2);
+
+        float[] dc = new float[SAMPLE_RATE];
+        java.util.Arrays.fill(dc, 0.5f);
+        LevelMeter.Reading reading = meter(loudnessMeter(), dc);
+        assertTrue(reading.momentaryLufs < -60);
+        assertEquals(0.5, reading.dcOffset, 1e-6);
+    }
+
+    @Test
+    public void momentaryFollowsTheLast400MillisecondsOnly() {
+        float[] signal = new float[4 * SAMPLE_RATE];
+        float[] tone = sine(997, 0.1, 0, 3.0);
+        System.arraycopy(tone, 0, signal, 0, tone.length);
+        // One second of silence after three of tone
+        LevelMeter.Reading reading = meter(loudnessMeter(), signal);
+
+        assertEquals(LevelMeter.FLOOR_DB, reading.momentaryLufs, 0);
+        // Two of the last three seconds are tone: 10 log10(2/3) below -23
+        assertEquals(-23.0 + 10 * Math.log10(2.0 / 3.0), reading.shortTermLufs, 0.3);
+        assertEquals(-20.0, reading.maxTruePeakDbTP, 0.1);
+    }
+
+    @Test
+    public void overlapIsNotCountedTwice() {
+        // Clipped samples near the end of the first window: counted once, though the second has them too
+        float[] signal = new float[8 * BUFFER_SIZE];
+        for (int i = 0; i < 10; i++) signal[BUFFER_SIZE - 20 + i] = 1f;
+        LevelMeter.Reading reading = meter(new LevelMeter(SAMPLE_RATE), signal);
+        assertEquals(10, reading.clippedSamples);
+        assertEquals(false, reading.loudnessEnabled);
+    }
+}
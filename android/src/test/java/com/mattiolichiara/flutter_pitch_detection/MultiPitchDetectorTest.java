@@ -0,0 +1,88 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MultiPitchDetectorTest {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int[] C_MAJOR = {60, 64, 67};
+
+    // Notes with five harmonics each, falling as 1/h like a plucked string
+    private static float[] chord(int[] midiNotes, int sampleRate, double seconds) {
+        float[] samples = new float[(int) (seconds * sampleRate)];
+        for (int note : midiNotes) {
+            double f0 = 440 * Math.pow(2, (note - 69) / 12.0);
+            for (int h = 1; h <= 5; h++) {
+                for (int i = 0; i < samples.length; i++) {
+                    samples[i] += (float) (0.1 / h * Math.sin(2 * Math.PI * h * f0 * i / sampleRate));
+                }
+            }
+        }
+        return samples;
+    }
+
+    private static MultiPitchDetector.Result detect(MultiPitchDetector detector, float[] samples, int sampleRate) {
+        SpectrumAnalyzer spectrum = new SpectrumAnalyzer(sampleRate);
+        spectrum.process(Arrays.copyOf(samples, BUFFER_SIZE));
+        return detector.detect(spectrum, new TuningTable(440.0));
+    }
+
+    private static int[] sortedNotes(MultiPitchDetector.Result result) {
+        int[] notes = result.midiNotes.clone();
+        Arrays.sort(notes);
+        return notes;
+    }
+
+    @Test
+    public void triadYieldsItsThreeNotes() {
+        MultiPitchDetector detector = new MultiPitchDetector(4, 60, 2000, 0.3);
+        MultiPitchDetector.Result result = detect(detector, chord(C_MAJOR, 44100, 0.5), 44100);
+
+        assertNotNull(result);
+        assertArrayEquals(C_MAJOR, sortedNotes(result));
+        assertEquals(1f, result.saliences[0], 0f);
+    }
+
+    @Test
+    public void silenceYieldsNothing() {
+        MultiPitchDetector detector = new MultiPitchDetector(4, 60, 2000, 0.3);
+        assertNull(detect(detector, new float[BUFFER_SIZE], 44100));
+    }
+
+    @Test
+    public void sampleRateChangeAtTheSameFftSizeReplans() {
+        MultiPitchDetector detector = new MultiPitchDetector(4, 60, 2000, 0.3);
+        detect(detector, chord(C_MAJOR, 44100, 0.5), 44100);
+
+        MultiPitchDetector.Result result = detect(detector, chord(C_MAJOR, 48000, 0.5), 48000);
+        assertNotNull(result);
+        assertArrayEquals(C_MAJOR, sortedNotes(result));
+    }
+
+    @Test
+    public void replayedChordReachesTheFrames() {
+        final List<PitchFrame> frames = new ArrayList<>();
+        PitchDetectionService service = new PitchDetectionService(
+                44100, BUFFER_SIZE, BUFFER_SIZE / 2, 10, 0.8, 440.0, frames::add);
+        service.setAudioSource(new PcmSource(chord(C_MAJOR, 44100, 2.0), 44100));
+        service.setMultiPitchDetector(new MultiPitchDetector(4, 60, 2000, 0.3));
+        service.startDetection();
+        assertTrue("Replay did not finish", service.awaitCompletion(30000));
+
+        int withChord = 0;
+        for (PitchFrame frame : frames) {
+            if (frame.pitches != null && Arrays.equals(C_MAJOR, sortedNotes(frame.pitches))) withChord++;
+        }
+        // All but the padded last buffer
+        assertTrue(withChord + " of " + frames.size(), withChord >= frames.size() - 1);
+    }
+}
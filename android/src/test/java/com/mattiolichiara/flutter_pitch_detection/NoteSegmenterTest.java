@@ -0,0 +1,140 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class NoteSegmenterTest {
+    private static final double HOP = 0.01;
+    // -24 dBFS, above the -50 dBFS silence threshold
+    private static final double LOUD = 80;
+
+    private static final class Events implements NoteSegmenter.Listener {
+        final List<double[]> on = new ArrayList<>();
+        final List<double[]> off = new ArrayList<>();
+
+        @Override
+        public void onNoteOn(int midiNote, double startTime) {
+            on.add(new double[]{midiNote, startTime});
+        }
+
+        @Override
+        public void onNoteOff(int midiNote, double startTime, double duration, double meanFrequency,
+                              double meanCents, double stability) {
+            off.add(new double[]{midiNote, startTime, duration, meanCents, stability});
+        }
+    }
+
+    private final Events events = new Events();
+    // 80 ms minimum note, 60 ms release, 20 cents hysteresis
+    private final NoteSegmenter segmenter = new NoteSegmenter(events, 80, 60, 20, -50);
+    private long sequence = 0;
+    private double time = 0;
+
+    // `seconds` of frames at `midi` + `cents`, or of silence for midi -1
+    private void play(int midi, double cents, double seconds) {
+        int frames = (int) Math.round(seconds / HOP);
+        for (int i = 0; i < frames; i++) {
+            boolean voiced = midi >= 0;
+            double exact = midi + cents / 100;
+            float pitch = voiced ? (float) (440 * Math.pow(2, (exact - 69) / 12)) : -1;
+            segmenter.process(new PitchFrame(pitch, voiced ? 0.95f : 0f, voiced, midi, voiced ? cents : 0,
+                    voiced ? LOUD : 0, voiced ? LOUD : 0, time, sequence++, false, null));
+            time += HOP;
+        }
+    }
+
+    @Test
+    public void noteStartsAfterMinimumDurationAndEndsAfterRelease() {
+        play(60, 0, 0.07);
+        assertEquals(0, events.on.size());
+        play(60, 0, 0.13);
+        assertEquals(1, events.on.size());
+        assertEquals(60, events.on.get(0)[0], 0);
+        assertEquals(0, events.on.get(0)[1], 1e-9);
+
+        play(-1, 0, 0.05);
+        assertEquals(0, events.off.size());
+        play(-1, 0, 0.02);
+        assertEquals(1, events.off.size());
+        assertEquals(0.2, events.off.get(0)[2], 1e-9);
+    }
+
+    @Test
+    public void shortBlipIsNotANote() {
+        play(60, 0, 0.05);
+        play(-1, 0, 0.2);
+        play(64, 0, 0.05);
+        play(-1, 0, 0.2);
+        assertEquals(0, events.on.size());
+        assertEquals(0, events.off.size());
+    }
+
+    @Test
+    public void hysteresisKeepsAWaveringNote() {
+        play(60, 0, 0.1);
+        // 60.55 and 59.45 semitones: past the note boundary, within half a semitone plus 20 cents
+        for (int i = 0; i < 10; i++) {
+            play(61, -45, 0.03);
+            play(59, 45, 0.03);
+        }
+        play(-1, 0, 0.1);
+        assertEquals(1, events.on.size());
+        assertEquals(1, events.off.size());
+        assertEquals(60, events.off.get(0)[0], 0);
+    }
+
+    @Test
+    public void candidateTakesOverAfterMinimumDuration() {
+        play(60, 0, 0.2);
+        play(62, 0, 0.1);
+        assertEquals(2, events.on.size());
+        assertEquals(62, events.on.get(1)[0], 0);
+        assertEquals(0.2, events.on.get(1)[1], 1e-9);
+        // Ended where the new note began
+        assertEquals(1, events.off.size());
+        assertEquals(0.2, events.off.get(0)[2], 1e-9);
+    }
+
+    @Test
+    public void shortRestBeforeAnotherNoteIsNotPartOfTheNote() {
+        play(60, 0, 0.2);
+        // Shorter than the release: the note is still active when the next one starts
+        play(-1, 0, 0.04);
+        play(64, 0, 0.2);
+        assertEquals(2, events.on.size());
+        assertEquals(0.24, events.on.get(1)[1], 1e-9);
+        assertEquals(1, events.off.size());
+        assertEquals(60, events.off.get(0)[0], 0);
+        assertEquals(0.2, events.off.get(0)[2], 1e-9);
+    }
+
+    @Test
+    public void shortRestWithinTheSameNoteKeepsIt() {
+        play(60, 0, 0.2);
+        play(-1, 0, 0.04);
+        play(60, 0, 0.2);
+        play(-1, 0, 0.1);
+        assertEquals(1, events.on.size());
+        assertEquals(1, events.off.size());
+        assertEquals(0.44, events.off.get(0)[2], 1e-9);
+    }
+
+    @Test
+    public void newSessionEndsTheNoteAndStartsOver() {
+        play(60, 0, 0.2);
+        assertEquals(1, events.on.size());
+
+        sequence = 0;
+        time = 0;
+        play(67, 0, 0.1);
+        assertEquals(1, events.off.size());
+        assertEquals(60, events.off.get(0)[0], 0);
+        assertEquals(2, events.on.size());
+        assertEquals(67, events.on.get(1)[0], 0);
+        assertEquals(0, events.on.get(1)[1], 1e-9);
+    }
+}
@@ -0,0 +1,77 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class PipelineMetricsTest {
+    private static final int SAMPLE_RATE = 44100;
+
+    @Test
+    public void histogramQuantilesAreWithinABucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 1000; micros++) histogram.record(micros * 1000);
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500_500, histogram.getMeanNanos(), 1e-6);
+        assertEquals(1_000_000, histogram.getMaxNanos());
+        assertEquals(500_000, histogram.getValueAtQuantile(0.5), 500_000 * 0.03);
+        assertEquals(990_000, histogram.getValueAtQuantile(0.99), 990_000 * 0.03);
+        assertEquals(1_000_000, histogram.getValueAtQuantile(1));
+
+        // Exact below 64 ns
+        LatencyHistogram small = new LatencyHistogram();
+        small.record(17);
+        assertEquals(17, small.getValueAtQuantile(0.5));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void replayCountsEveryFrameAndStage() {
+        float[] samples = new float[3 * SAMPLE_RATE];
+        float[] tone = SignalSource.sine(330.0, 0.5, 3.0).render(SAMPLE_RATE);
+        System.arraycopy(tone, 0, samples, 0, SAMPLE_RATE);
+        System.arraycopy(tone, 2 * SAMPLE_RATE, samples, 2 * SAMPLE_RATE, SAMPLE_RATE);
+        PipelineMetrics metrics = new PipelineMetrics();
+
+        final List<PitchFrame> frames = new ArrayList<>();
+        PitchDetectionService service = new PitchDetectionService(
+                SAMPLE_RATE, 2048, 1024, 10, 0.8, 440.0, frames::add);
+        service.setAudioSource(new PcmSource(samples, SAMPLE_RATE));
+        service.setSilenceGate(new SilenceGate(-40, 100, false, false));
+        service.setMetrics(metrics);
+        service.startDetection();
+        assertTrue("Replay did not finish", service.awaitCompletion(30000));
+
+        int gated = 0;
+        for (PitchFrame frame : frames) {
+            if (frame.gated) gated++;
+        }
+        assertTrue(gated > 0);
+        assertEquals(frames.size(), metrics.getProcessedFrames());
+        assertEquals(0, metrics.getOverruns());
+
+        // Every buffer passes levels, record and gate; only those the gate lets through go on
+        assertEquals(frames.size(), metrics.getStage(PipelineMetrics.LEVELS).getCount());
+        assertEquals(frames.size(), metrics.getStage(PipelineMetrics.RECORD).getCount());
+        assertEquals(frames.size(), metrics.getStage(PipelineMetrics.GATE).getCount());
+        assertEquals(frames.size() - gated, metrics.getStage(PipelineMetrics.SPECTRUM).getCount());
+        assertEquals(frames.size() - gated, metrics.getStage(PipelineMetrics.PITCH).getCount());
+        assertEquals(frames.size(), metrics.getStage(PipelineMetrics.PUBLISH).getCount());
+        assertEquals(frames.size() - 1, metrics.getStage(PipelineMetrics.CAPTURE).getCount());
+
+        Map<String, Object> map = metrics.toMap();
+        assertEquals((long) gated, map.get("gatedFrames"));
+        Map<String, Object> stages = (Map<String, Object>) map.get("stages");
+        assertTrue(stages.containsKey("pitch"));
+        // Nothing ran on a main thread here
+        assertFalse(stages.containsKey("delivery"));
+        assertFalse(stages.containsKey("encode"));
+    }
+}
@@ -0,0 +1,342 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.TarsosDSPAudioInputStream;
+
+/**
+ * Runs the whole detection pipeline, event building included, on generated audio instead of the
+ * microphone, and checks the detected pitch against the signal's known frequency.
+ */
+public class PitchDetectionReplayTest {
+    private static final int SAMPLE_RATE = 44100;
+    private static final int BUFFER_SIZE = 2048;
+    private static final int OVERLAP = 1024;
+    private static final double MIN_PRECISION = 0.8;
+
+    private static class Recorder implements PitchDetectionService.PitchFrameListener {
+        final PitchEventBuilder events = new PitchEventBuilder(PitchPayload.PITCH_AND_LEVEL);
+        final List<PitchFrame> frames = new ArrayList<>();
+        final List<Map<String, Object>> built = new ArrayList<>();
+        PitchDetectionService service;
+
+        @Override
+        public void onPitchFrame(PitchFrame frame) {
+            frames.add(frame);
+            built.add(events.build(service, frame, 0));
+        }
+    }
+
+    private static Recorder replay(AudioSource source, SilenceGate gate) {
+        Recorder recorder = new Recorder();
+        PitchDetectionService service = new PitchDetectionService(
+                SAMPLE_RATE, BUFFER_SIZE, OVERLAP, 10, MIN_PRECISION, 440.0, recorder);
+        recorder.service = service;
+        service.setAudioSource(source);
+        service.setSilenceGate(gate);
+        service.startDetection();
+        assertTrue("Replay did not finish", service.awaitCompletion(30000));
+        assertFalse(service.isRecording());
+        return recorder;
+    }
+
+    // Centre of the window a frame was estimated from. Time stamps mark the first sample the
+    // buffer adds, which after the first buffer follows the overlap carried over
+    private static double frameTime(PitchFrame frame) {
+        int windowStart = frame.sequence == 0 ? 0 : -OVERLAP;
+        return frame.timeStamp + (windowStart + BUFFER_SIZE / 2.0) / SAMPLE_RATE;
+    }
+
+    private static double centsBetween(double frequency, double reference) {
+        return 1200 * Math.log(frequency / reference) / Math.log(2);
+    }
+
+    @Test
+    public void sineIsDetectedWithinAFewCents() {
+        SignalSource sine = SignalSource.sine(440.0, 0.5, 3.0);
+        Recorder recorder = replay(sine, null);
+
+        int expectedFrames = (int) ((sine.getDurationSeconds() * SAMPLE_RATE - BUFFER_SIZE) / (BUFFER_SIZE - OVERLAP)) + 1;
+        assertTrue(recorder.frames.size() >= expectedFrames);
+        assertEquals(recorder.frames.size(), recorder.built.size());
+
+        for (PitchFrame frame : recorder.frames) {
+            assertTrue(frame.voiced);
+            assertTrue(frame.probability >= MIN_PRECISION);
+            assertEquals(0, centsBetween(frame.pitch, 440.0), 5);
+            assertEquals("A4", frame.getNoteOctave());
+        }
+    }
+
+    @Test
+    public void sweepFollowsTheGroundTruth() {
+        SignalSource sweep = SignalSource.sweep(110.0, 880.0, 0.5, 4.0);
+        Recorder recorder = replay(sweep, null);
+
+        int voiced = 0;
+        int accurate = 0;
+        for (PitchFrame frame : recorder.frames) {
+            double expected = sweep.frequencyAt(frameTime(frame));
+            if (!frame.voiced || expected <= 0) continue;
+            voiced++;
+            if (Math.abs(centsBetween(frame.pitch, expected)) < 25) accurate++;
+        }
+        assertTrue(voiced > recorder.frames.size() * 0.9);
+        assertTrue("Only " + accurate + " of " + voiced + " frames within 25 cents", accurate >= voiced * 0.95);
+    }
+
+    @Test
+    public void quietNoiseIsGated() {
+        Recorder recorder = replay(SignalSource.noise(0.01, 2.0, 7), new SilenceGate(-20, 0, false, false));
+
+        assertFalse(recorder.frames.isEmpty());
+        for (PitchFrame frame : recorder.frames) {
+            assertTrue(frame.gated);
+            assertFalse(frame.voiced);
+        }
+    }
+
+    @Test
+    public void replayIsDeterministicAndRestartable() {
+        SignalSource sweep = SignalSource.sweep(200.0, 400.0, 0.5, 1.0);
+        Recorder recorder = new Recorder();
+        PitchDetectionService service = new PitchDetectionService(
+                SAMPLE_RATE, BUFFER_SIZE, OVERLAP, 10, MIN_PRECISION, 440.0, recorder);
+        recorder.service = service;
+        service.setAudioSource(sweep);
+
+        service.startDetection();
+        assertTrue(service.awaitCompletion(30000));
+        List<PitchFrame> first = new ArrayList<>(recorder.frames);
+        recorder.frames.clear();
+
+        // A finished session ends by itself: starting again replays the source
+        service.startDetection();
+        assertTrue(service.awaitCompletion(30000));
+        service.stopDetection();
+
+        assertEquals(first.size(), recorder.frames.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.get(i).pitch, recorder.frames.get(i).pitch, 0f);
+            assertEquals(first.get(i).timeStamp, recorder.frames.get(i).timeStamp, 0);
+        }
+    }
+
+    @Test
+    public void bufferSizeChangeTakesEffectWithoutRestart() {
+        final int swapAt = 10;
+        final List<Integer> hops = new ArrayList<>();
+        Recorder recorder = new Recorder() {
+            @Override
+            public void onPitchFrame(PitchFrame frame) {
+                super.onPitchFrame(frame);
+                // As setBufferSize does from the main thread, while the session runs
+                if (frame.sequence == swapAt) service.reconfigure(SAMPLE_RATE, 4096, 2048);
+            }
+        };
+        PitchDetectionService service = new PitchDetectionService(
+                SAMPLE_RATE, BUFFER_SIZE, OVERLAP, 10, MIN_PRECISION, 440.0, recorder);
+        recorder.service = service;
+        service.setAudioSource(SignalSource.sine(440.0, 0.5, 3.0));
+        service.setAudioFrameListener((buffer, offset, length, sampleRate) -> hops.add(length));
+        service.startDetection();
+        assertTrue(service.awaitCompletion(30000));
+
+        assertEquals(4096, service.getBufferSize());
+        // One session throughout: sequences never restart
+        for (int i = 0; i < recorder.frames.size(); i++) {
+            assertEquals(i, recorder.frames.get(i).sequence);
+        }
+        // The window changes at the buffer after the call; the last one may be short
+        assertEquals(BUFFER_SIZE, (int) hops.get(0));
+        for (int i = 1; i <= swapAt + 1; i++) assertEquals(BUFFER_SIZE - OVERLAP, (int) hops.get(i));
+        for (int i = swapAt + 2; i < hops.size() - 1; i++) assertEquals(2048, (int) hops.get(i));
+        assertTrue(hops.size() - swapAt > 20);
+
+        for (PitchFrame frame : recorder.frames) {
+            if (frame.sequence == recorder.frames.size() - 1) continue;
+            assertTrue(frame.voiced);
+            assertEquals(0, centsBetween(frame.pitch, 440.0), 5);
+        }
+    }
+
+    @Test
+    public void pitchTrackHoldsThePublishedFrames() {
+        SignalSource sweep = SignalSource.sweep(110.0, 880.0, 0.5, 4.0);
+        Recorder recorder = replay(sweep, null);
+        PitchDetectionService service = recorder.service;
+        int fields = OfflinePitchAnalyzer.FIELDS_PER_FRAME;
+
+        float[] all = service.getPitchTrack(0, Double.MAX_VALUE, 1);
+        assertEquals(recorder.frames.size() * fields, all.length);
+        for (int i = 0; i < recorder.frames.size(); i++) {
+            PitchFrame frame = recorder.frames.get(i);
+            assertEquals(frame.timeStamp, all[i * fields], 1e-6);
+            assertEquals(frame.getFrequency(), all[i * fields + 1], 1e-3);
+            assertEquals(frame.getMidiNote(), (int) all[i * fields + 3]);
+        }
+
+        int inRange = 0;
+        for (PitchFrame frame : recorder.frames) {
+            if (frame.timeStamp >= 1.0 && frame.timeStamp <= 2.0) inRange++;
+        }
+        float[] range = service.getPitchTrack(1.0, 2.0, 1);
+        assertEquals(inRange * fields, range.length);
+        assertTrue(range[0] >= 1.0 && range[range.length - fields] <= 2.0);
+
+        // Buckets of 8 keep at most their lowest and highest pitch, so the top of the sweep survives
+        float[] decimated = service.getPitchTrack(0, Double.MAX_VALUE, 8);
+        int buckets = (recorder.frames.size() + 7) / 8;
+        assertTrue(decimated.length <= 2 * buckets * fields);
+        float highest = 0;
+        float highestDecimated = 0;
+        for (int i = 0; i < all.length; i += fields) highest = Math.max(highest, all[i + 1]);
+        for (int i = 0; i < decimated.length; i += fields) {
+            highestDecimated = Math.max(highestDecimated, decimated[i + 1]);
+            if (i > 0) assertTrue(decimated[i] > decimated[i - fields]);
+        }
+        assertEquals(highest, highestDecimated, 0f);
+    }
+
+    @Test
+    public void offlineAnalysisMatchesLiveReplay() throws InterruptedException {
+        float[] samples = SignalSource.sweep(110.0, 880.0, 0.5, 6.0).render(SAMPLE_RATE);
+        // Quiet stretches for the gate to close on
+        for (int i = SAMPLE_RATE; i < 2 * SAMPLE_RATE; i++) samples[i] *= 0.001f;
+        for (int i = 4 * SAMPLE_RATE; i < 4 * SAMPLE_RATE + SAMPLE_RATE / 3; i++) samples[i] = 0;
+        SilenceGate gate = new SilenceGate(-40, 100, false, false);
+        PitchSmoother smoother = new PitchSmoother(PitchSmoother.Mode.MEDIAN, true, 3, 5, 1, 0, 0.001, 0.01);
+
+        Recorder live = new Recorder();
+        PitchDetectionService service = new PitchDetectionService(
+                SAMPLE_RATE, BUFFER_SIZE, OVERLAP, 10, MIN_PRECISION, 440.0, live);
+        live.service = service;
+        service.setAudioSource(new PcmSource(samples, SAMPLE_RATE));
+        service.setSilenceGate(gate.copy());
+        service.setSmoother(smoother.copy());
+        service.startDetection();
+        assertTrue(service.awaitCompletion(30000));
+
+        OfflinePitchAnalyzer analyzer = new OfflinePitchAnalyzer(
+                service.getAlgorithm(), BUFFER_SIZE, OVERLAP, MIN_PRECISION, 440.0);
+        analyzer.setSilenceGate(gate);
+        analyzer.setSmoother(smoother);
+        // Several segments, each warming up on the frames before it
+        float[] track = analyzer.analyze(samples, SAMPLE_RATE, 4);
+        int fields = OfflinePitchAnalyzer.FIELDS_PER_FRAME;
+
+        int frames = Math.min(live.frames.size(), track.length / fields);
+        assertTrue(frames > 2 * OfflinePitchAnalyzer.WARMUP_FRAMES);
+        int gated = 0;
+        for (int i = 0; i < frames; i++) {
+            PitchFrame frame = live.frames.get(i);
+            if (frame.gated) gated++;
+            assertEquals("frame " + i, frame.getFrequency(), track[i * fields + 1], 1e-3);
+            assertEquals("frame " + i, frame.getMidiNote(), (int) track[i * fields + 3]);
+        }
+        assertTrue(gated > 0);
+    }
+
+    @Test
+    public void runsFasterThanRealTime() {
+        SignalSource sine = SignalSource.sine(196.0, 0.5, 10.0);
+        long start = System.nanoTime();
+        Recorder recorder = replay(sine, null);
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        assertFalse(recorder.frames.isEmpty());
+        assertTrue("Took " + elapsedSeconds + " s for " + sine.getDurationSeconds() + " s of audio",
+                elapsedSeconds < sine.getDurationSeconds());
+    }
+
+    @Test
+    public void sampleRateMismatchFailsToStart() {
+        PcmSource source = new PcmSource(new float[SAMPLE_RATE], 48000);
+        PitchDetectionService service = new PitchDetectionService(
+                SAMPLE_RATE, BUFFER_SIZE, OVERLAP, 10, MIN_PRECISION, 440.0, frame -> { });
+        service.setAudioSource(source);
+        try {
+            service.startDetection();
+            fail("Expected the mismatched sample rate to be rejected");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("48000"));
+        }
+        assertFalse(service.isRecording());
+    }
+
+    @Test
+    public void stopDoesNotWaitLongForAStalledRead() throws Exception {
+        // A live source whose read hangs, like a stalled AudioRecord.read, until released
+        final CountDownLatch release = new CountDownLatch(1);
+        final TarsosDSPAudioFormat format = new TarsosDSPAudioFormat(SAMPLE_RATE, 16, 1, true, false);
+        AudioSource stalled = new AudioSource() {
+            @Override
+            public TarsosDSPAudioInputStream open(int sampleRate, int bufferSize) {
+                return new TarsosDSPAudioInputStream() {
+                    @Override
+                    public long skip(long bytes) {
+                        return 0;
+                    }
+
+                    @Override
+                    public int read(byte[] buffer, int offset, int length) throws IOException {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            throw new IOException(e);
+                        }
+                        return -1;
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+
+                    @Override
+                    public TarsosDSPAudioFormat getFormat() {
+                        return format;
+                    }
+
+                    @Override
+                    public long getFrameLength() {
+                        return -1;
+                    }
+                };
+            }
+
+            @Override
+            public boolean isLive() {
+                return true;
+            }
+        };
+        PitchDetectionService service = new PitchDetectionService(
+                SAMPLE_RATE, BUFFER_SIZE, OVERLAP, 10, MIN_PRECISION, 440.0, frame -> { });
+        service.setAudioSource(stalled);
+        service.setSeparateAnalysis(true);
+        service.startDetection();
+        Thread.sleep(50);
+
+        long start = System.nanoTime();
+        service.stopDetection();
+        double elapsedMillis = (System.nanoTime() - start) / 1e6;
+        release.countDown();
+
+        // Bounded for both tasks together, not per task
+        assertTrue("stopDetection took " + elapsedMillis + " ms", elapsedMillis < 750);
+        assertFalse(service.isRecording());
+        // Free the shared workers for the next test
+        Thread.sleep(200);
+    }
+}
@@ -0,0 +1,67 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.pitch.PitchProcessor.PitchEstimationAlgorithm;
+
+public class PitchEstimationProcessorTest {
+    private static final int SAMPLE_RATE = 44100;
+
+    private static AudioEvent buffer(int size) {
+        AudioEvent event = new AudioEvent(new TarsosDSPAudioFormat(SAMPLE_RATE, 16, 1, true, false));
+        event.setFloatBuffer(Arrays.copyOf(SignalSource.sine(440, 0.5, 0.1).render(SAMPLE_RATE), size));
+        return event;
+    }
+
+    @Test
+    public void algorithmChangeSurvivesAPreparedSizeSwap() {
+        PitchEstimationProcessor processor = new PitchEstimationProcessor(
+                PitchEstimationAlgorithm.YIN, SAMPLE_RATE, 2048, (result, event) -> { });
+        processor.prepareBufferSize(1024);
+        processor.setAlgorithm(PitchEstimationAlgorithm.MPM);
+
+        processor.process(buffer(1024));
+        assertEquals(PitchEstimationAlgorithm.MPM, processor.getAlgorithm());
+        assertEquals(1, processor.getCost(PitchEstimationAlgorithm.MPM).getFrames());
+        assertEquals(0, processor.getCost(PitchEstimationAlgorithm.YIN).getFrames());
+    }
+
+    @Test
+    public void algorithmChangesRacingSizeSwapsAreNotLost() throws Exception {
+        PitchEstimationProcessor processor = new PitchEstimationProcessor(
+                PitchEstimationAlgorithm.YIN, SAMPLE_RATE, 1024, (result, event) -> { });
+        AudioEvent small = buffer(1024);
+        AudioEvent large = buffer(2048);
+        AtomicBoolean done = new AtomicBoolean(false);
+        // The audio thread keeps switching sizes, so every buffer goes through a swap
+        Thread audio = new Thread(() -> {
+            boolean even = true;
+            while (!done.get()) {
+                processor.process(even ? small : large);
+                even = !even;
+            }
+        });
+        audio.start();
+        PitchEstimationAlgorithm[] algorithms = {PitchEstimationAlgorithm.MPM, PitchEstimationAlgorithm.YIN};
+        for (int i = 0; i < 500; i++) {
+            PitchEstimationAlgorithm algorithm = algorithms[i % 2];
+            processor.setAlgorithm(algorithm);
+            assertEquals(algorithm, processor.getAlgorithm());
+        }
+        // Whatever the swaps did meanwhile, the last change holds
+        Thread.sleep(20);
+        assertEquals(PitchEstimationAlgorithm.YIN, processor.getAlgorithm());
+        done.set(true);
+        audio.join();
+        assertTrue(processor.getCost(PitchEstimationAlgorithm.MPM).getFrames() > 0
+                || processor.getCost(PitchEstimationAlgorithm.YIN).getFrames() > 0);
+    }
+}
@@ -0,0 +1,152 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class PitchEventBuilderTest {
+    private static final int SAMPLE_RATE = 44100;
+    private static final int BUFFER_SIZE = 2048;
+    private static final int OVERLAP = 1024;
+
+    private static final PitchFrame A4 = new PitchFrame(440f, 0.95f, true, 69, 0, 40, -20, 1.5, 3, false, null);
+
+    // Builds an event for every frame whose sequence passes the filter, as the stream would
+    private static final class DeltaRecorder implements PitchDetectionService.PitchFrameListener {
+        final PitchEventBuilder events = new PitchEventBuilder(PitchPayload.WITH_PCM_DELTA);
+        final List<Map<String, Object>> built = new ArrayList<>();
+        final List<Long> writeCursors = new ArrayList<>();
+        final long every;
+        PitchDetectionService service;
+
+        DeltaRecorder(long every) {
+            this.every = every;
+        }
+
+        @Override
+        public void onPitchFrame(PitchFrame frame) {
+            if (frame.sequence % every != 0) return;
+            built.add(events.build(service, frame, 0));
+            writeCursors.add(service.getPcmDataSince(Long.MAX_VALUE).offset);
+        }
+    }
+
+    private static DeltaRecorder replay(SignalSource source, long every) {
+        DeltaRecorder recorder = new DeltaRecorder(every);
+        recorder.service = service(recorder);
+        recorder.service.setAudioSource(source);
+        recorder.service.startDetection();
+        assertTrue("Replay did not finish", recorder.service.awaitCompletion(30000));
+        return recorder;
+    }
+
+    private static short sampleAt(byte[] pcm, int index) {
+        return (short) ((pcm[2 * index] & 0xff) | (pcm[2 * index + 1] << 8));
+    }
+
+    private static PitchDetectionService service(PitchDetectionService.PitchFrameListener listener) {
+        return new PitchDetectionService(SAMPLE_RATE, BUFFER_SIZE, OVERLAP, 10, 0.8, 440.0, listener);
+    }
+
+    @Test
+    public void eachPayloadCarriesOnlyItsFields() {
+        PitchDetectionService service = service(frame -> { });
+
+        Map<String, Object> pitchOnly = new PitchEventBuilder(PitchPayload.PITCH_ONLY).build(service, A4, 2);
+        assertEquals("A4", pitchOnly.get("noteOctave"));
+        assertEquals(69, pitchOnly.get("midiNote"));
+        assertEquals(440f, pitchOnly.get("frequency"));
+        assertEquals(3L, pitchOnly.get("sequence"));
+        assertEquals(2L, pitchOnly.get("droppedFrames"));
+        assertFalse(pitchOnly.containsKey("volume"));
+        assertFalse(pitchOnly.containsKey("pcmData"));
+        assertFalse(pitchOnly.containsKey("pcmDelta"));
+
+        Map<String, Object> withLevels = new PitchEventBuilder(PitchPayload.PITCH_AND_LEVEL).build(service, A4, 0);
+        assertEquals(40.0, withLevels.get("volume"));
+        assertEquals(-20.0, withLevels.get("volumeDbFS"));
+        assertFalse(withLevels.containsKey("pcmData"));
+        assertFalse(withLevels.containsKey("bufferSize"));
+
+        Map<String, Object> full = new PitchEventBuilder(PitchPayload.FULL).build(service, A4, 0);
+        assertTrue(full.containsKey("volume"));
+        assertEquals(BUFFER_SIZE, full.get("bufferSize"));
+        assertEquals(SAMPLE_RATE, full.get("sampleRate"));
+        assertTrue(full.get("pcmData") instanceof byte[]);
+        assertTrue(full.get("streamData") instanceof double[]);
+        assertFalse(full.containsKey("pcmDelta"));
+    }
+
+    @Test
+    public void payloadKeysRoundTrip() {
+        for (PitchPayload payload : PitchPayload.values()) {
+            assertEquals(payload, PitchPayload.fromKey(payload.getKey()));
+        }
+        // Subscribers that predate the profiles get everything, as before
+        assertEquals(PitchPayload.FULL, PitchPayload.fromKey(null));
+        try {
+            PitchPayload.fromKey("everything");
+            fail("Expected an unknown profile to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("everything"));
+        }
+    }
+
+    @Test
+    public void pcmDeltasAreContiguousAcrossTheHistoryWrap() {
+        SignalSource sine = SignalSource.sine(440.0, 0.5, 3.0);
+        float[] samples = sine.render(SAMPLE_RATE);
+        DeltaRecorder recorder = replay(sine, 1);
+
+        long expectedOffset = 0;
+        for (int i = 0; i < recorder.built.size(); i++) {
+            Map<String, Object> event = recorder.built.get(i);
+            byte[] delta = (byte[]) event.get("pcmDelta");
+            assertEquals(expectedOffset, event.get("pcmOffset"));
+            assertEquals((long) recorder.writeCursors.get(i), expectedOffset + delta.length / 2);
+            // Within the rounding of the 16-bit stream the source is read through; the last
+            // buffer is padded with silence
+            for (int j = 0; j < delta.length / 2; j++) {
+                int index = (int) expectedOffset + j;
+                float expected = index < samples.length ? samples[index] * Short.MAX_VALUE : 0;
+                assertEquals(expected, sampleAt(delta, j), 1.5);
+            }
+            expectedOffset += delta.length / 2;
+        }
+        // Three seconds of audio wrap the one-second history twice
+        assertTrue(expectedOffset > 2L * SAMPLE_RATE);
+    }
+
+    @Test
+    public void laggingEventSkipsToTheOldestSampleKept() {
+        // About 1.4 s of audio between events, more than the history holds
+        DeltaRecorder recorder = replay(SignalSource.sine(440.0, 0.5, 3.0), 60);
+
+        assertTrue(recorder.built.size() >= 2);
+        Map<String, Object> second = recorder.built.get(1);
+        long end = recorder.writeCursors.get(1);
+        assertEquals(end - SAMPLE_RATE, second.get("pcmOffset"));
+        assertEquals(SAMPLE_RATE * 2, ((byte[]) second.get("pcmDelta")).length);
+    }
+
+    @Test
+    public void resetStartsFromTheOldestSampleKept() {
+        DeltaRecorder recorder = replay(SignalSource.sine(440.0, 0.5, 1.5), Long.MAX_VALUE);
+        PitchEventBuilder events = recorder.events;
+
+        Map<String, Object> first = events.build(recorder.service, A4, 0);
+        long end = (long) first.get("pcmOffset") + ((byte[]) first.get("pcmDelta")).length / 2;
+        assertEquals(end - SAMPLE_RATE, first.get("pcmOffset"));
+        assertEquals(0, ((byte[]) events.build(recorder.service, A4, 0).get("pcmDelta")).length);
+
+        events.reset();
+        assertEquals(end - SAMPLE_RATE, events.build(recorder.service, A4, 0).get("pcmOffset"));
+    }
+}
@@ -0,0 +1,90 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PitchEventPublisherTest {
+
+    @Test
+    public void onlyTheLatestFrameIsEmittedWithOneDrainQueued() {
+        QueuedHandler handler = new QueuedHandler();
+        List<Integer> emitted = new ArrayList<>();
+        PitchEventPublisher<Integer> publisher = new PitchEventPublisher<>(emitted::add, handler);
+
+        for (int i = 0; i < 5; i++) publisher.offer(i);
+        assertEquals(1, handler.queue.size());
+
+        handler.runAll();
+        assertEquals(1, emitted.size());
+        assertEquals(4, (int) emitted.get(0));
+        assertEquals(4, publisher.getDroppedFrames());
+        assertEquals(1, publisher.getEmittedFrames());
+
+        // A drain with nothing left emits nothing
+        handler.runAll();
+        assertEquals(1, emitted.size());
+
+        publisher.offer(5);
+        assertEquals(1, handler.queue.size());
+        handler.runAll();
+        assertEquals(5, (int) emitted.get(1));
+        assertEquals(4, publisher.getDroppedFrames());
+    }
+
+    @Test
+    public void nextDrainWaitsOutTheRateLimit() {
+        QueuedHandler handler = new QueuedHandler();
+        List<Integer> emitted = new ArrayList<>();
+        PitchEventPublisher<Integer> publisher = new PitchEventPublisher<>(emitted::add, handler);
+        publisher.setMaxEventsPerSecond(10);
+        assertEquals(10, publisher.getMaxEventsPerSecond());
+
+        publisher.offer(1);
+        handler.runAll();
+        publisher.offer(2);
+        long delay = handler.delays.get(handler.delays.size() - 1);
+        assertTrue("delay " + delay, delay > 0 && delay <= 100);
+
+        publisher.setMaxEventsPerSecond(0);
+        handler.runAll();
+        publisher.offer(3);
+        assertEquals(0, (long) handler.delays.get(handler.delays.size() - 1));
+        handler.runAll();
+        assertEquals(3, emitted.size());
+    }
+
+    @Test
+    public void clearDropsTheQueuedFrame() {
+        QueuedHandler handler = new QueuedHandler();
+        List<Integer> emitted = new ArrayList<>();
+        PitchEventPublisher<Integer> publisher = new PitchEventPublisher<>(emitted::add, handler);
+
+        publisher.offer(1);
+        publisher.offer(2);
+        publisher.clear();
+        assertTrue(handler.queue.isEmpty());
+        assertEquals(0, publisher.getDroppedFrames());
+
+        publisher.offer(3);
+        handler.runAll();
+        assertEquals(1, emitted.size());
+        assertEquals(3, (int) emitted.get(0));
+    }
+
+    @Test
+    public void negativeRateIsRejected() {
+        PitchEventPublisher<Integer> publisher = new PitchEventPublisher<>(frame -> { }, new QueuedHandler());
+        try {
+            publisher.setMaxEventsPerSecond(-1);
+            fail("Expected a negative rate to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals(0, publisher.getMaxEventsPerSecond());
+        }
+    }
+}
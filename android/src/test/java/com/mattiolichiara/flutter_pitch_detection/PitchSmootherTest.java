@@ -0,0 +1,146 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PitchSmootherTest {
+    private static final double HOP = 0.01;
+
+    private static PitchSmoother smoother(PitchSmoother.Mode mode, boolean octaveCorrection, int hold, int window) {
+        return new PitchSmoother(mode, octaveCorrection, hold, window, 1.0, 0, 0.001, 0.01);
+    }
+
+    @Test
+    public void octaveJumpIsFoldedBackUntilItHolds() {
+        PitchSmoother smoother = smoother(PitchSmoother.Mode.NONE, true, 3, 1);
+        assertEquals(60, smoother.process(60, 0.9, 0), 1e-9);
+        assertEquals(60.1, smoother.process(60.1, 0.9, HOP), 1e-9);
+        // Held for fewer than 3 frames: an octave error
+        assertEquals(60.2, smoother.process(72.2, 0.9, 2 * HOP), 1e-9);
+        assertEquals(60.2, smoother.process(72.2, 0.9, 3 * HOP), 1e-9);
+        // Third frame in the new octave: taken
+        assertEquals(72.2, smoother.process(72.2, 0.9, 4 * HOP), 1e-9);
+        assertEquals(72.3, smoother.process(72.3, 0.9, 5 * HOP), 1e-9);
+    }
+
+    @Test
+    public void shortOctaveErrorIsRejected() {
+        PitchSmoother smoother = smoother(PitchSmoother.Mode.NONE, true, 3, 1);
+        smoother.process(57, 0.9, 0);
+        assertEquals(57, smoother.process(45, 0.9, HOP), 1e-9);
+        assertEquals(57, smoother.process(57, 0.9, 2 * HOP), 1e-9);
+        // The run starts over: two more low frames are still folded
+        assertEquals(57, smoother.process(45, 0.9, 3 * HOP), 1e-9);
+        assertEquals(57, smoother.process(45, 0.9, 4 * HOP), 1e-9);
+    }
+
+    @Test
+    public void jumpsOtherThanOctavesPassThrough() {
+        PitchSmoother smoother = smoother(PitchSmoother.Mode.NONE, true, 3, 1);
+        smoother.process(60, 0.9, 0);
+        assertEquals(67, smoother.process(67, 0.9, HOP), 1e-9);
+    }
+
+    @Test
+    public void acceptedOctaveDropsTheOldHistory() {
+        PitchSmoother smoother = smoother(PitchSmoother.Mode.MEDIAN, true, 2, 5);
+        for (int i = 0; i < 5; i++) smoother.process(60, 0.9, i * HOP);
+        smoother.process(72, 0.9, 5 * HOP);
+        // Accepted on the second frame, with no median of the old octave left
+        assertEquals(72, smoother.process(72, 0.9, 6 * HOP), 1e-9);
+    }
+
+    @Test
+    public void medianRejectsASingleOutlier() {
+        PitchSmoother smoother = smoother(PitchSmoother.Mode.MEDIAN, false, 1, 5);
+        double[] input = {60, 60.1, 59.9, 67, 60};
+        double last = 0;
+        for (int i = 0; i < input.length; i++) {
+            last = smoother.process(input[i], 0.9, i * HOP);
+            assertTrue("frame " + i + " gave " + last, Math.abs(last - 60) <= 0.1);
+        }
+        assertEquals(60, last, 1e-9);
+    }
+
+    @Test
+    public void weightedMeanFavoursProbableFrames() {
+        PitchSmoother smoother = smoother(PitchSmoother.Mode.WEIGHTED_MEAN, false, 1, 2);
+        smoother.process(60, 0.9, 0);
+        assertEquals((60 * 0.9 + 61 * 0.1) / 1.0, smoother.process(61, 0.1, HOP), 1e-9);
+    }
+
+    @Test
+    public void resetStartsFromTheNextFrame() {
+        for (PitchSmoother.Mode mode : PitchSmoother.Mode.values()) {
+            PitchSmoother smoother = smoother(mode, true, 3, 5);
+            for (int i = 0; i < 10; i++) smoother.process(60, 0.9, i * HOP);
+            smoother.reset();
+            // Neither the old pitch nor the octave reference hold it back
+            assertEquals(mode.getKey(), 48, smoother.process(48, 0.9, 10 * HOP), 1e-9);
+        }
+    }
+
+    @Test
+    public void unvoicedFramesResetTheSmootherInThePipeline() throws Exception {
+        int sampleRate = 44100;
+        float[] low = SignalSource.sine(220.0, 0.5, 1.0).render(sampleRate);
+        float[] high = SignalSource.sine(330.0, 0.5, 1.0).render(sampleRate);
+        float[] samples = new float[low.length + sampleRate / 2 + high.length];
+        System.arraycopy(low, 0, samples, 0, low.length);
+        System.arraycopy(high, 0, samples, low.length + sampleRate / 2, high.length);
+
+        final List<PitchFrame> frames = new ArrayList<>();
+        PitchDetectionService service = new PitchDetectionService(sampleRate, 2048, 1024, 10, 0.8, 440.0, frames::add);
+        service.setAudioSource(new PcmSource(samples, sampleRate));
+        // A long median would hold 220 Hz for 10 frames if nothing cleared it
+        service.setSmoother(smoother(PitchSmoother.Mode.MEDIAN, false, 1, 21));
+        service.startDetection();
+        assertTrue(service.awaitCompletion(30000));
+
+        boolean silence = false;
+        int checked = 0;
+        for (PitchFrame frame : frames) {
+            if (!frame.voiced) {
+                silence = true;
+            } else if (silence) {
+                // Windows straddling the onset can still read the tail of the silence; past them
+                // every voiced frame follows the new note
+                if (frame.timeStamp > (low.length + sampleRate / 2 + 2048.0) / sampleRate) {
+                    assertEquals(330.0, frame.pitch, 3);
+                    checked++;
+                }
+            }
+        }
+        assertTrue(silence);
+        assertTrue(checked > 10);
+    }
+
+    @Test
+    public void reportedLatencyMatchesTheLagOnARamp() {
+        // Semitones per frame: slow enough for every mode to settle into a constant lag
+        double slope = 0.01;
+        PitchSmoother[] smoothers = {
+                smoother(PitchSmoother.Mode.NONE, false, 1, 5),
+                smoother(PitchSmoother.Mode.MEDIAN, false, 1, 5),
+                smoother(PitchSmoother.Mode.WEIGHTED_MEAN, false, 1, 7),
+                smoother(PitchSmoother.Mode.ONE_EURO, false, 1, 5),
+                smoother(PitchSmoother.Mode.KALMAN, false, 1, 5),
+        };
+        for (PitchSmoother smoother : smoothers) {
+            double input = 0;
+            double output = 0;
+            for (int i = 0; i < 2000; i++) {
+                input = 60 + slope * i;
+                output = smoother.process(input, 1.0, i * HOP);
+            }
+            double lagSeconds = (input - output) / slope * HOP;
+            assertEquals(smoother.getMode().getKey(), smoother.getLatencySeconds(HOP), lagSeconds,
+                    0.02 * smoother.getLatencySeconds(HOP) + 1e-9);
+        }
+    }
+}
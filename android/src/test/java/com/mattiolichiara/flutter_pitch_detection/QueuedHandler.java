@@ -0,0 +1,42 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import android.os.Handler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Main-thread handler for tests: holds what is posted until {@link #runAll()}, like a busy
+ * main looper, and remembers each post's delay.
+ */
+final class QueuedHandler extends Handler {
+    final List<Runnable> queue = new ArrayList<>();
+    final List<Long> delays = new ArrayList<>();
+
+    QueuedHandler() {
+        super(null);
+    }
+
+    @Override
+    public boolean post(Runnable r) {
+        return postDelayed(r, 0);
+    }
+
+    @Override
+    public boolean postDelayed(Runnable r, long delayMillis) {
+        queue.add(r);
+        delays.add(delayMillis);
+        return true;
+    }
+
+    @Override
+    public void removeCallbacks(Runnable r) {
+        queue.remove(r);
+    }
+
+    void runAll() {
+        List<Runnable> pending = new ArrayList<>(queue);
+        queue.clear();
+        for (Runnable r : pending) r.run();
+    }
+}
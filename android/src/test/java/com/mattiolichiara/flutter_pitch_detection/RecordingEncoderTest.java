@@ -0,0 +1,308 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RecordingEncoderTest {
+
+    // A tone, a silent stretch, noise and a short last block: every subframe type the encoder
+    // writes. Over 128 blocks, so frame numbers take more than one byte
+    private static short[] signal() {
+        short[] samples = new short[130 * FlacEncoder.BLOCK_SIZE + 1000];
+        Random random = new Random(7);
+        for (int i = 0; i < samples.length; i++) {
+            int block = i / FlacEncoder.BLOCK_SIZE;
+            if (block == 3) {
+                samples[i] = 0;
+            } else if (block == 5) {
+                samples[i] = (short) random.nextInt();
+            } else {
+                samples[i] = (short) (12000 * Math.sin(2 * Math.PI * 440 * i / 44100.0)
+                        + random.nextInt(64) - 32);
+            }
+        }
+        return samples;
+    }
+
+    // Fed in uneven chunks, as the recorder's writer does
+    private static byte[] encode(RecordingEncoder encoder, short[] samples, int sampleRate) throws IOException {
+        File file = File.createTempFile("recording", ".bin");
+        try (RandomAccessFile access = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = access.getChannel();
+            encoder.start(channel, sampleRate);
+            short[] chunk = new short[1500];
+            for (int offset = 0; offset < samples.length; offset += chunk.length) {
+                int length = Math.min(chunk.length, samples.length - offset);
+                System.arraycopy(samples, offset, chunk, 0, length);
+                encoder.encode(chunk, length);
+            }
+            encoder.finish();
+            byte[] bytes = new byte[(int) channel.size()];
+            channel.read(ByteBuffer.wrap(bytes), 0);
+            return bytes;
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void wavHoldsTheSamplesAndTheirSizes() throws IOException {
+        short[] samples = signal();
+        byte[] bytes = encode(new WavEncoder(), samples, 44100);
+
+        ByteBuffer wav = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(44 + 2 * samples.length, bytes.length);
+        assertEquals(0x46464952, wav.getInt(0));
+        assertEquals(bytes.length - 8, wav.getInt(4));
+        assertEquals(1, wav.getShort(20));
+        assertEquals(1, wav.getShort(22));
+        assertEquals(44100, wav.getInt(24));
+        assertEquals(16, wav.getShort(34));
+        assertEquals(2 * samples.length, wav.getInt(40));
+        for (int i = 0; i < samples.length; i++) {
+            assertEquals(samples[i], wav.getShort(44 + 2 * i));
+        }
+
+        AudioFileDecoder.DecodedAudio audio = AudioFileDecoder.decode(bytes, 0, 1);
+        assertEquals(44100, audio.sampleRate);
+        assertEquals(samples.length, audio.samples.length);
+    }
+
+    @Test
+    public void checksumsMatchTheirReferenceValues() {
+        // Check values of CRC-8 (poly 0x07) and CRC-16/UMTS (poly 0x8005), as FLAC uses them
+        byte[] check = "123456789".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(0xF4, crc8(check, 0, check.length));
+        assertEquals(0xFEE8, crc16(check, 0, check.length));
+    }
+
+    @Test
+    public void flacDecodesToTheSameSamples() throws Exception {
+        short[] samples = signal();
+        assertArrayEquals(samples, decodeFlac(encode(new FlacEncoder(), samples, 44100), samples, 44100));
+    }
+
+    @Test
+    public void flacStoresUncommonSampleRates() throws Exception {
+        short[] samples = new short[2 * FlacEncoder.BLOCK_SIZE + 17];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (8000 * Math.sin(2 * Math.PI * 200 * i / 11025.0));
+        }
+        // Coded in the frame header as Hz, tens of Hz, or left to STREAMINFO
+        for (int sampleRate : new int[]{11025, 37000, 110250, 384001}) {
+            assertArrayEquals(samples, decodeFlac(encode(new FlacEncoder(), samples, sampleRate), samples, sampleRate));
+        }
+    }
+
+    @Test
+    public void emptyFlacIsValid() throws Exception {
+        short[] none = new short[0];
+        byte[] bytes = encode(new FlacEncoder(), none, 48000);
+        assertEquals(4 + 4 + 34, bytes.length);
+        assertEquals(0, decodeFlac(bytes, none, 48000).length);
+    }
+
+    // Checks STREAMINFO against `expected` and every frame's checksums, and returns the samples
+    private static short[] decodeFlac(byte[] bytes, short[] expected, int sampleRate) throws Exception {
+        BitReader in = new BitReader(bytes);
+        assertEquals(0x664C6143, in.read(32)); // fLaC
+        assertEquals(1, in.read(1)); // last metadata block
+        assertEquals(0, in.read(7)); // STREAMINFO
+        assertEquals(34, in.read(24));
+        assertEquals(FlacEncoder.BLOCK_SIZE, in.read(16));
+        assertEquals(FlacEncoder.BLOCK_SIZE, in.read(16));
+        int minFrameBytes = in.read(24);
+        int maxFrameBytes = in.read(24);
+        assertEquals(sampleRate, in.read(20));
+        assertEquals(0, in.read(3)); // mono
+        assertEquals(15, in.read(5)); // 16 bits
+        long totalSamples = ((long) in.read(4) << 32) | (in.read(32) & 0xFFFFFFFFL);
+        assertEquals(expected.length, totalSamples);
+        byte[] md5 = new byte[16];
+        for (int i = 0; i < md5.length; i++) {
+            md5[i] = (byte) in.read(8);
+        }
+        assertArrayEquals(md5(expected), md5);
+
+        short[] samples = new short[(int) totalSamples];
+        int decoded = 0;
+        int smallest = Integer.MAX_VALUE;
+        int largest = 0;
+        for (long frameNumber = 0; in.bytePosition() < bytes.length; frameNumber++) {
+            int start = in.bytePosition();
+            assertEquals(0x3FFE, in.read(14));
+            assertEquals(0, in.read(2)); // fixed block size
+            int blockSizeCode = in.read(4);
+            int rateCode = in.read(4);
+            assertEquals(0, in.read(4)); // mono
+            assertEquals(4, in.read(3)); // 16 bits
+            assertEquals(0, in.read(1));
+            assertEquals(frameNumber, in.readUtf8());
+            int blockSize;
+            if (blockSizeCode == 0xC) {
+                blockSize = 4096;
+            } else {
+                assertEquals(0x7, blockSizeCode);
+                blockSize = in.read(16) + 1;
+            }
+            if (rateCode == 0xC) {
+                assertEquals(sampleRate, in.read(8) * 1000);
+            } else if (rateCode == 0xD) {
+                assertEquals(sampleRate, in.read(16));
+            } else if (rateCode == 0xE) {
+                assertEquals(sampleRate, in.read(16) * 10);
+            } else if (rateCode == 0x9) {
+                assertEquals(44100, sampleRate);
+            } else {
+                assertEquals(0, rateCode);
+            }
+            int headerEnd = in.bytePosition();
+            assertEquals("CRC-8 of frame " + frameNumber, crc8(bytes, start, headerEnd), in.read(8));
+
+            decodeSubframe(in, samples, decoded, blockSize);
+            decoded += blockSize;
+
+            in.alignToByte();
+            int frameEnd = in.bytePosition();
+            assertEquals("CRC-16 of frame " + frameNumber, crc16(bytes, start, frameEnd), in.read(16));
+            smallest = Math.min(smallest, frameEnd + 2 - start);
+            largest = Math.max(largest, frameEnd + 2 - start);
+        }
+        assertEquals(totalSamples, decoded);
+        assertEquals(totalSamples == 0 ? 0 : smallest, minFrameBytes);
+        assertEquals(largest, maxFrameBytes);
+        return samples;
+    }
+
+    private static void decodeSubframe(BitReader in, short[] samples, int offset, int blockSize) {
+        assertEquals(0, in.read(1));
+        int type = in.read(6);
+        assertEquals(0, in.read(1)); // no wasted bits
+        if (type == 0) {
+            short value = (short) in.read(16);
+            for (int i = 0; i < blockSize; i++) samples[offset + i] = value;
+            return;
+        }
+        if (type == 1) {
+            for (int i = 0; i < blockSize; i++) samples[offset + i] = (short) in.read(16);
+            return;
+        }
+        assertTrue("subframe type " + type, type >= 8 && type <= 12);
+        int order = type - 8;
+        for (int i = 0; i < order; i++) samples[offset + i] = (short) in.read(16);
+        assertEquals(0, in.read(2)); // Rice, 4-bit parameters
+        int partitionOrder = in.read(4);
+        int partitionLength = blockSize >> partitionOrder;
+        int i = order;
+        for (int p = 0; p < 1 << partitionOrder; p++) {
+            int parameter = in.read(4);
+            assertTrue(parameter < 15);
+            for (int end = (p + 1) * partitionLength; i < end; i++) {
+                int folded = (in.readUnary() << parameter) | in.read(parameter);
+                int residual = (folded >>> 1) ^ -(folded & 1);
+                int at = offset + i;
+                samples[at] = (short) (predict(samples, at, order) + residual);
+            }
+        }
+        assertEquals(blockSize, i);
+    }
+
+    private static int predict(short[] s, int i, int order) {
+        switch (order) {
+            case 0: return 0;
+            case 1: return s[i - 1];
+            case 2: return 2 * s[i - 1] - s[i - 2];
+            case 3: return 3 * s[i - 1] - 3 * s[i - 2] + s[i - 3];
+            default: return 4 * s[i - 1] - 6 * s[i - 2] + 4 * s[i - 3] - s[i - 4];
+        }
+    }
+
+    // Of the samples as 16-bit little endian, as FLAC defines it
+    private static byte[] md5(short[] samples) throws Exception {
+        ByteBuffer bytes = ByteBuffer.allocate(2 * samples.length).order(ByteOrder.LITTLE_ENDIAN);
+        for (short sample : samples) bytes.putShort(sample);
+        return MessageDigest.getInstance("MD5").digest(bytes.array());
+    }
+
+    private static int crc8(byte[] data, int from, int to) {
+        int crc = 0;
+        for (int i = from; i < to; i++) {
+            crc ^= data[i] & 0xFF;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = ((crc << 1) ^ ((crc & 0x80) != 0 ? 0x07 : 0)) & 0xFF;
+            }
+        }
+        return crc;
+    }
+
+    private static int crc16(byte[] data, int from, int to) {
+        int crc = 0;
+        for (int i = from; i < to; i++) {
+            crc ^= (data[i] & 0xFF) << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = ((crc << 1) ^ ((crc & 0x8000) != 0 ? 0x8005 : 0)) & 0xFFFF;
+            }
+        }
+        return crc;
+    }
+
+    private static final class BitReader {
+        private final byte[] data;
+        private long bitPosition = 0;
+
+        BitReader(byte[] data) {
+            this.data = data;
+        }
+
+        int bytePosition() {
+            return (int) (bitPosition >> 3);
+        }
+
+        void alignToByte() {
+            bitPosition = (bitPosition + 7) & ~7L;
+        }
+
+        // Up to 32 bits, big endian
+        int read(int count) {
+            int value = 0;
+            for (int i = 0; i < count; i++) {
+                int bit = (data[(int) (bitPosition >> 3)] >> (7 - (bitPosition & 7))) & 1;
+                value = (value << 1) | bit;
+                bitPosition++;
+            }
+            return value;
+        }
+
+        int readUnary() {
+            int zeros = 0;
+            while (read(1) == 0) zeros++;
+            return zeros;
+        }
+
+        long readUtf8() {
+            int lead = read(8);
+            if (lead < 0x80) return lead;
+            int continuation = Integer.numberOfLeadingZeros(~lead << 24) - 1;
+            long value = lead & (0x3F >> continuation);
+            for (int i = 0; i < continuation; i++) {
+                int next = read(8);
+                assertEquals(0x80, next & 0xC0);
+                value = (value << 6) | (next & 0x3F);
+            }
+            return value;
+        }
+    }
+}
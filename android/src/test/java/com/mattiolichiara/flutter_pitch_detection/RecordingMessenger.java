@@ -0,0 +1,35 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import io.flutter.plugin.common.BinaryMessenger;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary messenger for tests. Like the engine's, it copies each message before {@code send}
+ * returns; the copies are kept in native byte order.
+ */
+final class RecordingMessenger implements BinaryMessenger {
+    final List<ByteBuffer> sent = new ArrayList<>();
+
+    @Override
+    public void send(String channel, ByteBuffer message) {
+        send(channel, message, null);
+    }
+
+    @Override
+    public void send(String channel, ByteBuffer message, BinaryReply callback) {
+        ByteBuffer copy = ByteBuffer.allocate(message.position()).order(ByteOrder.nativeOrder());
+        ByteBuffer source = message.duplicate();
+        source.flip();
+        copy.put(source);
+        copy.flip();
+        sent.add(copy);
+    }
+
+    @Override
+    public void setMessageHandler(String channel, BinaryMessageHandler handler) {
+    }
+}
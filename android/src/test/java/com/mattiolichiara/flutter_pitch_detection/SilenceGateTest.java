@@ -0,0 +1,86 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SilenceGateTest {
+    private static final int SAMPLE_RATE = 44100;
+
+    @Test
+    public void staysOpenForTheHangover() {
+        SilenceGate gate = new SilenceGate(-40, 100, false, false);
+
+        assertFalse(gate.admit(-60, -50, 0.0));
+        assertTrue(gate.admit(-30, -20, 0.1));
+        assertTrue(gate.admit(-60, -50, 0.15));
+        assertTrue(gate.admit(-60, -50, 0.2));
+        assertFalse(gate.admit(-60, -50, 0.25));
+        assertEquals(2, gate.getSkippedFrames());
+
+        // A new session's time stamps start over
+        gate.reset();
+        assertFalse(gate.admit(-60, -50, 0.05));
+    }
+
+    @Test
+    public void peakModeComparesThePeak() {
+        SilenceGate rms = new SilenceGate(-40, 0, false, false);
+        SilenceGate peak = new SilenceGate(-40, 0, true, false);
+
+        // A click: loud peak, quiet RMS
+        assertFalse(rms.admit(-55, -10, 0));
+        assertTrue(peak.admit(-55, -10, 0));
+    }
+
+    @Test
+    public void copyStartsWithNoSkippedFrames() {
+        SilenceGate gate = new SilenceGate(-40, 0, false, true);
+        gate.admit(-60, -60, 0);
+
+        SilenceGate copy = gate.copy();
+        assertEquals(1, gate.getSkippedFrames());
+        assertEquals(0, copy.getSkippedFrames());
+        assertTrue(copy.suppressesEvents());
+        assertFalse(copy.admit(-60, -60, 0));
+    }
+
+    @Test
+    public void pauseBetweenNotesIsSkippedInAReplay() {
+        float[] samples = new float[3 * SAMPLE_RATE];
+        float[] tone = SignalSource.sine(330.0, 0.5, 3.0).render(SAMPLE_RATE);
+        System.arraycopy(tone, 0, samples, 0, SAMPLE_RATE);
+        System.arraycopy(tone, 2 * SAMPLE_RATE, samples, 2 * SAMPLE_RATE, SAMPLE_RATE);
+        SilenceGate gate = new SilenceGate(-40, 100, false, false);
+
+        final List<PitchFrame> frames = new ArrayList<>();
+        PitchDetectionService service = new PitchDetectionService(
+                SAMPLE_RATE, 2048, 1024, 10, 0.8, 440.0, frames::add);
+        service.setAudioSource(new PcmSource(samples, SAMPLE_RATE));
+        service.setSilenceGate(gate);
+        service.startDetection();
+        assertTrue("Replay did not finish", service.awaitCompletion(30000));
+
+        int gated = 0;
+        for (PitchFrame frame : frames) {
+            if (frame.gated) gated++;
+            boolean inTone = frame.timeStamp > 0.1 && frame.timeStamp < 0.9
+                    || frame.timeStamp > 2.1 && frame.timeStamp < 2.9;
+            boolean inPause = frame.timeStamp > 1.2 && frame.timeStamp < 1.9;
+            if (inTone) {
+                assertFalse(frame.gated);
+                assertTrue(frame.voiced);
+            } else if (inPause) {
+                assertTrue("frame at " + frame.timeStamp, frame.gated);
+                assertFalse(frame.voiced);
+            }
+        }
+        assertTrue(gated > 20);
+        assertEquals(gated, gate.getSkippedFrames());
+    }
+}
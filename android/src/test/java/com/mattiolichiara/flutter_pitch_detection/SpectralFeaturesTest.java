@@ -0,0 +1,54 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class SpectralFeaturesTest {
+    private static final int BUFFER_SIZE = 4096;
+    // 12 bands per octave from A1, offset half a band so every A is a band center
+    private static final double MIN_FREQUENCY = 55 * Math.pow(2, -1 / 24.0);
+    private static final int BANDS = 72;
+
+    private static int strongest(float[] values) {
+        int best = 0;
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] > values[best]) best = i;
+        }
+        return best;
+    }
+
+    private static void analyze(SpectralFeatures features, double frequency, int sampleRate, TuningTable tuning) {
+        float[] buffer = new float[BUFFER_SIZE];
+        System.arraycopy(SignalSource.sine(frequency, 0.5, 1.0).render(sampleRate), 0, buffer, 0, BUFFER_SIZE);
+        SpectrumAnalyzer spectrum = new SpectrumAnalyzer(sampleRate);
+        spectrum.process(buffer);
+        features.process(spectrum, tuning);
+    }
+
+    @Test
+    public void toneLandsInItsBandAndPitchClass() {
+        SpectralFeatures features = new SpectralFeatures(BANDS, MIN_FREQUENCY, MIN_FREQUENCY * 64);
+        TuningTable tuning = new TuningTable(440.0);
+
+        analyze(features, 1760, 44100, tuning);
+        assertEquals(60, strongest(features.getBands()));
+        assertEquals(9, strongest(features.getChroma()));
+    }
+
+    @Test
+    public void sampleRateChangeAtTheSameFftSizeReplans() {
+        SpectralFeatures features = new SpectralFeatures(BANDS, MIN_FREQUENCY, MIN_FREQUENCY * 64);
+        TuningTable tuning = new TuningTable(440.0);
+        analyze(features, 1760, 44100, tuning);
+
+        // As after reconfigure(): a new analyzer at the new rate, same buffer size
+        analyze(features, 1760, 48000, tuning);
+        assertEquals(60, strongest(features.getBands()));
+        assertEquals(9, strongest(features.getChroma()));
+
+        analyze(features, 1760 * Math.pow(2, 2 / 12.0), 48000, tuning);
+        assertEquals(62, strongest(features.getBands()));
+        assertEquals(11, strongest(features.getChroma()));
+    }
+}
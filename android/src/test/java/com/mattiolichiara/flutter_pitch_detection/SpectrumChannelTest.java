@@ -0,0 +1,80 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SpectrumChannelTest {
+    private static final int SAMPLE_RATE = 44100;
+    private static final int BANDS = 72;
+    // As in SpectralFeaturesTest: every A is a band center
+    private static final double MIN_FREQUENCY = 55 * Math.pow(2, -1 / 24.0);
+    private static final int HEADER_BYTES = 24;
+
+    private static int strongest(ByteBuffer frame, int from, int count) {
+        int best = 0;
+        for (int i = 1; i < count; i++) {
+            if (frame.getFloat(from + 4 * i) > frame.getFloat(from + 4 * best)) best = i;
+        }
+        return best;
+    }
+
+    @Test
+    public void replayedToneReachesItsBandAndPitchClass() {
+        final RecordingMessenger messenger = new RecordingMessenger();
+        final QueuedHandler handler = new QueuedHandler();
+        final SpectrumChannel channel = new SpectrumChannel(messenger, handler);
+        channel.start(BANDS, MIN_FREQUENCY, MIN_FREQUENCY * 64);
+
+        final List<PitchFrame> frames = new ArrayList<>();
+        PitchDetectionService service = new PitchDetectionService(
+                SAMPLE_RATE, 4096, 2048, 10, 0.8, 440.0, frame -> {
+                    frames.add(frame);
+                    // The main looper keeps up
+                    handler.runAll();
+                });
+        service.setSpectrumListener(channel);
+        service.setAudioSource(SignalSource.sine(1760, 0.5, 1.0));
+        service.startDetection();
+        assertTrue("Replay did not finish", service.awaitCompletion(30000));
+
+        assertEquals(frames.size(), messenger.sent.size());
+        assertEquals(0, channel.getDroppedFrames());
+        for (int i = 0; i < frames.size() - 1; i++) {
+            ByteBuffer frame = messenger.sent.get(i);
+            assertEquals(HEADER_BYTES + (BANDS + 12) * 4, frame.remaining());
+            assertEquals(BANDS, frame.getInt(0));
+            assertEquals(12, frame.getInt(4));
+            assertEquals(frames.get(i).timeStamp, frame.getDouble(8), 0);
+            assertEquals(frames.get(i).sequence, frame.getLong(16));
+            assertEquals(60, strongest(frame, HEADER_BYTES, BANDS));
+            assertEquals(9, strongest(frame, HEADER_BYTES + BANDS * 4, 12));
+        }
+    }
+
+    @Test
+    public void framesBeyondThePoolAreDroppedAndStopSendsNothing() {
+        RecordingMessenger messenger = new RecordingMessenger();
+        QueuedHandler handler = new QueuedHandler();
+        SpectrumChannel channel = new SpectrumChannel(messenger, handler);
+        channel.start(BANDS, MIN_FREQUENCY, MIN_FREQUENCY * 64);
+        SpectrumAnalyzer spectrum = new SpectrumAnalyzer(SAMPLE_RATE);
+        spectrum.process(new float[4096]);
+        TuningTable tuning = new TuningTable(440.0);
+
+        for (int i = 0; i < 6; i++) channel.onSpectrum(spectrum, tuning, i, i);
+        assertEquals(4, handler.queue.size());
+        assertEquals(2, channel.getDroppedFrames());
+
+        channel.stop();
+        assertFalse(channel.isEnabled());
+        handler.runAll();
+        assertTrue(messenger.sent.isEmpty());
+    }
+}
@@ -0,0 +1,228 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.pitch.PitchProcessor.PitchEstimationAlgorithm;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Time and allocation per buffer of each stage of {@link PitchDetectionService}'s processing
+ * chain, and of what the plugin does with every frame (event map, snapshot), on a plain JVM.
+ *
+ * Stages are driven with the same buffers and overlap the dispatcher would produce from a
+ * synthetic voice-like tone. Each case runs a warm-up, then reports the mean wall time per frame,
+ * the share of the hop it takes ("load", above 100% the pipeline can't keep up in real time) and
+ * the bytes the thread allocated per frame.
+ *
+ * <pre>
+ *   FrameBenchmark [filter] [--buffer=8192] [--overlap=1024] [--sampleRate=44100]
+ *                  [--frames=2000] [--warmup=500]
+ * </pre>
+ * Only cases whose name contains {@code filter} run.
+ */
+public final class FrameBenchmark {
+    // Positions in the processing chain
+    private static final int LEVELS = 0;
+    private static final int RECORD = 1;
+    private static final int GATE = 2;
+    private static final int SPECTRUM = 3;
+    private static final int PITCH = 4;
+
+    // Consumed results, so the JIT can't drop the work
+    static volatile Object sink;
+
+    private interface Stage {
+        Object run(AudioEvent event);
+    }
+
+    private final int sampleRate;
+    private final int bufferSize;
+    private final int overlap;
+    private final int frames;
+    private final int warmup;
+    private final AudioEvent[] events;
+    private final com.sun.management.ThreadMXBean threads;
+
+    private FrameBenchmark(int sampleRate, int bufferSize, int overlap, int frames, int warmup) {
+        this.sampleRate = sampleRate;
+        this.bufferSize = bufferSize;
+        this.overlap = overlap;
+        this.frames = frames;
+        this.warmup = warmup;
+        this.events = slice(Signals.voice(sampleRate, 4.0, 196.0), sampleRate, bufferSize, overlap);
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        this.threads = bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+                ? (com.sun.management.ThreadMXBean) bean : null;
+        if (threads != null) threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    // The buffers a dispatcher would deliver over `signal`, cycled through by every case
+    private static AudioEvent[] slice(float[] signal, int sampleRate, int bufferSize, int overlap) {
+        TarsosDSPAudioFormat format = new TarsosDSPAudioFormat(sampleRate, 16, 1, true, false);
+        int hop = bufferSize - overlap;
+        int count = Math.max(1, (signal.length - bufferSize) / hop + 1);
+        AudioEvent[] events = new AudioEvent[count];
+        for (int i = 0; i < count; i++) {
+            float[] buffer = new float[bufferSize];
+            System.arraycopy(signal, i * hop, buffer, 0, bufferSize);
+            AudioEvent event = new AudioEvent(format);
+            event.setFloatBuffer(buffer);
+            event.setOverlap(i == 0 ? 0 : overlap);
+            event.setBytesProcessed((long) i * hop * 2);
+            events[i] = event;
+        }
+        return events;
+    }
+
+    private void measure(String name, Stage stage) {
+        for (int i = 0; i < warmup; i++) {
+            sink = stage.run(events[i % events.length]);
+        }
+
+        long thread = Thread.currentThread().getId();
+        long bytesBefore = threads != null ? threads.getThreadAllocatedBytes(thread) : 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            sink = stage.run(events[i % events.length]);
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = threads != null ? threads.getThreadAllocatedBytes(thread) - bytesBefore : -1;
+
+        double nanosPerFrame = (double) elapsed / frames;
+        double hopNanos = (bufferSize - overlap) * 1e9 / sampleRate;
+        System.out.printf(Locale.ROOT, "%-34s %12.0f %8.2f%% %12s%n", name, nanosPerFrame,
+                100 * nanosPerFrame / hopNanos,
+                bytes < 0 ? "n/a" : String.format(Locale.ROOT, "%.0f", (double) bytes / frames));
+    }
+
+    // A fresh service whose chain is driven directly, without a dispatcher
+    private PitchDetectionService newService(PitchDetectionService.PitchFrameListener listener) {
+        return new PitchDetectionService(sampleRate, bufferSize, overlap, 10, 0.8, 440.0, listener);
+    }
+
+    private static Stage chainStage(List<AudioProcessor> chain, int from, int to) {
+        return event -> {
+            for (int i = from; i < to; i++) {
+                if (!chain.get(i).process(event)) break;
+            }
+            return event;
+        };
+    }
+
+    private void run(String filter) throws IOException {
+        List<String> names = new ArrayList<>();
+        List<Stage> stages = new ArrayList<>();
+        List<AudioFileRecorder> recorders = new ArrayList<>();
+
+        PitchDetectionService plain = newService(frame -> { });
+        List<AudioProcessor> chain = plain.createProcessingChain(null);
+        names.add("levels+history");
+        stages.add(chainStage(chain, LEVELS, LEVELS + 1));
+
+        PitchDetectionService loud = newService(frame -> { });
+        loud.setLoudnessMetering(true);
+        names.add("levels+history (loudness)");
+        stages.add(chainStage(loud.createProcessingChain(null), LEVELS, LEVELS + 1));
+
+        // The audio thread's share only: encoding runs on the recorder's writer thread. Buffers
+        // come much faster than in real time, so the queue holds the whole run rather than drop
+        double queueSeconds = (double) (warmup + frames) * bufferSize / sampleRate;
+        for (AudioFileRecorder.Format format : AudioFileRecorder.Format.values()) {
+            File file = File.createTempFile("benchmark", "." + format.name().toLowerCase(Locale.ROOT));
+            file.deleteOnExit();
+            AudioFileRecorder recorder = new AudioFileRecorder(file, format, sampleRate, queueSeconds);
+            recorders.add(recorder);
+            PitchDetectionService recording = newService(frame -> { });
+            recording.setRecorder(recorder);
+            names.add("record " + format.name());
+            stages.add(chainStage(recording.createProcessingChain(null), RECORD, RECORD + 1));
+        }
+
+        PitchDetectionService gated = newService(frame -> { });
+        gated.setSilenceGate(new SilenceGate(-60, 300, false, false));
+        List<AudioProcessor> gatedChain = gated.createProcessingChain(null);
+        names.add("gate");
+        stages.add(chainStage(gatedChain, GATE, GATE + 1));
+
+        PitchDetectionService polyphonic = newService(frame -> { });
+        polyphonic.setMultiPitchDetector(new MultiPitchDetector(6, 60, 2000, 0.3));
+        names.add("spectrum+multiPitch");
+        stages.add(chainStage(polyphonic.createProcessingChain(null), SPECTRUM, SPECTRUM + 1));
+
+        for (PitchEstimationAlgorithm algorithm : PitchEstimationAlgorithm.values()) {
+            PitchDetectionService service = newService(frame -> { });
+            service.setAlgorithm(algorithm);
+            names.add("pitch " + algorithm.name());
+            stages.add(chainStage(service.createProcessingChain(null), PITCH, PITCH + 1));
+        }
+
+        PitchDetectionService smoothed = newService(frame -> { });
+        smoothed.setSmoother(new PitchSmoother(PitchSmoother.Mode.ONE_EURO, true, 3, 5, 2.0, 0.5, 0.001, 0.01));
+        names.add("pitch FFT_YIN (oneEuro)");
+        stages.add(chainStage(smoothed.createProcessingChain(null), PITCH, PITCH + 1));
+
+        // What the plugin does with each frame, on a service with a full second of history
+        PitchDetectionService published = newService(frame -> { });
+        List<AudioProcessor> fullChain = published.createProcessingChain(null);
+        names.add("chain (all stages)");
+        stages.add(chainStage(fullChain, 0, fullChain.size()));
+        for (AudioEvent event : events) {
+            chainStage(fullChain, 0, fullChain.size()).run(event);
+        }
+        for (PitchPayload payload : PitchPayload.values()) {
+            PitchEventBuilder builder = new PitchEventBuilder(payload);
+            names.add("event " + payload.getKey());
+            stages.add(event -> builder.build(published, published.getFrame(), 0));
+        }
+        names.add("snapshot");
+        stages.add(event -> published.getSnapshot(null, 10, 0.8));
+        names.add("levels reading");
+        stages.add(event -> published.getLevels());
+
+        System.out.printf(Locale.ROOT, "buffer %d, overlap %d, %d Hz: hop %.1f ms, %d frames after %d warm-up%n%n",
+                bufferSize, overlap, sampleRate, (bufferSize - overlap) * 1000.0 / sampleRate, frames, warmup);
+        System.out.printf(Locale.ROOT, "%-34s %12s %9s %12s%n", "case", "ns/frame", "load", "B/frame");
+        for (int i = 0; i < names.size(); i++) {
+            if (filter == null || names.get(i).contains(filter)) {
+                measure(names.get(i), stages.get(i));
+            }
+        }
+        for (AudioFileRecorder recorder : recorders) {
+            AudioFileRecorder.Result result = recorder.stop();
+            if (result.droppedSamples > 0) {
+                System.out.printf(Locale.ROOT, "%n%s recording dropped %d of %d samples%n",
+                        result.format, result.droppedSamples, result.samples + result.droppedSamples);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String filter = null;
+        int sampleRate = 44100;
+        int bufferSize = PitchDetectionService.DEFAULT_BUFFER_SIZE;
+        int overlap = 1024;
+        int frames = 2000;
+        int warmup = 500;
+        for (String arg : args) {
+            if (arg.startsWith("--buffer=")) bufferSize = Integer.parseInt(arg.substring(9));
+            else if (arg.startsWith("--overlap=")) overlap = Integer.parseInt(arg.substring(10));
+            else if (arg.startsWith("--sampleRate=")) sampleRate = Integer.parseInt(arg.substring(13));
+            else if (arg.startsWith("--frames=")) frames = Integer.parseInt(arg.substring(9));
+            else if (arg.startsWith("--warmup=")) warmup = Integer.parseInt(arg.substring(9));
+            else filter = arg;
+        }
+        if (overlap >= bufferSize) {
+            throw new IllegalArgumentException("overlap must be below the buffer size");
+        }
+        new FrameBenchmark(sampleRate, bufferSize, overlap, frames, warmup).run(filter);
+    }
+}
@@ -0,0 +1,34 @@
+package com.mattiolichiara.flutter_pitch_detection;
+
+import java.util.Random;
+
+/**
+ * Synthetic input for the benchmarks. Seeded, so every run processes the same samples.
+ */
+final class Signals {
+
+    private Signals() {
+    }
+
+    /**
+     * A sung-like tone: {@code frequency} with 5 Hz vibrato of +-30 cents, six harmonics falling
+     * off at 6 dB per octave, and a little noise, peaking around -6 dBFS.
+     */
+    static float[] voice(int sampleRate, double seconds, double frequency) {
+        int length = (int) (seconds * sampleRate);
+        float[] samples = new float[length];
+        Random noise = new Random(42);
+        double phase = 0;
+        for (int i = 0; i < length; i++) {
+            double t = (double) i / sampleRate;
+            double instantaneous = frequency * Math.pow(2, 0.3 / 12 * Math.sin(2 * Math.PI * 5 * t));
+            phase += 2 * Math.PI * instantaneous / sampleRate;
+            double value = 0;
+            for (int h = 1; h <= 6; h++) {
+                value += Math.sin(h * phase) / h;
+            }
+            samples[i] = (float) (0.25 * value + 0.005 * noise.nextGaussian());
+        }
+        return samples;
+    }
+}
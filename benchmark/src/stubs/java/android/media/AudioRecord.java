@@ -0,0 +1,27 @@
+package android.media;
+
+/**
+ * Desktop stand-in. There is no microphone here: the benchmarks feed synthetic buffers, and
+ * opening one fails.
+ */
+public class AudioRecord {
+    public static final int STATE_INITIALIZED = 1;
+
+    public AudioRecord(int audioSource, int sampleRate, int channelConfig, int audioFormat, int bufferSizeInBytes) {
+        throw new UnsupportedOperationException("No microphone on the desktop JVM");
+    }
+
+    public static int getMinBufferSize(int sampleRate, int channelConfig, int audioFormat) {
+        return -1;
+    }
+
+    public int getState() {
+        return 0;
+    }
+
+    public void release() {
+    }
+
+    public void startRecording() {
+    }
+}
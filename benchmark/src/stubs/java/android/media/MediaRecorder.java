@@ -0,0 +1,11 @@
+package android.media;
+
+/**
+ * Desktop stand-in for the constants the microphone source uses.
+ */
+public class MediaRecorder {
+
+    public static final class AudioSource {
+        public static final int MIC = 1;
+    }
+}
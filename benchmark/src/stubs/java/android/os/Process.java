@@ -0,0 +1,12 @@
+package android.os;
+
+/**
+ * Desktop stand-in: thread priorities are left to the JVM.
+ */
+public class Process {
+    public static final int THREAD_PRIORITY_AUDIO = -16;
+    public static final int THREAD_PRIORITY_URGENT_AUDIO = -19;
+
+    public static void setThreadPriority(int priority) {
+    }
+}
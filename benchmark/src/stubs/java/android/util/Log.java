@@ -0,0 +1,26 @@
+package android.util;
+
+/**
+ * Desktop stand-in: warnings and errors go to standard error.
+ */
+public final class Log {
+
+    private Log() {
+    }
+
+    public static int w(String tag, String message) {
+        System.err.println("W/" + tag + ": " + message);
+        return 0;
+    }
+
+    public static int e(String tag, String message) {
+        System.err.println("E/" + tag + ": " + message);
+        return 0;
+    }
+
+    public static int e(String tag, String message, Throwable error) {
+        System.err.println("E/" + tag + ": " + message);
+        error.printStackTrace();
+        return 0;
+    }
+}
@@ -0,0 +1,80 @@
+import 'dart:typed_data';
+
+/// Sample format of the frames delivered by `audioFrames`.
+enum AudioFrameFormat {
+  /// Normalized samples (-1.0 to 1.0), exposed as [AudioFrame.float32].
+  float32,
+
+  /// 16-bit PCM samples, exposed as [AudioFrame.int16].
+  int16,
+}
+
+/// A block of raw audio received over the binary audio channel.
+///
+/// Samples are views over the received message, no per-sample decoding is
+/// done. Consecutive frames are contiguous in time.
+class AudioFrame {
+  static const int headerBytes = 16;
+
+  /// Frame counter, increasing by one per frame. A gap means frames were dropped.
+  final int sequence;
+
+  /// Sample rate of the captured audio in Hz.
+  final int sampleRate;
+
+  final AudioFrameFormat format;
+
+  /// Samples when [format] is [AudioFrameFormat.float32], otherwise null.
+  final Float32List? float32;
+
+  /// Samples when [format] is [AudioFrameFormat.int16], otherwise null.
+  final Int16List? int16;
+
+  AudioFrame._(
+    this.sequence,
+    this.sampleRate,
+    this.format,
+    this.float32,
+    this.int16,
+  );
+
+  /// Number of samples in this frame.
+  int get length => float32?.length ?? int16?.length ?? 0;
+
+  /// Parses a frame: int32 format, int32 sample rate, int64 sequence, then the
+  /// samples, all in host byte order.
+  factory AudioFrame.fromByteData(ByteData data) {
+    final format =
+        data.getInt32(0, Endian.host) == 1
+            ? AudioFrameFormat.int16
+            : AudioFrameFormat.float32;
+    final sampleRate = data.getInt32(4, Endian.host);
+    final sequence = data.getInt64(8, Endian.host);
+
+    var buffer = data.buffer;
+    var start = data.offsetInBytes + headerBytes;
+    final bytes = data.lengthInBytes - headerBytes;
+    if (start % 4 != 0) {
+      // Typed views need aligned offsets; copy in the rare unaligned case.
+      buffer = Uint8List.fromList(buffer.asUint8List(start, bytes)).buffer;
+      start = 0;
+    }
+
+    if (format == AudioFrameFormat.int16) {
+      return AudioFrame._(
+        sequence,
+        sampleRate,
+        format,
+        null,
+        buffer.asInt16List(start, bytes ~/ 2),
+      );
+    }
+    return AudioFrame._(
+      sequence,
+      sampleRate,
+      format,
+      buffer.asFloat32List(start, bytes ~/ 4),
+      null,
+    );
+  }
+}
@@ -0,0 +1,41 @@
+import 'pitch_track.dart';
+
+/// Results a background session produced while no Flutter engine was
+/// attached, returned by `getMissedResults`.
+class MissedResults {
+  /// The missed frames, oldest first. Times count from [startedAt].
+  final PitchTrack track;
+
+  /// Frames lost because the on-device buffer was full.
+  final int overwritten;
+
+  /// Wall clock time at the start of the background session.
+  final DateTime startedAt;
+
+  const MissedResults({
+    required this.track,
+    required this.overwritten,
+    required this.startedAt,
+  });
+
+  factory MissedResults.fromMap(Map<dynamic, dynamic> map) {
+    final track = PitchTrack.fromMap(map);
+    return MissedResults(
+      track: PitchTrack(
+        data: track.data,
+        sampleRate: track.sampleRate,
+        fieldsPerFrame: track.fieldsPerFrame,
+        duration:
+            track.length == 0
+                ? 0
+                : track.timeAt(track.length - 1) - track.timeAt(0),
+      ),
+      overwritten: (map['overwritten'] as num?)?.toInt() ?? 0,
+      startedAt: DateTime.fromMillisecondsSinceEpoch(
+        (map['startedAtMillis'] as num?)?.toInt() ?? 0,
+      ),
+    );
+  }
+
+  bool get isEmpty => track.length == 0;
+}
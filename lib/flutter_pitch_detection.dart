@@ -1,6 +1,33 @@
 import 'dart:typed_data';
 
+import 'audio_frame.dart';
+import 'background_detection.dart';
 import 'flutter_pitch_detection_platform_interface.dart';
+import 'level_reading.dart';
+import 'multi_pitch.dart';
+import 'note_event.dart';
+import 'pitch_algorithm.dart';
+import 'pipeline_metrics.dart';
+import 'pitch_payload.dart';
+import 'pitch_smoothing.dart';
+import 'pitch_snapshot.dart';
+import 'pitch_track.dart';
+import 'recording.dart';
+import 'spectrum_frame.dart';
+
+export 'audio_frame.dart';
+export 'background_detection.dart';
+export 'level_reading.dart';
+export 'multi_pitch.dart';
+export 'note_event.dart';
+export 'pitch_algorithm.dart';
+export 'pipeline_metrics.dart';
+export 'pitch_payload.dart';
+export 'pitch_smoothing.dart';
+export 'pitch_snapshot.dart';
+export 'pitch_track.dart';
+export 'recording.dart';
+export 'spectrum_frame.dart';
 
 /// A Flutter plugin for real-time audio pitch detection.
 ///
@@ -31,17 +58,63 @@ class FlutterPitchDetection {
   /// - `accuracy` (int): Detection confidence (0-100)
   /// - `isOnPitch` (bool): True if within tolerance
   /// - `toleranceCents` (double): Current pitch tolerance (0.0 to 0.1)
-  /// - `bufferSize` (int): Current buffer size (default: 8196, min: 7056)
+  /// - `bufferSize` (int): Current buffer size (default: 8192, min: 256)
   /// - `sampleRate` (int): Audio sampling rate (defaults to 44100)
   /// - `minPrecision` (double): Current pitch confidence (0.0 to 0.1)
   /// - `pcmData` (Uint8List): Raw PCM byte data.
   /// - `streamData` (List`<`double`>`): Processed audio data (normalized doubles)
+  /// - `droppedFrames` (int): Frames replaced by a newer one before they could be delivered
   Stream<Map<String, dynamic>> get onPitchDetected {
     return _platform.onPitchDetected;
   }
 
+  /// Stream of pitch detection results limited to the fields of [payload].
+  ///
+  /// Use [PitchPayload.pitchOnly] or [PitchPayload.pitchAndLevel] when the raw
+  /// audio (`pcmData`, `streamData`) isn't needed. Only one profile can be
+  /// active at a time.
+  Stream<Map<String, dynamic>> pitchEvents({
+    PitchPayload payload = PitchPayload.full,
+  }) {
+    return _platform.pitchEvents(payload);
+  }
+
+  /// Stream of note on/off events segmented from the detected pitch.
+  ///
+  /// A note starts once it has sounded for [minNoteMillis] and ends after
+  /// [releaseMillis] of silence or when another note starts. The pitch may
+  /// drift [hysteresisCents] past the half-semitone boundary without starting
+  /// a new note. Frames quieter than [silenceThresholdDbFS] (RMS) count as
+  /// silence. Note on events arrive [minNoteMillis] after the note started.
+  Stream<NoteEvent> noteEvents({
+    double minNoteMillis = 80,
+    double releaseMillis = 60,
+    double hysteresisCents = 20,
+    double silenceThresholdDbFS = -50,
+  }) {
+    return _platform.noteEvents(
+      minNoteMillis: minNoteMillis,
+      releaseMillis: releaseMillis,
+      hysteresisCents: hysteresisCents,
+      silenceThresholdDbFS: silenceThresholdDbFS,
+    );
+  }
+
   /// Starts audio processing and begins pitch detection.
   ///
+  /// - [maxEventsPerSecond]: Upper bound for [onPitchDetected] events. Only the
+  ///   latest result is delivered, older ones are dropped (0 or null: no limit)
+  /// - [algorithm]: Pitch estimation algorithm (default: [PitchAlgorithm.fftYin])
+  /// - [bufferSize]: Analysis window in samples, used as given (default: 8192,
+  ///   about 186 ms at 44.1 kHz)
+  /// - [minFrequency]: Lowest pitch to detect in Hz. Without [bufferSize], the
+  ///   window is sized to the shortest one that still detects it
+  /// - [lowLatency]: Small window (down to 40 Hz unless [minFrequency] is set)
+  ///   with 75% overlap, for faster updates on stage
+  /// - [separateAnalysis]: Analyse on a worker of its own, fed through a
+  ///   two-second buffer, so heavy processing (multi-pitch, spectrum, slow
+  ///   algorithms) never delays microphone reads
+  ///
   /// Throws a [PlatformException] if:
   /// - Microphone permission is denied
   /// - Audio capture fails to start
@@ -49,14 +122,73 @@ class FlutterPitchDetection {
     int? sampleRate,
     int? bufferSize,
     int? overlap,
+    int? maxEventsPerSecond,
+    PitchAlgorithm? algorithm,
+    double? minFrequency,
+    bool lowLatency = false,
+    bool separateAnalysis = false,
   }) async {
     return _platform.startDetection(
       sampleRate: sampleRate ?? 44100,
-      bufferSize: bufferSize ?? 8192,
+      bufferSize: bufferSize,
+      overlap: overlap ?? 0,
+      maxEventsPerSecond: maxEventsPerSecond,
+      algorithm: algorithm,
+      minFrequency: minFrequency,
+      lowLatency: lowLatency,
+      separateAnalysis: separateAnalysis,
+    );
+  }
+
+  /// Starts pitch detection in an Android foreground service, which keeps
+  /// capturing while the app is in the background and across configuration
+  /// changes. Takes the same options as [startDetection]; the service shows
+  /// an ongoing notification with [notificationTitle] and [notificationText].
+  ///
+  /// While no Flutter engine is attached, up to [maxBufferedResults] results
+  /// are kept on the device (the oldest are overwritten). A new engine picks
+  /// the session up automatically and gets them from [getMissedResults].
+  /// [stopDetection] ends the session.
+  Future<void> startBackgroundDetection({
+    int? sampleRate,
+    int? bufferSize,
+    int? overlap,
+    int? maxEventsPerSecond,
+    PitchAlgorithm? algorithm,
+    double? minFrequency,
+    bool lowLatency = false,
+    bool separateAnalysis = false,
+    int maxBufferedResults = 10000,
+    String? notificationTitle,
+    String? notificationText,
+  }) async {
+    return _platform.startBackgroundDetection(
+      sampleRate: sampleRate ?? 44100,
+      bufferSize: bufferSize,
       overlap: overlap ?? 0,
+      maxEventsPerSecond: maxEventsPerSecond,
+      algorithm: algorithm,
+      minFrequency: minFrequency,
+      lowLatency: lowLatency,
+      separateAnalysis: separateAnalysis,
+      maxBufferedResults: maxBufferedResults,
+      notificationTitle: notificationTitle,
+      notificationText: notificationText,
     );
   }
 
+  /// Whether a background session is running, possibly started by an
+  /// earlier engine.
+  Future<bool> isBackgroundDetectionRunning() async {
+    return _platform.isBackgroundDetectionRunning();
+  }
+
+  /// Takes the results the background session buffered while no engine was
+  /// attached, as one batch. Empty when there are none.
+  Future<MissedResults> getMissedResults() async {
+    return _platform.getMissedResults();
+  }
+
   /// Stops pitch detection and releases audio resources.
   Future<void> stopDetection() async {
     return _platform.stopDetection();
@@ -64,14 +196,21 @@ class FlutterPitchDetection {
 
   /// Configures audio processing parameters.
   ///
+  /// Applied to the running detection without a restart: tolerance, precision
+  /// and A4 take effect immediately, buffer size and overlap from the next
+  /// buffer. A sample rate change restarts audio capture only. Omitted
+  /// parameters keep their current value.
+  ///
   /// - [sampleRate]: Audio sample rate in Hz (default: 44100)
-  /// - [bufferSize]: FFT buffer size (default: 8196, min: 7056)
+  /// - [bufferSize]: FFT buffer size (default: 8192, min: 256)
+  /// - [overlap]: Samples shared by consecutive buffers (less than [bufferSize])
   /// - [toleranceCents]: Pitch tolerance in cents (0.0 to 1.0)
   /// - [minPrecision]: Minimum confidence threshold (0.0 to 1.0)
   /// - [a4Reference]: Reference frequency for A4 in Hz (defaults to 440.0)
   Future<void> setParameters({
     int? sampleRate,
     int? bufferSize,
+    int? overlap,
     double? toleranceCents,
     double? minPrecision,
     double? a4Reference,
@@ -79,18 +218,256 @@ class FlutterPitchDetection {
     return _platform.setParameters(
       sampleRate: sampleRate,
       bufferSize: bufferSize,
+      overlap: overlap,
       toleranceCents: toleranceCents,
       minPrecision: minPrecision,
       a4Reference: a4Reference,
     );
   }
 
+  ///Switches the pitch estimation algorithm without restarting detection.
+  Future<void> setAlgorithm(PitchAlgorithm algorithm) async {
+    return _platform.setAlgorithm(algorithm);
+  }
+
+  ///Skips pitch estimation on buffers quieter than [thresholdDbFS] (RMS, or
+  ///peak with [GateMeasure.peak]), once [hangoverMillis] have passed since
+  ///the last loud one. Skipped buffers still update the levels and report no
+  ///pitch; with [suppressEvents] they send no pitch event at all.
+  ///
+  ///Kept across `startDetection` calls. Pass `enabled: false` to turn it off.
+  Future<void> setSilenceGate({
+    bool enabled = true,
+    double thresholdDbFS = -60,
+    double hangoverMillis = 300,
+    GateMeasure measure = GateMeasure.rms,
+    bool suppressEvents = false,
+  }) async {
+    return _platform.setSilenceGate(
+      enabled: enabled,
+      thresholdDbFS: thresholdDbFS,
+      hangoverMillis: hangoverMillis,
+      measure: measure,
+      suppressEvents: suppressEvents,
+    );
+  }
+
+  ///Looks for up to [maxPitches] simultaneous notes between [minFrequency]
+  ///and [maxFrequency] in every analysed buffer, for chords and polyphonic
+  ///instruments. Pitches weaker than [minSalience] times the strongest one
+  ///are dropped. Results arrive in the `pitches` field of pitch events and
+  ///snapshots (see [DetectedPitch.listFromMaps]); the single `frequency` is
+  ///unchanged.
+  ///
+  ///Adds one FFT per buffer while on. Kept across `startDetection` calls.
+  ///Pass `enabled: false` to turn it off.
+  Future<void> setMultiPitch({
+    bool enabled = true,
+    int maxPitches = 6,
+    double minFrequency = 60,
+    double maxFrequency = 2000,
+    double minSalience = 0.3,
+  }) async {
+    return _platform.setMultiPitch(
+      enabled: enabled,
+      maxPitches: maxPitches,
+      minFrequency: minFrequency,
+      maxFrequency: maxFrequency,
+      minSalience: minSalience,
+    );
+  }
+
+  ///Number of buffers the silence gate kept from pitch estimation since it
+  ///was set.
+  Future<int> getSkippedFrames() async {
+    return _platform.getSkippedFrames();
+  }
+
+  ///Turns on K-weighted loudness (momentary and short-term, in LUFS) and
+  ///true peak metering, reported by [getLevels]. Off by default; it costs a
+  ///few filter operations per sample.
+  Future<void> setLoudnessMetering(bool enabled) async {
+    return _platform.setLoudnessMetering(enabled);
+  }
+
+  ///Returns RMS and peak level, DC offset and clipped sample count of the
+  ///input, plus loudness and true peak when metering is on.
+  Future<LevelReading> getLevels() async {
+    return _platform.getLevels();
+  }
+
+  ///Times each stage of the native pipeline (capture, chain stages, hand-off
+  ///to the main thread, event encoding) and counts processed, dropped and
+  ///low-precision frames. Off by default, when it costs nothing; enabling it
+  ///again starts from empty histograms.
+  Future<void> setMetricsEnabled(bool enabled) async {
+    return _platform.setMetricsEnabled(enabled);
+  }
+
+  ///Returns what was recorded since [setMetricsEnabled], or null while metrics
+  ///are off.
+  Future<PipelineMetrics?> getMetrics() async {
+    return _platform.getMetrics();
+  }
+
+  ///Records the detection input to [path] while detection runs, replacing any
+  ///recording in progress. Encoding and writing happen on a native background
+  ///thread; if storage falls more than [maxQueueSeconds] behind, audio is
+  ///dropped and counted instead of delaying detection. Detection must be
+  ///running.
+  Future<void> startRecording(
+    String path, {
+    RecordingFormat format = RecordingFormat.wav,
+    double maxQueueSeconds = 4.0,
+  }) async {
+    return _platform.startRecording(
+      path,
+      format: format,
+      maxQueueSeconds: maxQueueSeconds,
+    );
+  }
+
+  ///Completes the file and returns what was recorded, or null when nothing
+  ///was being recorded.
+  Future<RecordingResult?> stopRecording() async {
+    return _platform.stopRecording();
+  }
+
+  ///Smooths the detected pitch natively before it reaches events and getters,
+  ///and optionally folds octave jumps back unless they hold for
+  ///[octaveHoldFrames] frames.
+  ///
+  ///Returns the latency the smoothing adds to a held note, in milliseconds,
+  ///at the current buffer size and overlap. Kept across `startDetection`
+  ///calls; [SmoothingMode.none] without [octaveCorrection] turns it off.
+  Future<double> setSmoothing({
+    SmoothingMode mode = SmoothingMode.none,
+    bool octaveCorrection = false,
+    int octaveHoldFrames = 3,
+    int window = 5,
+    double minCutoff = 2.0,
+    double beta = 0.5,
+    double processNoise = 0.001,
+    double measurementNoise = 0.01,
+  }) async {
+    return _platform.setSmoothing(
+      mode: mode,
+      octaveCorrection: octaveCorrection,
+      octaveHoldFrames: octaveHoldFrames,
+      window: window,
+      minCutoff: minCutoff,
+      beta: beta,
+      processNoise: processNoise,
+      measurementNoise: measurementNoise,
+    );
+  }
+
+  ///Returns the pitch estimation algorithm in use.
+  Future<PitchAlgorithm?> getAlgorithm() async {
+    return _platform.getAlgorithm();
+  }
+
+  ///Returns the measured per-buffer cost of each algorithm used in this session.
+  ///
+  ///Compare [AlgorithmCost.load] across algorithms to pick a cheaper one on
+  ///slow devices.
+  Future<AlgorithmCostReport> getAlgorithmCost() async {
+    return _platform.getAlgorithmCost();
+  }
+
+  ///Extracts the pitch track of a WAV file, or of a raw 16-bit PCM file when
+  ///[sampleRate] (and [channels]) are given. Runs faster than real time,
+  ///independently of live detection.
+  ///
+  ///Omitted settings are taken from the running detector, so a take is graded
+  ///as it would have been live.
+  Future<PitchTrack> analyzeFile(
+    String path, {
+    int? sampleRate,
+    int? channels,
+    PitchAlgorithm? algorithm,
+    int? bufferSize,
+    int? overlap,
+    double? minPrecision,
+    double? a4Reference,
+  }) async {
+    return _platform.analyzeFile(
+      path,
+      sampleRate: sampleRate,
+      channels: channels,
+      algorithm: algorithm,
+      bufferSize: bufferSize,
+      overlap: overlap,
+      minPrecision: minPrecision,
+      a4Reference: a4Reference,
+    );
+  }
+
+  ///Same as [analyzeFile] for 16-bit little-endian PCM already in memory.
+  Future<PitchTrack> analyzePcm(
+    Uint8List pcm, {
+    required int sampleRate,
+    int channels = 1,
+    PitchAlgorithm? algorithm,
+    int? bufferSize,
+    int? overlap,
+    double? minPrecision,
+    double? a4Reference,
+  }) async {
+    return _platform.analyzePcm(
+      pcm,
+      sampleRate: sampleRate,
+      channels: channels,
+      algorithm: algorithm,
+      bufferSize: bufferSize,
+      overlap: overlap,
+      minPrecision: minPrecision,
+      a4Reference: a4Reference,
+    );
+  }
+
+  ///Returns the live pitch track of the current (or last) session between
+  ///[fromMs] and [toMs] of stream time, both included and open-ended when
+  ///omitted. The most recent frames are kept natively (about 16k), so a
+  ///scrolling graph only fetches the range it draws.
+  ///
+  ///With [decimation] above 1, every group of that many frames is reduced to
+  ///its lowest and highest voiced pitch, keeping peaks and gaps visible when
+  ///there are more frames than pixels.
+  Future<PitchTrack> getPitchTrack({
+    double? fromMs,
+    double? toMs,
+    int decimation = 1,
+  }) async {
+    return _platform.getPitchTrack(
+      fromMs: fromMs,
+      toMs: toMs,
+      decimation: decimation,
+    );
+  }
+
+  ///Returns the requested tuner values (all of them when [fields] is null),
+  ///read from the same analysed buffer in a single platform call.
+  ///
+  ///[toleranceCents] and [minPrecision] default to the detector's settings.
+  Future<PitchSnapshot> getSnapshot({
+    Set<PitchSnapshotField>? fields,
+    double? toleranceCents,
+    double? minPrecision,
+  }) async {
+    return _platform.getSnapshot(
+      fields: fields,
+      toleranceCents: toleranceCents,
+      minPrecision: minPrecision,
+    );
+  }
+
   ///Sets audio sample rate (e.g., 44100).
   Future<void> setSampleRate(int sampleRate) async {
     return _platform.setSampleRate(sampleRate);
   }
 
-  ///Sets buffer size (default: 8196, min: 7056).
+  ///Sets buffer size (default: 8192, min: 256).
   Future<void> setBufferSize(int bufferSize) async {
     return _platform.setBufferSize(bufferSize);
   }
@@ -202,6 +579,33 @@ class FlutterPitchDetection {
     return _platform.getRawDataFromStream();
   }
 
+  /// Stream of raw audio frames sent as binary messages.
+  ///
+  /// Much cheaper than [getRawDataFromStream] or the `streamData`/`pcmData`
+  /// event fields: samples arrive as [Float32List] or [Int16List] views
+  /// without per-sample decoding. Streaming starts on listen and stops on
+  /// cancel.
+  Stream<AudioFrame> audioFrames({
+    AudioFrameFormat format = AudioFrameFormat.float32,
+  }) {
+    return _platform.audioFrames(format);
+  }
+
+  /// Stream of the live spectrum, reduced natively to [bands] log-spaced
+  /// bands between [minFrequency] and [maxFrequency], plus a 12-bin chroma
+  /// aligned to the A4 reference.
+  ///
+  /// Computed from the same buffers as the pitch, with one FFT per buffer
+  /// shared with multi-pitch detection. Buffers skipped by the silence gate
+  /// send no frame. Streaming starts on listen and stops on cancel.
+  Stream<SpectrumFrame> spectrumFrames({
+    int bands = 64,
+    double minFrequency = 50,
+    double maxFrequency = 8000,
+  }) {
+    return _platform.spectrumFrames(bands, minFrequency, maxFrequency);
+  }
+
   /// Gets raw PCM audio data from the current buffer.
   ///
   /// Returns [Uint8List] of 16-bit PCM samples.
@@ -1,5 +1,19 @@
+import 'dart:async';
+
 import 'package:flutter/services.dart';
+import 'audio_frame.dart';
+import 'background_detection.dart';
 import 'flutter_pitch_detection_platform_interface.dart';
+import 'level_reading.dart';
+import 'note_event.dart';
+import 'pipeline_metrics.dart';
+import 'pitch_algorithm.dart';
+import 'pitch_payload.dart';
+import 'pitch_smoothing.dart';
+import 'pitch_snapshot.dart';
+import 'pitch_track.dart';
+import 'recording.dart';
+import 'spectrum_frame.dart';
 
 class MethodChannelFlutterPitchDetection extends FlutterPitchDetectionPlatform {
   static const MethodChannel _methodChannel = MethodChannel(
@@ -10,7 +24,18 @@ class MethodChannelFlutterPitchDetection extends FlutterPitchDetectionPlatform {
     'pitch_detection/events',
   );
 
+  static const EventChannel _noteChannel = EventChannel(
+    'pitch_detection/notes',
+  );
+
+  static const BasicMessageChannel<ByteData> _audioChannel =
+      BasicMessageChannel<ByteData>('pitch_detection/audio', BinaryCodec());
+
+  static const BasicMessageChannel<ByteData> _spectrumChannel =
+      BasicMessageChannel<ByteData>('pitch_detection/spectrum', BinaryCodec());
+
   Stream<Map<String, dynamic>>? _pitchStream;
+  final Map<PitchPayload, Stream<Map<String, dynamic>>> _payloadStreams = {};
 
   @override
   Stream<Map<String, dynamic>> get onPitchDetected {
@@ -20,23 +45,119 @@ class MethodChannelFlutterPitchDetection extends FlutterPitchDetectionPlatform {
     return _pitchStream!;
   }
 
+  @override
+  Stream<Map<String, dynamic>> pitchEvents(PitchPayload payload) {
+    return _payloadStreams.putIfAbsent(
+      payload,
+      () => _eventChannel
+          .receiveBroadcastStream({'payload': payload.name})
+          .map((event) => Map<String, dynamic>.from(event)),
+    );
+  }
+
+  @override
+  Stream<NoteEvent> noteEvents({
+    required double minNoteMillis,
+    required double releaseMillis,
+    required double hysteresisCents,
+    required double silenceThresholdDbFS,
+  }) {
+    return _noteChannel
+        .receiveBroadcastStream({
+          'minNoteMillis': minNoteMillis,
+          'releaseMillis': releaseMillis,
+          'hysteresisCents': hysteresisCents,
+          'silenceThresholdDbFS': silenceThresholdDbFS,
+        })
+        .map((event) => NoteEvent.fromMap(event as Map<dynamic, dynamic>));
+  }
+
   @override
   Future<void> startDetection({
     int? sampleRate,
     int? bufferSize,
     int? overlap,
+    int? maxEventsPerSecond,
+    PitchAlgorithm? algorithm,
+    double? minFrequency,
+    bool lowLatency = false,
+    bool separateAnalysis = false,
   }) async {
     try {
       await _methodChannel.invokeMethod('startDetection', {
         'sampleRate': sampleRate,
         'bufferSize': bufferSize,
         'overlap': overlap,
+        if (maxEventsPerSecond != null)
+          'maxEventsPerSecond': maxEventsPerSecond,
+        if (algorithm != null) 'algorithm': algorithm.nativeName,
+        if (minFrequency != null) 'minFrequency': minFrequency,
+        'lowLatency': lowLatency,
+        'separateAnalysis': separateAnalysis,
       });
     } on PlatformException catch (e) {
       throw Exception('Failed to start detection: ${e.message}');
     }
   }
 
+  @override
+  Future<void> startBackgroundDetection({
+    int? sampleRate,
+    int? bufferSize,
+    int? overlap,
+    int? maxEventsPerSecond,
+    PitchAlgorithm? algorithm,
+    double? minFrequency,
+    bool lowLatency = false,
+    bool separateAnalysis = false,
+    required int maxBufferedResults,
+    String? notificationTitle,
+    String? notificationText,
+  }) async {
+    try {
+      await _methodChannel.invokeMethod('startBackgroundDetection', {
+        'sampleRate': sampleRate,
+        'bufferSize': bufferSize,
+        'overlap': overlap,
+        if (maxEventsPerSecond != null)
+          'maxEventsPerSecond': maxEventsPerSecond,
+        if (algorithm != null) 'algorithm': algorithm.nativeName,
+        if (minFrequency != null) 'minFrequency': minFrequency,
+        'lowLatency': lowLatency,
+        'separateAnalysis': separateAnalysis,
+        'maxBufferedResults': maxBufferedResults,
+        if (notificationTitle != null) 'notificationTitle': notificationTitle,
+        if (notificationText != null) 'notificationText': notificationText,
+      });
+    } on PlatformException catch (e) {
+      throw Exception('Failed to start background detection: ${e.message}');
+    }
+  }
+
+  @override
+  Future<bool> isBackgroundDetectionRunning() async {
+    try {
+      final result = await _methodChannel.invokeMethod<bool>(
+        'isBackgroundDetectionRunning',
+      );
+      return result ?? false;
+    } on PlatformException catch (e) {
+      throw Exception('Failed to get background state: ${e.message}');
+    }
+  }
+
+  @override
+  Future<MissedResults> getMissedResults() async {
+    try {
+      final result = await _methodChannel.invokeMethod<Map<dynamic, dynamic>>(
+        'getMissedResults',
+      );
+      return MissedResults.fromMap(result ?? const {});
+    } on PlatformException catch (e) {
+      throw Exception('Failed to get missed results: ${e.message}');
+    }
+  }
+
   @override
   Future<void> stopDetection() async {
     try {
@@ -50,6 +171,7 @@ class MethodChannelFlutterPitchDetection extends FlutterPitchDetectionPlatform {
   Future<void> setParameters({
     int? sampleRate,
     int? bufferSize,
+    int? overlap,
     double? toleranceCents,
     double? minPrecision,
     double? a4Reference,
@@ -58,6 +180,7 @@ class MethodChannelFlutterPitchDetection extends FlutterPitchDetectionPlatform {
       await _methodChannel.invokeMethod('setParameters', {
         if (sampleRate != null) 'sampleRate': sampleRate,
         if (bufferSize != null) 'bufferSize': bufferSize,
+        if (overlap != null) 'overlap': overlap,
         if (toleranceCents != null) 'toleranceCents': toleranceCents,
         if (minPrecision != null) 'minPrecision': minPrecision,
         if (a4Reference != null) 'a4Reference': a4Reference,
@@ -256,6 +379,294 @@ class MethodChannelFlutterPitchDetection extends FlutterPitchDetectionPlatform {
     }
   }
 
+  @override
+  Future<void> setAlgorithm(PitchAlgorithm algorithm) async {
+    try {
+      await _methodChannel.invokeMethod('setAlgorithm', {
+        'algorithm': algorithm.nativeName,
+      });
+    } on PlatformException catch (e) {
+      throw Exception('Failed to set algorithm: ${e.message}');
+    }
+  }
+
+  @override
+  Future<void> setSilenceGate({
+    required bool enabled,
+    required double thresholdDbFS,
+    required double hangoverMillis,
+    required GateMeasure measure,
+    required bool suppressEvents,
+  }) async {
+    try {
+      await _methodChannel.invokeMethod('setSilenceGate', {
+        'enabled': enabled,
+        'thresholdDbFS': thresholdDbFS,
+        'hangoverMillis': hangoverMillis,
+        'measure': measure.name,
+        'suppressEvents': suppressEvents,
+      });
+    } on PlatformException catch (e) {
+      throw Exception('Failed to set silence gate: ${e.message}');
+    }
+  }
+
+  @override
+  Future<int> getSkippedFrames() async {
+    try {
+      final result = await _methodChannel.invokeMethod<int>('getSkippedFrames');
+      return result ?? 0;
+    } on PlatformException catch (e) {
+      throw Exception("Skipped Frames Read Error: ${e.message}");
+    }
+  }
+
+  @override
+  Future<void> setMultiPitch({
+    required bool enabled,
+    required int maxPitches,
+    required double minFrequency,
+    required double maxFrequency,
+    required double minSalience,
+  }) async {
+    try {
+      await _methodChannel.invokeMethod('setMultiPitch', {
+        'enabled': enabled,
+        'maxPitches': maxPitches,
+        'minFrequency': minFrequency,
+        'maxFrequency': maxFrequency,
+        'minSalience': minSalience,
+      });
+    } on PlatformException catch (e) {
+      throw Exception('Failed to set multi-pitch detection: ${e.message}');
+    }
+  }
+
+  @override
+  Future<void> setLoudnessMetering(bool enabled) async {
+    try {
+      await _methodChannel.invokeMethod('setLoudnessMetering', {
+        'enabled': enabled,
+      });
+    } on PlatformException catch (e) {
+      throw Exception('Failed to set loudness metering: ${e.message}');
+    }
+  }
+
+  @override
+  Future<LevelReading> getLevels() async {
+    try {
+      final result = await _methodChannel.invokeMethod<Map<dynamic, dynamic>>(
+        'getLevels',
+      );
+      return LevelReading.fromMap(result ?? const {});
+    } on PlatformException catch (e) {
+      throw Exception("Levels Read Error: ${e.message}");
+    }
+  }
+
+  @override
+  Future<void> setMetricsEnabled(bool enabled) async {
+    try {
+      await _methodChannel.invokeMethod('setMetricsEnabled', {
+        'enabled': enabled,
+      });
+    } on PlatformException catch (e) {
+      throw Exception('Failed to set metrics: ${e.message}');
+    }
+  }
+
+  @override
+  Future<PipelineMetrics?> getMetrics() async {
+    try {
+      final result = await _methodChannel.invokeMethod<Map<dynamic, dynamic>>(
+        'getMetrics',
+      );
+      return result == null ? null : PipelineMetrics.fromMap(result);
+    } on PlatformException catch (e) {
+      throw Exception('Failed to get metrics: ${e.message}');
+    }
+  }
+
+  @override
+  Future<void> startRecording(
+    String path, {
+    required RecordingFormat format,
+    required double maxQueueSeconds,
+  }) async {
+    try {
+      await _methodChannel.invokeMethod('startRecording', {
+        'path': path,
+        'format': format.name,
+        'maxQueueSeconds': maxQueueSeconds,
+      });
+    } on PlatformException catch (e) {
+      throw Exception('Failed to start recording: ${e.message}');
+    }
+  }
+
+  @override
+  Future<RecordingResult?> stopRecording() async {
+    try {
+      final result = await _methodChannel.invokeMethod<Map<dynamic, dynamic>>(
+        'stopRecording',
+      );
+      return result == null ? null : RecordingResult.fromMap(result);
+    } on PlatformException catch (e) {
+      throw Exception('Failed to stop recording: ${e.message}');
+    }
+  }
+
+  @override
+  Future<double> setSmoothing({
+    required SmoothingMode mode,
+    required bool octaveCorrection,
+    required int octaveHoldFrames,
+    required int window,
+    required double minCutoff,
+    required double beta,
+    required double processNoise,
+    required double measurementNoise,
+  }) async {
+    try {
+      final result = await _methodChannel.invokeMethod<double>('setSmoothing', {
+        'mode': mode.name,
+        'octaveCorrection': octaveCorrection,
+        'octaveHoldFrames': octaveHoldFrames,
+        'window': window,
+        'minCutoff': minCutoff,
+        'beta': beta,
+        'processNoise': processNoise,
+        'measurementNoise': measurementNoise,
+      });
+      return result ?? 0;
+    } on PlatformException catch (e) {
+      throw Exception('Failed to set smoothing: ${e.message}');
+    }
+  }
+
+  @override
+  Future<PitchAlgorithm?> getAlgorithm() async {
+    try {
+      final result = await _methodChannel.invokeMethod<String>('getAlgorithm');
+      return PitchAlgorithm.fromNativeName(result);
+    } on PlatformException catch (e) {
+      throw Exception("Error Retrieving Algorithm: ${e.message}");
+    }
+  }
+
+  @override
+  Future<AlgorithmCostReport> getAlgorithmCost() async {
+    try {
+      final result = await _methodChannel.invokeMethod<Map<dynamic, dynamic>>(
+        'getAlgorithmCost',
+      );
+      return AlgorithmCostReport.fromMap(result ?? const {});
+    } on PlatformException catch (e) {
+      throw Exception("Algorithm Cost Read Error: ${e.message}");
+    }
+  }
+
+  @override
+  Future<PitchTrack> analyzeFile(
+    String path, {
+    int? sampleRate,
+    int? channels,
+    PitchAlgorithm? algorithm,
+    int? bufferSize,
+    int? overlap,
+    double? minPrecision,
+    double? a4Reference,
+  }) async {
+    return _analyzeAudio({
+      'path': path,
+      if (sampleRate != null) 'sampleRate': sampleRate,
+      if (channels != null) 'channels': channels,
+      if (algorithm != null) 'algorithm': algorithm.nativeName,
+      if (bufferSize != null) 'bufferSize': bufferSize,
+      if (overlap != null) 'overlap': overlap,
+      if (minPrecision != null) 'minPrecision': minPrecision,
+      if (a4Reference != null) 'a4Reference': a4Reference,
+    });
+  }
+
+  @override
+  Future<PitchTrack> analyzePcm(
+    Uint8List pcm, {
+    required int sampleRate,
+    int channels = 1,
+    PitchAlgorithm? algorithm,
+    int? bufferSize,
+    int? overlap,
+    double? minPrecision,
+    double? a4Reference,
+  }) async {
+    return _analyzeAudio({
+      'pcm': pcm,
+      'sampleRate': sampleRate,
+      'channels': channels,
+      if (algorithm != null) 'algorithm': algorithm.nativeName,
+      if (bufferSize != null) 'bufferSize': bufferSize,
+      if (overlap != null) 'overlap': overlap,
+      if (minPrecision != null) 'minPrecision': minPrecision,
+      if (a4Reference != null) 'a4Reference': a4Reference,
+    });
+  }
+
+  Future<PitchTrack> _analyzeAudio(Map<String, dynamic> arguments) async {
+    try {
+      final result = await _methodChannel.invokeMethod<Map<dynamic, dynamic>>(
+        'analyzeAudio',
+        arguments,
+      );
+      return PitchTrack.fromMap(result ?? const {});
+    } on PlatformException catch (e) {
+      throw Exception('Failed to analyze audio: ${e.message}');
+    }
+  }
+
+  @override
+  Future<PitchTrack> getPitchTrack({
+    double? fromMs,
+    double? toMs,
+    int decimation = 1,
+  }) async {
+    try {
+      final result = await _methodChannel.invokeMethod<Map<dynamic, dynamic>>(
+        'getPitchTrack',
+        {
+          if (fromMs != null) 'fromMs': fromMs,
+          if (toMs != null) 'toMs': toMs,
+          'decimation': decimation,
+        },
+      );
+      return PitchTrack.fromMap(result ?? const {});
+    } on PlatformException catch (e) {
+      throw Exception('Failed to get pitch track: ${e.message}');
+    }
+  }
+
+  @override
+  Future<PitchSnapshot> getSnapshot({
+    Set<PitchSnapshotField>? fields,
+    double? toleranceCents,
+    double? minPrecision,
+  }) async {
+    try {
+      final result = await _methodChannel.invokeMethod<Map<dynamic, dynamic>>(
+        'getSnapshot',
+        {
+          if (fields != null) 'fields': fields.map((f) => f.name).toList(),
+          if (toleranceCents != null) 'toleranceCents': toleranceCents,
+          if (minPrecision != null) 'minPrecision': minPrecision,
+        },
+      );
+      return PitchSnapshot.fromMap(result ?? const {});
+    } on PlatformException catch (e) {
+      throw Exception("Snapshot Read Error: ${e.message}");
+    }
+  }
+
   @override
   Future<double> getVolume() async {
     try {
@@ -294,4 +705,80 @@ class MethodChannelFlutterPitchDetection extends FlutterPitchDetectionPlatform {
       throw Exception("PCM Stream Data Read Error: ${e.message}");
     }
   }
+
+  @override
+  Stream<AudioFrame> audioFrames(AudioFrameFormat format) {
+    late StreamController<AudioFrame> controller;
+    controller = StreamController<AudioFrame>(
+      onListen: () async {
+        _audioChannel.setMessageHandler((ByteData? message) async {
+          if (message != null) controller.add(AudioFrame.fromByteData(message));
+          return null;
+        });
+        try {
+          await _methodChannel.invokeMethod('setAudioFrameStreaming', {
+            'enabled': true,
+            'format': format.name,
+          });
+        } on PlatformException catch (e) {
+          controller.addError(
+            Exception('Failed to start audio frames: ${e.message}'),
+          );
+        }
+      },
+      onCancel: () async {
+        _audioChannel.setMessageHandler(null);
+        try {
+          await _methodChannel.invokeMethod('setAudioFrameStreaming', {
+            'enabled': false,
+          });
+        } on PlatformException catch (e) {
+          throw Exception('Failed to stop audio frames: ${e.message}');
+        }
+      },
+    );
+    return controller.stream;
+  }
+
+  @override
+  Stream<SpectrumFrame> spectrumFrames(
+    int bands,
+    double minFrequency,
+    double maxFrequency,
+  ) {
+    late StreamController<SpectrumFrame> controller;
+    controller = StreamController<SpectrumFrame>(
+      onListen: () async {
+        _spectrumChannel.setMessageHandler((ByteData? message) async {
+          if (message != null) {
+            controller.add(SpectrumFrame.fromByteData(message));
+          }
+          return null;
+        });
+        try {
+          await _methodChannel.invokeMethod('setSpectrumStreaming', {
+            'enabled': true,
+            'bands': bands,
+            'minFrequency': minFrequency,
+            'maxFrequency': maxFrequency,
+          });
+        } on PlatformException catch (e) {
+          controller.addError(
+            Exception('Failed to start spectrum frames: ${e.message}'),
+          );
+        }
+      },
+      onCancel: () async {
+        _spectrumChannel.setMessageHandler(null);
+        try {
+          await _methodChannel.invokeMethod('setSpectrumStreaming', {
+            'enabled': false,
+          });
+        } on PlatformException catch (e) {
+          throw Exception('Failed to stop spectrum frames: ${e.message}');
+        }
+      },
+    );
+    return controller.stream;
+  }
 }
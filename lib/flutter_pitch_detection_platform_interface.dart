@@ -1,7 +1,19 @@
 import 'package:flutter/services.dart';
 import 'package:plugin_platform_interface/plugin_platform_interface.dart';
 
+import 'audio_frame.dart';
+import 'background_detection.dart';
 import 'flutter_pitch_detection_method_channel.dart';
+import 'level_reading.dart';
+import 'note_event.dart';
+import 'pipeline_metrics.dart';
+import 'pitch_algorithm.dart';
+import 'pitch_payload.dart';
+import 'pitch_smoothing.dart';
+import 'pitch_snapshot.dart';
+import 'pitch_track.dart';
+import 'recording.dart';
+import 'spectrum_frame.dart';
 
 abstract class FlutterPitchDetectionPlatform extends PlatformInterface {
   FlutterPitchDetectionPlatform() : super(token: _token);
@@ -18,12 +30,44 @@ abstract class FlutterPitchDetectionPlatform extends PlatformInterface {
   }
 
   Stream<Map<String, dynamic>> get onPitchDetected;
-  Future<void> startDetection({int? sampleRate, int? bufferSize, int? overlap});
+  Stream<Map<String, dynamic>> pitchEvents(PitchPayload payload);
+  Stream<NoteEvent> noteEvents({
+    required double minNoteMillis,
+    required double releaseMillis,
+    required double hysteresisCents,
+    required double silenceThresholdDbFS,
+  });
+  Future<void> startDetection({
+    int? sampleRate,
+    int? bufferSize,
+    int? overlap,
+    int? maxEventsPerSecond,
+    PitchAlgorithm? algorithm,
+    double? minFrequency,
+    bool lowLatency = false,
+    bool separateAnalysis = false,
+  });
+  Future<void> startBackgroundDetection({
+    int? sampleRate,
+    int? bufferSize,
+    int? overlap,
+    int? maxEventsPerSecond,
+    PitchAlgorithm? algorithm,
+    double? minFrequency,
+    bool lowLatency = false,
+    bool separateAnalysis = false,
+    required int maxBufferedResults,
+    String? notificationTitle,
+    String? notificationText,
+  });
+  Future<bool> isBackgroundDetectionRunning();
+  Future<MissedResults> getMissedResults();
   Future<void> stopDetection();
 
   Future<void> setParameters({
     int? sampleRate,
     int? bufferSize,
+    int? overlap,
     double? toleranceCents,
     double? minPrecision,
     double? a4Reference,
@@ -33,6 +77,74 @@ abstract class FlutterPitchDetectionPlatform extends PlatformInterface {
   Future<void> setMinPrecision(double minPrecision);
   Future<void> setToleranceCents(double toleranceCents);
   Future<void> setA4Reference(double a4Reference);
+  Future<void> setAlgorithm(PitchAlgorithm algorithm);
+  Future<void> setSilenceGate({
+    required bool enabled,
+    required double thresholdDbFS,
+    required double hangoverMillis,
+    required GateMeasure measure,
+    required bool suppressEvents,
+  });
+  Future<int> getSkippedFrames();
+  Future<void> setMultiPitch({
+    required bool enabled,
+    required int maxPitches,
+    required double minFrequency,
+    required double maxFrequency,
+    required double minSalience,
+  });
+  Future<void> setLoudnessMetering(bool enabled);
+  Future<LevelReading> getLevels();
+  Future<void> setMetricsEnabled(bool enabled);
+  Future<PipelineMetrics?> getMetrics();
+  Future<void> startRecording(
+    String path, {
+    required RecordingFormat format,
+    required double maxQueueSeconds,
+  });
+  Future<RecordingResult?> stopRecording();
+  Future<double> setSmoothing({
+    required SmoothingMode mode,
+    required bool octaveCorrection,
+    required int octaveHoldFrames,
+    required int window,
+    required double minCutoff,
+    required double beta,
+    required double processNoise,
+    required double measurementNoise,
+  });
+  Future<PitchAlgorithm?> getAlgorithm();
+  Future<AlgorithmCostReport> getAlgorithmCost();
+  Future<PitchTrack> analyzeFile(
+    String path, {
+    int? sampleRate,
+    int? channels,
+    PitchAlgorithm? algorithm,
+    int? bufferSize,
+    int? overlap,
+    double? minPrecision,
+    double? a4Reference,
+  });
+  Future<PitchTrack> analyzePcm(
+    Uint8List pcm, {
+    required int sampleRate,
+    int channels = 1,
+    PitchAlgorithm? algorithm,
+    int? bufferSize,
+    int? overlap,
+    double? minPrecision,
+    double? a4Reference,
+  });
+  Future<PitchTrack> getPitchTrack({
+    double? fromMs,
+    double? toMs,
+    int decimation = 1,
+  });
+  Future<PitchSnapshot> getSnapshot({
+    Set<PitchSnapshotField>? fields,
+    double? toleranceCents,
+    double? minPrecision,
+  });
   Future<int> getSampleRate();
   Future<int> getBufferSize();
   Future<double> getMinPrecision();
@@ -53,4 +165,10 @@ abstract class FlutterPitchDetectionPlatform extends PlatformInterface {
 
   Future<List<double>> getRawDataFromStream();
   Future<Uint8List> getRawPcmDataFromStream();
+  Stream<AudioFrame> audioFrames(AudioFrameFormat format);
+  Stream<SpectrumFrame> spectrumFrames(
+    int bands,
+    double minFrequency,
+    double maxFrequency,
+  );
 }
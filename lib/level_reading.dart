@@ -0,0 +1,50 @@
+/// Input levels measured natively over the latest buffer.
+class LevelReading {
+  final double rmsDbFS;
+  final double peakDbFS;
+
+  /// Mean sample value of the buffer; far from 0.0 hints at a faulty input.
+  final double dcOffset;
+
+  /// Full-scale samples since detection started.
+  final int clippedSamples;
+
+  /// K-weighted loudness over the last 400 ms. Null unless loudness metering
+  /// is on.
+  final double? momentaryLufs;
+
+  /// K-weighted loudness over the last 3 s. Null unless loudness metering is
+  /// on.
+  final double? shortTermLufs;
+
+  /// Highest inter-sample peak of the latest buffer, in dBTP. Null unless
+  /// loudness metering is on.
+  final double? truePeakDbTP;
+
+  /// Highest inter-sample peak since loudness metering started, in dBTP.
+  final double? maxTruePeakDbTP;
+
+  const LevelReading({
+    required this.rmsDbFS,
+    required this.peakDbFS,
+    required this.dcOffset,
+    required this.clippedSamples,
+    this.momentaryLufs,
+    this.shortTermLufs,
+    this.truePeakDbTP,
+    this.maxTruePeakDbTP,
+  });
+
+  factory LevelReading.fromMap(Map<dynamic, dynamic> map) {
+    return LevelReading(
+      rmsDbFS: (map['rmsDbFS'] as num).toDouble(),
+      peakDbFS: (map['peakDbFS'] as num).toDouble(),
+      dcOffset: (map['dcOffset'] as num).toDouble(),
+      clippedSamples: (map['clippedSamples'] as num).toInt(),
+      momentaryLufs: (map['momentaryLufs'] as num?)?.toDouble(),
+      shortTermLufs: (map['shortTermLufs'] as num?)?.toDouble(),
+      truePeakDbTP: (map['truePeakDbTP'] as num?)?.toDouble(),
+      maxTruePeakDbTP: (map['maxTruePeakDbTP'] as num?)?.toDouble(),
+    );
+  }
+}
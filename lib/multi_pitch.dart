@@ -0,0 +1,36 @@
+/// One of the simultaneous fundamentals found in a buffer when multi-pitch
+/// detection is on (see `setMultiPitch`).
+class DetectedPitch {
+  /// Frequency in Hz.
+  final double frequency;
+
+  /// Strength relative to the strongest pitch of the same buffer, which has
+  /// 1.0.
+  final double salience;
+  final int midiNote;
+  final String noteOctave;
+
+  const DetectedPitch({
+    required this.frequency,
+    required this.salience,
+    required this.midiNote,
+    required this.noteOctave,
+  });
+
+  factory DetectedPitch.fromMap(Map<dynamic, dynamic> map) {
+    return DetectedPitch(
+      frequency: (map['frequency'] as num).toDouble(),
+      salience: (map['salience'] as num).toDouble(),
+      midiNote: (map['midiNote'] as num).toInt(),
+      noteOctave: map['noteOctave'] as String,
+    );
+  }
+
+  /// Parses the `pitches` list of a pitch event or snapshot, strongest first.
+  static List<DetectedPitch> listFromMaps(List<dynamic>? maps) {
+    if (maps == null) return const [];
+    return maps
+        .map((map) => DetectedPitch.fromMap(map as Map<dynamic, dynamic>))
+        .toList();
+  }
+}
@@ -0,0 +1,55 @@
+enum NoteEventType { noteOn, noteOff }
+
+/// A note starting or ending, as segmented on the native side.
+class NoteEvent {
+  final NoteEventType type;
+  final int midiNote;
+  final String note;
+  final int octave;
+  final String noteOctave;
+
+  /// Stream time the note started, in seconds.
+  final double startTime;
+
+  /// Length of the note in seconds. Only set on [NoteEventType.noteOff].
+  final double? duration;
+
+  /// Average frequency over the note, in Hz. Only set on [NoteEventType.noteOff].
+  final double? meanFrequency;
+
+  /// Average deviation from [midiNote] in cents. Only set on
+  /// [NoteEventType.noteOff].
+  final double? meanCents;
+
+  /// 1.0 for a perfectly steady pitch, down to 0.0 at 50 cents of standard
+  /// deviation. Only set on [NoteEventType.noteOff].
+  final double? stability;
+
+  const NoteEvent({
+    required this.type,
+    required this.midiNote,
+    required this.note,
+    required this.octave,
+    required this.noteOctave,
+    required this.startTime,
+    this.duration,
+    this.meanFrequency,
+    this.meanCents,
+    this.stability,
+  });
+
+  factory NoteEvent.fromMap(Map<dynamic, dynamic> map) {
+    return NoteEvent(
+      type: map['type'] == 'noteOff' ? NoteEventType.noteOff : NoteEventType.noteOn,
+      midiNote: (map['midiNote'] as num).toInt(),
+      note: map['note'] as String? ?? '',
+      octave: (map['octave'] as num).toInt(),
+      noteOctave: map['noteOctave'] as String? ?? '',
+      startTime: (map['startTime'] as num).toDouble(),
+      duration: (map['duration'] as num?)?.toDouble(),
+      meanFrequency: (map['meanFrequency'] as num?)?.toDouble(),
+      meanCents: (map['meanCents'] as num?)?.toDouble(),
+      stability: (map['stability'] as num?)?.toDouble(),
+    );
+  }
+}
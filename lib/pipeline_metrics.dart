@@ -0,0 +1,105 @@
+/// Latency distribution of one stage of the detection pipeline, from
+/// `getMetrics`. Percentiles are accurate to about 3%.
+class StageLatency {
+  /// Buffers or events the stage was timed for.
+  final int count;
+  final double meanMicros;
+  final double p50Micros;
+  final double p90Micros;
+  final double p99Micros;
+  final double maxMicros;
+
+  const StageLatency({
+    required this.count,
+    required this.meanMicros,
+    required this.p50Micros,
+    required this.p90Micros,
+    required this.p99Micros,
+    required this.maxMicros,
+  });
+
+  factory StageLatency.fromMap(Map<dynamic, dynamic> map) {
+    return StageLatency(
+      count: (map['count'] as num).toInt(),
+      meanMicros: (map['meanMicros'] as num).toDouble(),
+      p50Micros: (map['p50Micros'] as num).toDouble(),
+      p90Micros: (map['p90Micros'] as num).toDouble(),
+      p99Micros: (map['p99Micros'] as num).toDouble(),
+      maxMicros: (map['maxMicros'] as num).toDouble(),
+    );
+  }
+}
+
+/// Where detection time goes, recorded natively since metrics were enabled.
+///
+/// [stages] is keyed by stage name, each present once it has run:
+/// `capture` (waiting for the next buffer), `levels`, `record` (queueing
+/// audio for the file recorder), `gate`, `spectrum`, `pitch`, `publish`
+/// (handing the frame on, on the audio thread),
+/// `delivery` (waiting for the main thread) and `encode` (building and
+/// sending the event).
+class PipelineMetrics {
+  final Map<String, StageLatency> stages;
+
+  /// Frames the pipeline produced, gated ones included.
+  final int processedFrames;
+
+  /// Frames the silence gate kept from pitch estimation.
+  final int gatedFrames;
+
+  /// Analysed frames whose probability was below `minPrecision`.
+  final int belowMinPrecisionFrames;
+
+  /// Pitch events sent to the event stream.
+  final int emittedEvents;
+
+  /// Pitch events replaced by a newer one before they could be sent.
+  final int droppedEvents;
+
+  /// Estimated times the recorder discarded audio because capture fell
+  /// behind. Not counted with `separateAnalysis`; see
+  /// [captureOverwrittenBytes] instead.
+  final int overruns;
+
+  /// Audio the capture ring buffer overwrote with `separateAnalysis`.
+  final int captureOverwrittenBytes;
+
+  /// Time since metrics were enabled.
+  final Duration elapsed;
+
+  const PipelineMetrics({
+    required this.stages,
+    required this.processedFrames,
+    required this.gatedFrames,
+    required this.belowMinPrecisionFrames,
+    required this.emittedEvents,
+    required this.droppedEvents,
+    required this.overruns,
+    required this.captureOverwrittenBytes,
+    required this.elapsed,
+  });
+
+  factory PipelineMetrics.fromMap(Map<dynamic, dynamic> map) {
+    final stages = (map['stages'] as Map<dynamic, dynamic>?) ?? const {};
+    return PipelineMetrics(
+      stages: stages.map(
+        (name, stage) => MapEntry(
+          name as String,
+          StageLatency.fromMap(stage as Map<dynamic, dynamic>),
+        ),
+      ),
+      processedFrames: (map['processedFrames'] as num?)?.toInt() ?? 0,
+      gatedFrames: (map['gatedFrames'] as num?)?.toInt() ?? 0,
+      belowMinPrecisionFrames:
+          (map['belowMinPrecisionFrames'] as num?)?.toInt() ?? 0,
+      emittedEvents: (map['emittedEvents'] as num?)?.toInt() ?? 0,
+      droppedEvents: (map['droppedEvents'] as num?)?.toInt() ?? 0,
+      overruns: (map['overruns'] as num?)?.toInt() ?? 0,
+      captureOverwrittenBytes:
+          (map['captureOverwrittenBytes'] as num?)?.toInt() ?? 0,
+      elapsed: Duration(
+        milliseconds: (map['elapsedMillis'] as num?)?.toInt() ?? 0,
+      ),
+    );
+  }
+}
@@ -0,0 +1,86 @@
+/// Pitch estimation algorithms bundled with TarsosDSP.
+///
+/// Roughly from cheapest to most expensive per buffer: [amdf],
+/// [dynamicWavelet], [fftYin], [mpm], [yin]. Use `getAlgorithmCost()` to
+/// measure them on the actual device.
+enum PitchAlgorithm {
+  yin('YIN'),
+  fftYin('FFT_YIN'),
+  mpm('MPM'),
+  amdf('AMDF'),
+  dynamicWavelet('DYNAMIC_WAVELET');
+
+  /// Name of the algorithm on the native side.
+  final String nativeName;
+
+  const PitchAlgorithm(this.nativeName);
+
+  static PitchAlgorithm? fromNativeName(String? name) {
+    for (final algorithm in values) {
+      if (algorithm.nativeName == name) return algorithm;
+    }
+    return null;
+  }
+}
+
+/// Measured per-buffer cost of a pitch algorithm.
+class AlgorithmCost {
+  /// Buffers analyzed with this algorithm.
+  final int frames;
+
+  /// Recent average time spent estimating pitch per buffer, in microseconds.
+  final double averageMicros;
+
+  /// Worst time spent estimating pitch for a buffer, in microseconds.
+  final double maxMicros;
+
+  /// [averageMicros] relative to the real-time budget. Above 1.0 analysis
+  /// can't keep up with capture.
+  final double load;
+
+  const AlgorithmCost({
+    required this.frames,
+    required this.averageMicros,
+    required this.maxMicros,
+    required this.load,
+  });
+}
+
+/// Result of `getAlgorithmCost()`.
+class AlgorithmCostReport {
+  /// Algorithm currently in use.
+  final PitchAlgorithm? algorithm;
+
+  /// Time one buffer hop of audio lasts, in microseconds.
+  final double budgetMicros;
+
+  /// Cost of every algorithm that has run in this session.
+  final Map<PitchAlgorithm, AlgorithmCost> costs;
+
+  const AlgorithmCostReport({
+    required this.algorithm,
+    required this.budgetMicros,
+    required this.costs,
+  });
+
+  factory AlgorithmCostReport.fromMap(Map<dynamic, dynamic> map) {
+    final costs = <PitchAlgorithm, AlgorithmCost>{};
+    final rawCosts = map['costs'] as Map<dynamic, dynamic>? ?? const {};
+    rawCosts.forEach((name, value) {
+      final algorithm = PitchAlgorithm.fromNativeName(name as String?);
+      if (algorithm == null) return;
+      final cost = value as Map<dynamic, dynamic>;
+      costs[algorithm] = AlgorithmCost(
+        frames: (cost['frames'] as num).toInt(),
+        averageMicros: (cost['averageNanos'] as num).toDouble() / 1000,
+        maxMicros: (cost['maxNanos'] as num).toDouble() / 1000,
+        load: (cost['load'] as num).toDouble(),
+      );
+    });
+    return AlgorithmCostReport(
+      algorithm: PitchAlgorithm.fromNativeName(map['algorithm'] as String?),
+      budgetMicros: (map['budgetNanos'] as num).toDouble() / 1000,
+      costs: costs,
+    );
+  }
+}
@@ -0,0 +1,20 @@
+/// Selects which fields each pitch detection event carries.
+///
+/// Smaller profiles mean less data crossing the platform channel per event.
+enum PitchPayload {
+  /// Note, octave, MIDI note, frequency, accuracy, pitch deviation and on-pitch state.
+  pitchOnly,
+
+  /// [pitchOnly] plus `volume` and `volumeDbFS`.
+  pitchAndLevel,
+
+  /// [pitchAndLevel] plus `pcmDelta` (Uint8List of 16-bit PCM) holding only the
+  /// samples captured since the previous event, and `pcmOffset` (int), the
+  /// absolute index of its first sample. Events are sent for unpitched buffers
+  /// too, so consecutive deltas are contiguous; a jump in `pcmOffset` means
+  /// more than one second of audio was missed.
+  withPcmDelta,
+
+  /// Every field, including the current parameters, `pcmData` and `streamData`.
+  full,
+}
@@ -0,0 +1,21 @@
+/// Level the silence gate compares against its threshold.
+enum GateMeasure { rms, peak }
+
+/// Smoothing applied natively to the detected pitch before it is reported.
+enum SmoothingMode {
+  none,
+
+  /// Median of the last `window` frames. Removes isolated outliers.
+  median,
+
+  /// Mean of the last `window` frames weighted by detection probability.
+  weightedMean,
+
+  /// Speed-adaptive low-pass: steady on held notes, responsive on glides.
+  /// Tune with `minCutoff` (lower is steadier) and `beta`.
+  oneEuro,
+
+  /// Kalman filter; less probable frames count as noisier measurements.
+  /// Tune with `processNoise` and `measurementNoise`.
+  kalman,
+}
@@ -0,0 +1,92 @@
+import 'multi_pitch.dart';
+
+/// Values that `getSnapshot()` can return.
+enum PitchSnapshotField {
+  frequency,
+  note,
+  octave,
+  midiNote,
+  noteOctave,
+  accuracy,
+  pitchDeviation,
+  isOnPitch,
+  volume,
+  volumeDbFS,
+  probability,
+  timeStamp,
+  sequence,
+  pitches,
+}
+
+/// Tuner state read from a single analysed buffer in one platform call.
+///
+/// Fields that were not requested are null.
+class PitchSnapshot {
+  /// Frequency in Hz, -1 when no pitch was detected.
+  final double? frequency;
+  final String? note;
+  final int? octave;
+  final int? midiNote;
+  final String? noteOctave;
+
+  /// 0-100, relative to the tolerance the snapshot was taken with.
+  final int? accuracy;
+
+  /// Cents from the nearest note, between -100 and 100.
+  final double? pitchDeviation;
+  final bool? isOnPitch;
+  final double? volume;
+  final double? volumeDbFS;
+
+  /// Detector confidence for the pitch, 0.0-1.0.
+  final double? probability;
+
+  /// Stream time of the analysed buffer, in seconds.
+  final double? timeStamp;
+
+  /// Number of the analysed buffer in the current session. Equal values
+  /// mean no new audio was analysed between two snapshots.
+  final int? sequence;
+
+  /// Simultaneous pitches, strongest first; empty while multi-pitch detection
+  /// is off.
+  final List<DetectedPitch>? pitches;
+
+  const PitchSnapshot({
+    this.frequency,
+    this.note,
+    this.octave,
+    this.midiNote,
+    this.noteOctave,
+    this.accuracy,
+    this.pitchDeviation,
+    this.isOnPitch,
+    this.volume,
+    this.volumeDbFS,
+    this.probability,
+    this.timeStamp,
+    this.sequence,
+    this.pitches,
+  });
+
+  factory PitchSnapshot.fromMap(Map<dynamic, dynamic> map) {
+    return PitchSnapshot(
+      frequency: (map['frequency'] as num?)?.toDouble(),
+      note: map['note'] as String?,
+      octave: (map['octave'] as num?)?.toInt(),
+      midiNote: (map['midiNote'] as num?)?.toInt(),
+      noteOctave: map['noteOctave'] as String?,
+      accuracy: (map['accuracy'] as num?)?.toInt(),
+      pitchDeviation: (map['pitchDeviation'] as num?)?.toDouble(),
+      isOnPitch: map['isOnPitch'] as bool?,
+      volume: (map['volume'] as num?)?.toDouble(),
+      volumeDbFS: (map['volumeDbFS'] as num?)?.toDouble(),
+      probability: (map['probability'] as num?)?.toDouble(),
+      timeStamp: (map['timeStamp'] as num?)?.toDouble(),
+      sequence: (map['sequence'] as num?)?.toInt(),
+      pitches: map.containsKey('pitches')
+          ? DetectedPitch.listFromMaps(map['pitches'] as List<dynamic>?)
+          : null,
+    );
+  }
+}
@@ -0,0 +1,43 @@
+import 'dart:typed_data';
+
+/// Pitch track of analysed audio, or of live detection from `getPitchTrack`,
+/// packed as [fieldsPerFrame] floats per frame: time in seconds, frequency in
+/// Hz, probability, MIDI note and cents.
+///
+/// Frequency and MIDI note are -1 (and cents 0) for frames below the
+/// precision threshold.
+class PitchTrack {
+  final Float32List data;
+  final int fieldsPerFrame;
+
+  /// Sample rate of the analysed audio.
+  final int sampleRate;
+
+  /// Length of the analysed audio, in seconds. For a live track, the stream
+  /// time of the newest frame detected.
+  final double duration;
+
+  const PitchTrack({
+    required this.data,
+    required this.sampleRate,
+    required this.duration,
+    this.fieldsPerFrame = 5,
+  });
+
+  factory PitchTrack.fromMap(Map<dynamic, dynamic> map) {
+    return PitchTrack(
+      data: map['track'] as Float32List? ?? Float32List(0),
+      sampleRate: (map['sampleRate'] as num?)?.toInt() ?? 0,
+      duration: (map['duration'] as num?)?.toDouble() ?? 0,
+      fieldsPerFrame: (map['fieldsPerFrame'] as num?)?.toInt() ?? 5,
+    );
+  }
+
+  int get length => data.length ~/ fieldsPerFrame;
+
+  double timeAt(int frame) => data[frame * fieldsPerFrame];
+  double frequencyAt(int frame) => data[frame * fieldsPerFrame + 1];
+  double probabilityAt(int frame) => data[frame * fieldsPerFrame + 2];
+  int midiNoteAt(int frame) => data[frame * fieldsPerFrame + 3].toInt();
+  double centsAt(int frame) => data[frame * fieldsPerFrame + 4];
+}
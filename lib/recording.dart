@@ -0,0 +1,48 @@
+/// File formats the native recorder can write.
+enum RecordingFormat {
+  /// 16-bit PCM WAV.
+  wav,
+
+  /// 16-bit FLAC, lossless and typically half to two thirds of the WAV size.
+  flac,
+}
+
+/// A finished recording, from `stopRecording`.
+class RecordingResult {
+  final String path;
+  final RecordingFormat format;
+  final int sampleRate;
+
+  /// Samples written to the file.
+  final int samples;
+
+  /// Samples lost because storage fell behind by more than
+  /// `maxQueueSeconds`, or sent after the sample rate changed.
+  final int droppedSamples;
+
+  /// Size of the file.
+  final int bytes;
+
+  const RecordingResult({
+    required this.path,
+    required this.format,
+    required this.sampleRate,
+    required this.samples,
+    required this.droppedSamples,
+    required this.bytes,
+  });
+
+  Duration get duration =>
+      Duration(microseconds: sampleRate == 0 ? 0 : samples * 1000000 ~/ sampleRate);
+
+  factory RecordingResult.fromMap(Map<dynamic, dynamic> map) {
+    return RecordingResult(
+      path: map['path'] as String,
+      format: map['format'] == 'flac' ? RecordingFormat.flac : RecordingFormat.wav,
+      sampleRate: (map['sampleRate'] as num).toInt(),
+      samples: (map['samples'] as num).toInt(),
+      droppedSamples: (map['droppedSamples'] as num).toInt(),
+      bytes: (map['bytes'] as num).toInt(),
+    );
+  }
+}
@@ -0,0 +1,69 @@
+import 'dart:math' as math;
+import 'dart:typed_data';
+
+/// Log-spaced magnitude spectrum and chroma of one analysed buffer, received
+/// over the binary spectrum channel.
+///
+/// [bands] and [chroma] are views over the received message, no per-value
+/// decoding is done.
+class SpectrumFrame {
+  static const int headerBytes = 24;
+
+  /// Stream time of the analysed buffer, in seconds.
+  final double timeStamp;
+
+  /// Sequence of the pitch event built from the same buffer.
+  final int sequence;
+
+  /// Peak magnitude per band, lowest band first. A full-scale sine reads
+  /// about 1.0. See [bandFrequencies] for where each band lies.
+  final Float32List bands;
+
+  /// Energy per pitch class, C to B, aligned to the current A4 reference.
+  /// The strongest class is 1.0; all zeros in silence.
+  final Float32List chroma;
+
+  SpectrumFrame._(this.timeStamp, this.sequence, this.bands, this.chroma);
+
+  /// Parses a frame: int32 band count, int32 chroma bins, float64 time stamp,
+  /// int64 sequence, then the band and chroma float32 values, all in host
+  /// byte order.
+  factory SpectrumFrame.fromByteData(ByteData data) {
+    final bandCount = data.getInt32(0, Endian.host);
+    final chromaBins = data.getInt32(4, Endian.host);
+    final timeStamp = data.getFloat64(8, Endian.host);
+    final sequence = data.getInt64(16, Endian.host);
+
+    var buffer = data.buffer;
+    var start = data.offsetInBytes + headerBytes;
+    if (start % 4 != 0) {
+      // Typed views need aligned offsets; copy in the rare unaligned case.
+      buffer =
+          Uint8List.fromList(
+            buffer.asUint8List(start, (bandCount + chromaBins) * 4),
+          ).buffer;
+      start = 0;
+    }
+    return SpectrumFrame._(
+      timeStamp,
+      sequence,
+      buffer.asFloat32List(start, bandCount),
+      buffer.asFloat32List(start + bandCount * 4, chromaBins),
+    );
+  }
+
+  /// Center frequency in Hz of each of [bands] log-spaced bands between
+  /// [minFrequency] and [maxFrequency], as passed to `spectrumFrames`.
+  static Float32List bandFrequencies(
+    int bands,
+    double minFrequency,
+    double maxFrequency,
+  ) {
+    final centers = Float32List(bands);
+    final ratio = maxFrequency / minFrequency;
+    for (var i = 0; i < bands; i++) {
+      centers[i] = minFrequency * math.pow(ratio, (i + 0.5) / bands);
+    }
+    return centers;
+  }
+}
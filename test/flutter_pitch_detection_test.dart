@@ -5,6 +5,9 @@ import 'package:flutter_test/flutter_test.dart';
 import 'package:flutter_pitch_detection/flutter_pitch_detection.dart';
 import 'package:flutter_pitch_detection/flutter_pitch_detection_platform_interface.dart';
 import 'package:flutter_pitch_detection/flutter_pitch_detection_method_channel.dart';
+import 'package:flutter_pitch_detection/audio_frame.dart';
+import 'package:flutter_pitch_detection/pitch_algorithm.dart';
+import 'package:flutter_pitch_detection/pitch_payload.dart';
 import 'package:plugin_platform_interface/plugin_platform_interface.dart';
 
 class MockFlutterPitchDetectionPlatform
@@ -23,6 +26,14 @@ class MockFlutterPitchDetectionPlatform
   @override
   Stream<Map<String, dynamic>> get onPitchDetected => _controller.stream;
 
+  @override
+  Stream<Map<String, dynamic>> pitchEvents(PitchPayload payload) =>
+      _controller.stream;
+
+  @override
+  Stream<AudioFrame> audioFrames(AudioFrameFormat format) =>
+      const Stream.empty();
+
   @override
   Future<void> setToleranceCents(double toleranceCents) async {
     _toleranceCents = toleranceCents;
@@ -47,7 +58,10 @@ class MockFlutterPitchDetectionPlatform
   Future<void> setParameters({
     int? sampleRate,
     int? bufferSize,
+    int? overlap,
     double? toleranceCents,
+    double? minPrecision,
+    double? a4Reference,
   }) async {
     if (sampleRate != null) _sampleRate = sampleRate;
     if (bufferSize != null) _bufferSize = bufferSize;
@@ -118,6 +132,10 @@ class MockFlutterPitchDetectionPlatform
     int? sampleRate,
     int? bufferSize,
     int? overlap,
+    int? maxEventsPerSecond,
+    PitchAlgorithm? algorithm,
+    double? minFrequency,
+    bool lowLatency = false,
   }) {
     // TODO: implement startDetection
     throw UnimplementedError();